@@ -1,17 +1,35 @@
 package com.directchat.api;
 
 import com.directchat.DirectChatMod;
+import com.directchat.client.ChatInterceptor;
 import com.directchat.config.DirectChatConfig;
+import com.directchat.protocol.BinaryProtocol;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * HTTP client for communicating with the DirectChat API server.
@@ -20,10 +38,37 @@ public class ApiClient {
 
     private static final Gson GSON = new Gson();
     private static final Duration TIMEOUT = Duration.ofSeconds(10);
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+    // Prefer the compact binary protocol for fetch/send, JSON still accepted
+    private static final String ACCEPT = BinaryProtocol.CONTENT_TYPE + ", application/json;q=0.9";
+    // Messages sent within this window are coalesced into one batch request
+    private static final long BATCH_WINDOW_MS = 50;
+    private static final int MAX_BATCH_SIZE = 50;
 
     private final DirectChatConfig config;
     private final HttpClient httpClient;
 
+    // WebSocket port announced by the server at auth time (0 = not available)
+    private volatile int websocketPort = 0;
+    private volatile WebSocketTransport webSocket;
+
+    // ETag of the last fetch response per channel, and the long-poll wait the
+    // server used, so bodyless 304 responses can be treated like an empty fetch
+    private final Map<String, String> fetchEtags = new ConcurrentHashMap<>();
+    private volatile long serverWaitMillis = 0;
+
+    // Set once the server answered a fetch with the binary protocol
+    private volatile boolean binarySupported = false;
+
+    // Messages waiting for the next batched send
+    private final List<PendingSend> pendingSends = new ArrayList<>();
+    // Cleared once the server turns out not to have /api/send/batch
+    private volatile boolean batchSupported = true;
+
+    // Response body sizes as received and after decompression
+    private final LongAdder receivedBytes = new LongAdder();
+    private final LongAdder decodedBytes = new LongAdder();
+
     public ApiClient(DirectChatConfig config) {
         this.config = config;
         this.httpClient = HttpClient.newBuilder()
@@ -47,17 +92,19 @@ public class ApiClient {
         HttpRequest request = HttpRequest.newBuilder()
                 .uri(URI.create(url + "/api/auth"))
                 .header("Content-Type", "application/json")
+                .header("Accept-Encoding", ACCEPT_ENCODING)
                 .timeout(TIMEOUT)
                 .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(body)))
                 .build();
 
-        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+        return httpClient.sendAsync(request, decodedBody())
                 .thenApply(response -> {
                     JsonObject json = GSON.fromJson(response.body(), JsonObject.class);
                     String status = json.has("status") ? json.get("status").getAsString() : "ERROR";
                     String token = json.has("token") ? json.get("token").getAsString() : null;
                     String captchaImage = json.has("captcha_image") ? json.get("captcha_image").getAsString() : null;
                     String message = json.has("message") ? json.get("message").getAsString() : null;
+                    rememberWebSocketPort(json);
 
                     return new AuthResult(status, token, captchaImage, message);
                 })
@@ -68,7 +115,7 @@ public class ApiClient {
     }
 
     /**
-     * Send a message to the DirectChat server.
+     * Send a message to the DirectChat server, in the active channel.
      * 
      * @param message Message content
      * @return True if sent successfully
@@ -78,21 +125,162 @@ public class ApiClient {
         if (token == null) {
             return CompletableFuture.completedFuture(false);
         }
+        String channel = config.getActiveChannel();
+
+        // Prefer the open WebSocket over a request per message
+        WebSocketTransport ws = webSocket;
+        if (ws != null && ws.isOpen()) {
+            return ws.send(channel, message);
+        }
 
+        // Queue the message; everything queued within the window goes out together
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        synchronized (pendingSends) {
+            pendingSends.add(new PendingSend(channel, message, result));
+            if (pendingSends.size() == 1) {
+                CompletableFuture.delayedExecutor(BATCH_WINDOW_MS, TimeUnit.MILLISECONDS).execute(this::flushSends);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Send everything queued by {@link #sendMessage}, in order: a single
+     * message as /api/send, several as /api/send/batch requests.
+     */
+    private void flushSends() {
+        List<PendingSend> queued;
+        synchronized (pendingSends) {
+            queued = new ArrayList<>(pendingSends);
+            pendingSends.clear();
+        }
+
+        // Chain the requests so the server receives them in order; a batch
+        // only holds messages of one channel
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        int from = 0;
+        while (from < queued.size()) {
+            String channel = queued.get(from).channel();
+            int to = from + 1;
+            while (to < queued.size() && to - from < MAX_BATCH_SIZE && queued.get(to).channel().equals(channel)) {
+                to++;
+            }
+            List<PendingSend> chunk = queued.subList(from, to);
+            chain = chain.thenCompose(ignored -> chunk.size() == 1 || !batchSupported
+                    ? sendEach(chunk)
+                    : sendBatch(channel, chunk));
+            from = to;
+        }
+    }
+
+    /**
+     * Send queued messages one request at a time, in order.
+     */
+    private CompletableFuture<Void> sendEach(List<PendingSend> sends) {
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (PendingSend send : sends) {
+            chain = chain.thenCompose(ignored -> postMessage(send.channel(), send.message())
+                    .thenAccept(send.result()::complete));
+        }
+        return chain;
+    }
+
+    /**
+     * Send queued messages of one channel as one /api/send/batch request.
+     * Falls back to single sends for servers without the batch endpoint.
+     */
+    private CompletableFuture<Void> sendBatch(String channel, List<PendingSend> sends) {
+        String token = config.getAuthToken();
+        if (token == null) {
+            sends.forEach(send -> send.result().complete(false));
+            return CompletableFuture.completedFuture(null);
+        }
+
+        JsonArray messages = new JsonArray();
+        for (PendingSend send : sends) {
+            messages.add(send.message());
+        }
         JsonObject body = new JsonObject();
-        body.addProperty("message", message);
+        body.add("messages", messages);
 
         HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(config.getCurrentUrl() + "/api/send"))
+                .uri(URI.create(config.getCurrentUrl() + "/api/send/batch?" + channelParam(channel)))
                 .header("Content-Type", "application/json")
                 .header("Authorization", "Bearer " + token)
+                .header("Accept-Encoding", ACCEPT_ENCODING)
                 .timeout(TIMEOUT)
                 .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(body)))
                 .build();
 
-        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-                .thenApply(response -> {
+        return httpClient.sendAsync(request, decodedBody())
+                .thenCompose(response -> {
+                    if (response.statusCode() == 404) {
+                        // Older server
+                        batchSupported = false;
+                        return sendEach(sends);
+                    }
+
                     JsonObject json = GSON.fromJson(response.body(), JsonObject.class);
+                    JsonArray results = json.has("results") ? json.getAsJsonArray("results") : new JsonArray();
+                    for (int i = 0; i < sends.size(); i++) {
+                        boolean ok = i < results.size()
+                                && "OK".equals(results.get(i).getAsJsonObject().get("status").getAsString());
+                        sends.get(i).result().complete(ok);
+                    }
+                    return CompletableFuture.<Void>completedFuture(null);
+                })
+                .exceptionally(e -> {
+                    DirectChatMod.LOGGER.error("Failed to send messages", e);
+                    sends.forEach(send -> send.result().complete(false));
+                    return null;
+                });
+    }
+
+    /**
+     * Send one message as an /api/send request.
+     */
+    private CompletableFuture<Boolean> postMessage(String channel, String message) {
+        String token = config.getAuthToken();
+        if (token == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        // Binary bodies only once the server has shown it understands them
+        HttpRequest.BodyPublisher body;
+        String contentType;
+        if (binarySupported) {
+            BinaryProtocol.ByteArrayOutput out = new BinaryProtocol.ByteArrayOutput(16 + message.length());
+            BinaryProtocol.writeSendRequest(out, message);
+            body = HttpRequest.BodyPublishers.ofByteArray(out.toByteArray());
+            contentType = BinaryProtocol.CONTENT_TYPE;
+        } else {
+            JsonObject json = new JsonObject();
+            json.addProperty("message", message);
+            body = HttpRequest.BodyPublishers.ofString(GSON.toJson(json));
+            contentType = "application/json";
+        }
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(config.getCurrentUrl() + "/api/send?" + channelParam(channel)))
+                .header("Content-Type", contentType)
+                .header("Authorization", "Bearer " + token)
+                .header("Accept", ACCEPT)
+                .header("Accept-Encoding", ACCEPT_ENCODING)
+                .timeout(TIMEOUT)
+                .POST(body)
+                .build();
+
+        return httpClient.sendAsync(request, decodedBodyBytes())
+                .thenApply(response -> {
+                    if (isBinary(response)) {
+                        try {
+                            return BinaryProtocol.readStatus(response.body()) == null;
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                    JsonObject json = GSON.fromJson(new String(response.body(), StandardCharsets.UTF_8),
+                            JsonObject.class);
                     return json.has("status") && "OK".equals(json.get("status").getAsString());
                 })
                 .exceptionally(e -> {
@@ -102,41 +290,253 @@ public class ApiClient {
     }
 
     /**
-     * Fetch new messages from the DirectChat server.
+     * Fetch new messages of a channel from the DirectChat server.
      * 
-     * @param lastTimestamp Only fetch messages after this timestamp
+     * @param channel       Channel to fetch from
+     * @param cursor        Sequence number of the last message received, or -1
+     *                      if the server hasn't sent one yet
+     * @param lastTimestamp Only fetch messages after this timestamp, used
+     *                      without a cursor
+     * @param dmCursor      Sequence number of the last private message
+     *                      received (0 = none yet) to get newer ones with this
+     *                      fetch, or -1 to leave them out
+     * @param waitMillis    Ask the server to hold the request up to this long
+     *                      until a new message arrives (0 = return immediately)
      * @return Array of messages
      */
-    public CompletableFuture<FetchResult> fetchMessages(long lastTimestamp) {
+    public CompletableFuture<FetchResult> fetchMessages(String channel, long cursor, long lastTimestamp,
+            long dmCursor, long waitMillis) {
         String token = config.getAuthToken();
         if (token == null) {
-            return CompletableFuture.completedFuture(new FetchResult(false, new JsonArray()));
+            return CompletableFuture.completedFuture(new FetchResult(false, new JsonArray(), 0));
         }
 
-        String url = config.getCurrentUrl() + "/api/fetch";
-        if (lastTimestamp > 0) {
-            url += "?since=" + lastTimestamp;
+        // Timestamps miss messages sent in the same millisecond; follow the cursor once there is one
+        String url = config.getCurrentUrl() + "/api/fetch?" + channelParam(channel) + (cursor >= 0
+                ? "&after=" + cursor
+                : "&since=" + Math.max(0, lastTimestamp));
+        if (dmCursor >= 0) {
+            url += "&dm=" + dmCursor;
+        }
+        if (waitMillis > 0) {
+            url += "&wait=" + waitMillis;
         }
 
-        HttpRequest request = HttpRequest.newBuilder()
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
                 .uri(URI.create(url))
                 .header("Authorization", "Bearer " + token)
+                .header("Accept", ACCEPT)
+                .header("Accept-Encoding", ACCEPT_ENCODING)
+                .timeout(TIMEOUT.plusMillis(waitMillis))
+                .GET();
+        String etag = fetchEtags.get(channel);
+        if (etag != null) {
+            builder.header("If-None-Match", etag);
+        }
+
+        return httpClient.sendAsync(builder.build(), decodedBodyBytes())
+                .thenApply(response -> {
+                    // Nothing new since the last response
+                    if (response.statusCode() == 304) {
+                        return new FetchResult(true, new JsonArray(), serverWaitMillis);
+                    }
+
+                    // Rate limited or overloaded server: back off as asked
+                    if (response.statusCode() == 429 || response.statusCode() == 503) {
+                        return FetchResult.retryAfter(retryAfterMillis(response));
+                    }
+
+                    // An error answer says nothing about the protocol or the
+                    // cached response, so leave both as they are
+                    if (response.statusCode() != 200) {
+                        if (response.statusCode() == 401) {
+                            tokenRejected(token);
+                        }
+                        return new FetchResult(false, new JsonArray(), 0);
+                    }
+
+                    // Older servers ignore the Accept header and answer with JSON
+                    binarySupported = isBinary(response);
+                    if (binarySupported) {
+                        return readBinaryFetch(channel, response);
+                    }
+
+                    JsonObject json = GSON.fromJson(new String(response.body(), StandardCharsets.UTF_8),
+                            JsonObject.class);
+                    JsonArray messages = json.has("messages") ? json.getAsJsonArray("messages") : new JsonArray();
+                    // Older servers don't long-poll and leave out "wait"
+                    long wait = json.has("wait") ? json.get("wait").getAsLong() : 0;
+                    serverWaitMillis = wait;
+                    rememberEtag(channel, response);
+                    // ... and have no sequence cursors
+                    long nextCursor = json.has("cursor") ? json.get("cursor").getAsLong() : -1;
+                    boolean gap = json.has("gap") && json.get("gap").getAsBoolean();
+                    // Private messages are only there if asked for and new
+                    JsonArray direct = json.has("direct") ? json.getAsJsonArray("direct") : new JsonArray();
+                    long nextDmCursor = json.has("dmCursor") ? json.get("dmCursor").getAsLong() : -1;
+                    return new FetchResult(true, messages, wait, 0, nextCursor, gap, direct, nextDmCursor);
+                })
+                .exceptionally(e -> {
+                    DirectChatMod.LOGGER.error("Failed to fetch messages", e);
+                    return new FetchResult(false, new JsonArray(), 0);
+                });
+    }
+
+    /**
+     * List the channels the player may join.
+     *
+     * @return Objects with "name", "joined" and "subscribers", or null if the
+     *         request failed or the server has no channels
+     */
+    public CompletableFuture<JsonArray> listChannels() {
+        String token = config.getAuthToken();
+        if (token == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(config.getCurrentUrl() + "/api/channels"))
+                .header("Authorization", "Bearer " + token)
+                .header("Accept-Encoding", ACCEPT_ENCODING)
                 .timeout(TIMEOUT)
                 .GET()
                 .build();
 
-        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+        return httpClient.sendAsync(request, decodedBody())
                 .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        return null;
+                    }
                     JsonObject json = GSON.fromJson(response.body(), JsonObject.class);
-                    JsonArray messages = json.has("messages") ? json.getAsJsonArray("messages") : new JsonArray();
-                    return new FetchResult(true, messages);
+                    return json.has("channels") ? json.getAsJsonArray("channels") : null;
                 })
                 .exceptionally(e -> {
-                    DirectChatMod.LOGGER.error("Failed to fetch messages", e);
-                    return new FetchResult(false, new JsonArray());
+                    DirectChatMod.LOGGER.error("Failed to list channels", e);
+                    return null;
                 });
     }
 
+    /**
+     * Join a channel, so its messages are pushed to this client.
+     *
+     * @return Error message, or null if the channel was joined
+     */
+    public CompletableFuture<String> joinChannel(String channel) {
+        return channelAction("join", channel);
+    }
+
+    /**
+     * Leave a channel.
+     *
+     * @return Error message, or null if the channel was left
+     */
+    public CompletableFuture<String> leaveChannel(String channel) {
+        return channelAction("leave", channel);
+    }
+
+    private CompletableFuture<String> channelAction(String action, String channel) {
+        String token = config.getAuthToken();
+        if (token == null) {
+            return CompletableFuture.completedFuture("Not connected");
+        }
+
+        JsonObject body = new JsonObject();
+        body.addProperty("action", action);
+        body.addProperty("channel", channel);
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(config.getCurrentUrl() + "/api/channels"))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + token)
+                .header("Accept-Encoding", ACCEPT_ENCODING)
+                .timeout(TIMEOUT)
+                .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(body)))
+                .build();
+
+        return httpClient.sendAsync(request, decodedBody())
+                .thenApply(response -> {
+                    if (response.statusCode() == 404) {
+                        return "Server has no channels";
+                    }
+                    JsonObject json = GSON.fromJson(response.body(), JsonObject.class);
+                    if (json.has("status") && "OK".equals(json.get("status").getAsString())) {
+                        return null;
+                    }
+                    return json.has("message") ? json.get("message").getAsString() : "Unknown error";
+                })
+                .exceptionally(e -> {
+                    DirectChatMod.LOGGER.error("Failed to {} channel {}", action, channel, e);
+                    return e.getMessage();
+                });
+    }
+
+    /**
+     * Open a WebSocket connection to the server's /api/ws endpoint.
+     * 
+     * @param messageHandler Called for every chat and private message pushed by the server
+     * @param closeHandler   Called when the connection closes
+     * @return True if the upgrade succeeded; false means keep using HTTP polling
+     */
+    public CompletableFuture<Boolean> connectWebSocket(Consumer<JsonObject> messageHandler, Runnable closeHandler) {
+        String token = config.getAuthToken();
+        URI uri = webSocketUri();
+        if (token == null || uri == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        return WebSocketTransport.connect(httpClient, uri, token, messageHandler, closeHandler, TIMEOUT)
+                .thenApply(ws -> {
+                    webSocket = ws;
+                    DirectChatMod.LOGGER.info("Connected to DirectChat WebSocket at {}", uri);
+                    return true;
+                })
+                .exceptionally(e -> {
+                    DirectChatMod.LOGGER.warn("WebSocket upgrade failed, using HTTP polling: {}", e.getMessage());
+                    return false;
+                });
+    }
+
+    /**
+     * Close the WebSocket connection, if any.
+     */
+    public void disconnectWebSocket() {
+        WebSocketTransport ws = webSocket;
+        webSocket = null;
+        if (ws != null) {
+            ws.close();
+        }
+    }
+
+    public boolean isWebSocketOpen() {
+        WebSocketTransport ws = webSocket;
+        return ws != null && ws.isOpen();
+    }
+
+    /**
+     * Build the ws:// (or wss:// for HTTPS servers) URI of the WebSocket endpoint.
+     */
+    private URI webSocketUri() {
+        int port = websocketPort;
+        String url = config.getCurrentUrl();
+        if (port <= 0 || url == null || url.isEmpty()) {
+            return null;
+        }
+
+        try {
+            URI base = URI.create(url);
+            String scheme = "https".equalsIgnoreCase(base.getScheme()) ? "wss" : "ws";
+            return new URI(scheme, null, base.getHost(), port, "/api/ws", null, null);
+        } catch (IllegalArgumentException | URISyntaxException e) {
+            return null;
+        }
+    }
+
+    private void rememberWebSocketPort(JsonObject json) {
+        if (json.has("websocket_port")) {
+            websocketPort = json.get("websocket_port").getAsInt();
+        }
+    }
+
     /**
      * Submit captcha verification.
      * 
@@ -152,16 +552,18 @@ public class ApiClient {
         HttpRequest request = HttpRequest.newBuilder()
                 .uri(URI.create(config.getCurrentUrl() + "/api/auth"))
                 .header("Content-Type", "application/json")
+                .header("Accept-Encoding", ACCEPT_ENCODING)
                 .timeout(TIMEOUT)
                 .POST(HttpRequest.BodyPublishers.ofString(GSON.toJson(body)))
                 .build();
 
-        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+        return httpClient.sendAsync(request, decodedBody())
                 .thenApply(response -> {
                     JsonObject json = GSON.fromJson(response.body(), JsonObject.class);
                     String status = json.has("status") ? json.get("status").getAsString() : "ERROR";
                     String token = json.has("token") ? json.get("token").getAsString() : null;
                     String message = json.has("message") ? json.get("message").getAsString() : null;
+                    rememberWebSocketPort(json);
 
                     return new AuthResult(status, token, null, message);
                 })
@@ -171,6 +573,147 @@ public class ApiClient {
                 });
     }
 
+    /**
+     * Total response body bytes received over the wire.
+     */
+    public long getReceivedBytes() {
+        return receivedBytes.sum();
+    }
+
+    /**
+     * Total response body bytes after decompression.
+     */
+    public long getDecodedBytes() {
+        return decodedBytes.sum();
+    }
+
+    /**
+     * Convert a binary fetch response into the same shape as the JSON one.
+     */
+    private FetchResult readBinaryFetch(String channel, HttpResponse<byte[]> response) {
+        BinaryProtocol.FetchResponse fetch;
+        try {
+            fetch = BinaryProtocol.readFetch(response.body());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        JsonArray messages = new JsonArray();
+        for (BinaryProtocol.Message msg : fetch.messages()) {
+            JsonObject json = new JsonObject();
+            json.addProperty("sender", msg.sender());
+            json.addProperty("message", msg.message());
+            json.addProperty("timestamp", msg.timestamp());
+            messages.add(json);
+        }
+        JsonArray direct = new JsonArray();
+        for (BinaryProtocol.DirectMessage msg : fetch.direct()) {
+            JsonObject json = new JsonObject();
+            json.addProperty("seq", msg.sequence());
+            json.addProperty("sender", msg.sender());
+            json.addProperty("to", msg.to());
+            json.addProperty("message", msg.message());
+            json.addProperty("timestamp", msg.timestamp());
+            direct.add(json);
+        }
+        serverWaitMillis = fetch.waitMillis();
+        rememberEtag(channel, response);
+        return new FetchResult(true, messages, fetch.waitMillis(), 0, fetch.cursor(), fetch.gap(), direct,
+                fetch.dmCursor());
+    }
+
+    /**
+     * Drop a token the server no longer accepts, so the player has to connect
+     * again. Channels polled with the same token only do this once.
+     */
+    private void tokenRejected(String token) {
+        DirectChatMod mod = DirectChatMod.getInstance();
+        synchronized (mod) {
+            if (!mod.isConnected() || !token.equals(config.getAuthToken())) {
+                return;
+            }
+            mod.disconnect();
+        }
+        ChatInterceptor.displayWarning("Session expired, use /directchat connect to log in again");
+    }
+
+    private void rememberEtag(String channel, HttpResponse<?> response) {
+        String etag = response.headers().firstValue("ETag").orElse(null);
+        if (etag != null) {
+            fetchEtags.put(channel, etag);
+        } else {
+            fetchEtags.remove(channel);
+        }
+    }
+
+    private static String channelParam(String channel) {
+        return "channel=" + URLEncoder.encode(channel, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Retry-After of a response in milliseconds (seconds form only), 0 if absent.
+     */
+    private static long retryAfterMillis(HttpResponse<?> response) {
+        String value = response.headers().firstValue("Retry-After").orElse(null);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static boolean isBinary(HttpResponse<?> response) {
+        return BinaryProtocol.isBinary(response.headers().firstValue("Content-Type").orElse(null));
+    }
+
+    /**
+     * Body handler that transparently decodes gzip/deflate responses into a string.
+     */
+    private HttpResponse.BodyHandler<String> decodedBody() {
+        return responseInfo -> HttpResponse.BodySubscribers.mapping(
+                decodedBodyBytes().apply(responseInfo),
+                bytes -> new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Body handler that transparently decodes gzip/deflate responses.
+     */
+    private HttpResponse.BodyHandler<byte[]> decodedBodyBytes() {
+        return responseInfo -> {
+            String encoding = responseInfo.headers().firstValue("Content-Encoding").orElse("identity");
+            return HttpResponse.BodySubscribers.mapping(
+                    HttpResponse.BodySubscribers.ofByteArray(),
+                    bytes -> decode(bytes, encoding));
+        };
+    }
+
+    private byte[] decode(byte[] body, String encoding) {
+        receivedBytes.add(body.length);
+
+        byte[] decoded;
+        try {
+            decoded = switch (encoding.trim().toLowerCase()) {
+                case "gzip", "x-gzip" -> readAll(new GZIPInputStream(new ByteArrayInputStream(body)));
+                case "deflate" -> readAll(new InflaterInputStream(new ByteArrayInputStream(body)));
+                default -> body;
+            };
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to decode " + encoding + " response", e);
+        }
+
+        decodedBytes.add(decoded.length);
+        return decoded;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (in) {
+            return in.readAllBytes();
+        }
+    }
+
     /**
      * Result of authentication request.
      */
@@ -184,9 +727,35 @@ public class ApiClient {
         }
     }
 
+    /**
+     * A message waiting to be sent with the next batch.
+     */
+    private record PendingSend(String channel, String message, CompletableFuture<Boolean> result) {
+    }
+
     /**
      * Result of fetch request.
+     * {@code waitMillis} is how long the server was allowed to hold the request.
+     *
+     * @param retryAfterMillis How long the server asked the client to back off (failed fetches only)
+     * @param cursor           Sequence number to fetch after next time, or -1 if unknown
+     * @param gap              Whether the server dropped messages this client never received
+     * @param direct           Private messages sent or received since the requested dm cursor
+     * @param dmCursor         Private message cursor to fetch after next time, or -1 if unchanged
      */
-    public record FetchResult(boolean success, JsonArray messages) {
+    public record FetchResult(boolean success, JsonArray messages, long waitMillis, long retryAfterMillis,
+            long cursor, boolean gap, JsonArray direct, long dmCursor) {
+
+        public FetchResult(boolean success, JsonArray messages, long waitMillis) {
+            this(success, messages, waitMillis, 0, -1, false, new JsonArray(), -1);
+        }
+
+        static FetchResult retryAfter(long millis) {
+            return new FetchResult(false, new JsonArray(), 0, millis, -1, false, new JsonArray(), -1);
+        }
+
+        public boolean isLongPoll() {
+            return waitMillis > 0;
+        }
     }
 }
@@ -0,0 +1,197 @@
+package com.directchat.api;
+
+import com.directchat.DirectChatMod;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * WebSocket connection to the DirectChat /api/ws endpoint.
+ * Carries outgoing messages and server-pushed chat messages over one
+ * persistent connection instead of a request per send plus polling.
+ */
+public class WebSocketTransport implements WebSocket.Listener {
+
+    private static final Gson GSON = new Gson();
+
+    private final Consumer<JsonObject> messageHandler;
+    private final Runnable closeHandler;
+    private final Duration ackTimeout;
+    private final Map<Long, CompletableFuture<Boolean>> pendingAcks = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+    private final StringBuilder partial = new StringBuilder();
+
+    private volatile WebSocket webSocket;
+    private final AtomicBoolean open = new AtomicBoolean(false);
+    // sendText may not be called again until the previous send completed
+    private CompletableFuture<?> sendChain = CompletableFuture.completedFuture(null);
+
+    private WebSocketTransport(Consumer<JsonObject> messageHandler, Runnable closeHandler, Duration ackTimeout) {
+        this.messageHandler = messageHandler;
+        this.closeHandler = closeHandler;
+        this.ackTimeout = ackTimeout;
+    }
+
+    /**
+     * Open a WebSocket connection.
+     *
+     * @param httpClient     Client used for the upgrade request
+     * @param uri            ws:// or wss:// URI of the /api/ws endpoint
+     * @param token          Auth token sent in the upgrade request
+     * @param messageHandler Called with every chat and private message pushed by the server
+     * @param closeHandler   Called once when the connection is closed or fails
+     * @param timeout        Connect and ack timeout
+     * @return Future completing with the open transport, or exceptionally if the upgrade failed
+     */
+    public static CompletableFuture<WebSocketTransport> connect(HttpClient httpClient, URI uri, String token,
+            Consumer<JsonObject> messageHandler, Runnable closeHandler, Duration timeout) {
+        WebSocketTransport transport = new WebSocketTransport(messageHandler, closeHandler, timeout);
+        return httpClient.newWebSocketBuilder()
+                .header("Authorization", "Bearer " + token)
+                .connectTimeout(timeout)
+                .buildAsync(uri, transport)
+                .thenApply(ws -> {
+                    transport.webSocket = ws;
+                    transport.open.set(true);
+                    return transport;
+                });
+    }
+
+    public boolean isOpen() {
+        return open.get();
+    }
+
+    /**
+     * Send a chat message or command.
+     *
+     * @param channel Channel chat messages go to
+     * @return Future completing with true once the server acknowledged it
+     */
+    public CompletableFuture<Boolean> send(String channel, String message) {
+        if (!open.get()) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        long id = nextId.incrementAndGet();
+        JsonObject json = new JsonObject();
+        json.addProperty("type", "send");
+        json.addProperty("id", id);
+        json.addProperty("channel", channel);
+        json.addProperty("message", message);
+
+        CompletableFuture<Boolean> ack = new CompletableFuture<>();
+        pendingAcks.put(id, ack);
+
+        String text = GSON.toJson(json);
+        synchronized (this) {
+            sendChain = sendChain
+                    .handle((ignored, e) -> null)
+                    .thenCompose(ignored -> webSocket.sendText(text, true))
+                    .whenComplete((ws, e) -> {
+                        if (e != null) {
+                            pendingAcks.remove(id);
+                            ack.complete(false);
+                        }
+                    });
+        }
+
+        return ack.orTimeout(ackTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionally(e -> {
+                    pendingAcks.remove(id);
+                    return false;
+                });
+    }
+
+    /**
+     * Close the connection.
+     */
+    public void close() {
+        if (open.get() && webSocket != null) {
+            webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "Disconnect");
+        }
+        markClosed();
+    }
+
+    @Override
+    public void onOpen(WebSocket webSocket) {
+        webSocket.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        partial.append(data);
+        if (last) {
+            String text = partial.toString();
+            partial.setLength(0);
+            handleText(text);
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+        DirectChatMod.LOGGER.info("DirectChat WebSocket closed ({} {})", statusCode, reason);
+        markClosed();
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        DirectChatMod.LOGGER.warn("DirectChat WebSocket error: {}", error.getMessage());
+        markClosed();
+    }
+
+    private void handleText(String text) {
+        JsonObject json;
+        try {
+            json = GSON.fromJson(text, JsonObject.class);
+        } catch (JsonParseException e) {
+            DirectChatMod.LOGGER.warn("Malformed WebSocket message: {}", e.getMessage());
+            return;
+        }
+        if (json == null || !json.has("type")) {
+            return;
+        }
+
+        switch (json.get("type").getAsString()) {
+            case "message", "direct" -> messageHandler.accept(json);
+            case "ack" -> {
+                if (!json.has("id")) {
+                    return;
+                }
+                CompletableFuture<Boolean> ack = pendingAcks.remove(json.get("id").getAsLong());
+                if (ack != null) {
+                    ack.complete(json.has("status") && "OK".equals(json.get("status").getAsString()));
+                }
+            }
+            default -> {
+                // Ignore unknown message types from newer servers
+            }
+        }
+    }
+
+    private void markClosed() {
+        if (!open.compareAndSet(true, false)) {
+            return;
+        }
+        for (CompletableFuture<Boolean> ack : pendingAcks.values()) {
+            ack.complete(false);
+        }
+        pendingAcks.clear();
+        closeHandler.run();
+    }
+}
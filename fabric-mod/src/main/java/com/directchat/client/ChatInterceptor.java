@@ -1,6 +1,8 @@
 package com.directchat.client;
 
 import com.directchat.DirectChatMod;
+import com.directchat.config.DirectChatConfig;
+import com.directchat.protocol.ChatFormat;
 import net.fabricmc.fabric.api.client.message.v1.ClientSendMessageEvents;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.text.Text;
@@ -14,10 +16,22 @@ public class ChatInterceptor {
 
     private static final String COMMAND_PREFIX = "/directchat";
 
+    // Compiled once from the config at registration
+    private static ChatFormat chatFormat = ChatFormat.compile(ChatFormat.DEFAULT_CHAT, ChatFormat.DEFAULT_TIME);
+
     /**
      * Register chat interception events.
      */
     public static void register() {
+        DirectChatConfig config = DirectChatMod.getInstance().getConfig();
+        try {
+            chatFormat = ChatFormat.compile(config.getChatFormat(), config.getTimeFormat());
+        } catch (IllegalArgumentException e) {
+            DirectChatMod.LOGGER.warn("Invalid timeFormat '{}', using {}", config.getTimeFormat(),
+                    ChatFormat.DEFAULT_TIME);
+            chatFormat = ChatFormat.compile(config.getChatFormat(), ChatFormat.DEFAULT_TIME);
+        }
+
         // Intercept chat messages
         ClientSendMessageEvents.ALLOW_CHAT.register(ChatInterceptor::onChatMessage);
 
@@ -107,14 +121,30 @@ public class ChatInterceptor {
     }
 
     /**
-     * Display a message in the chat HUD.
+     * Display a message of a channel in the chat HUD.
      */
-    public static void displayChatMessage(String sender, String message, long timestamp) {
+    public static void displayChatMessage(String sender, String message, long timestamp, String channel) {
         MinecraftClient client = MinecraftClient.getInstance();
         if (client.inGameHud != null) {
-            String formatted = String.format("§b[DC] §e%s§7: §f%s", sender, message);
+            Text formatted = Text.literal(chatFormat.render(sender, message, timestamp, channel));
+            client.execute(() -> {
+                client.inGameHud.getChatHud().addMessage(formatted);
+            });
+        }
+    }
+
+    /**
+     * Display a private message the player sent or received in the chat HUD.
+     */
+    public static void displayDirectMessage(String sender, String to, String message, long timestamp) {
+        MinecraftClient client = MinecraftClient.getInstance();
+        if (client.inGameHud != null && client.player != null) {
+            boolean sent = sender.equalsIgnoreCase(client.player.getName().getString());
+            Text formatted = Text.literal(sent
+                    ? "§d[You -> " + to + "] §f" + message
+                    : "§d[" + sender + " -> You] §f" + message);
             client.execute(() -> {
-                client.inGameHud.getChatHud().addMessage(Text.literal(formatted));
+                client.inGameHud.getChatHud().addMessage(formatted);
             });
         }
     }
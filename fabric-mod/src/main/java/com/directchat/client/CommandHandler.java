@@ -4,6 +4,8 @@ import com.directchat.DirectChatMod;
 import com.directchat.api.ApiClient;
 import com.directchat.config.DirectChatConfig;
 import com.directchat.ui.CaptchaScreen;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import net.fabricmc.fabric.api.client.command.v2.ClientCommandManager;
 import net.fabricmc.fabric.api.client.command.v2.ClientCommandRegistrationCallback;
@@ -11,6 +13,8 @@ import net.minecraft.client.MinecraftClient;
 import net.minecraft.text.Text;
 import net.minecraft.util.Formatting;
 
+import java.util.Locale;
+
 /**
  * Handles /directchat commands.
  */
@@ -44,6 +48,24 @@ public class CommandHandler {
                     .then(ClientCommandManager.literal("status")
                             .executes(context -> handleStatus()))
 
+                    // /directchat channel list|join <name>|leave <name>|switch <name>
+                    .then(ClientCommandManager.literal("channel")
+                            .then(ClientCommandManager.literal("list")
+                                    .executes(context -> handleChannelList()))
+                            .then(ClientCommandManager.literal("join")
+                                    .then(ClientCommandManager.argument("name", StringArgumentType.word())
+                                            .executes(context -> handleChannelJoin(
+                                                    StringArgumentType.getString(context, "name")))))
+                            .then(ClientCommandManager.literal("leave")
+                                    .then(ClientCommandManager.argument("name", StringArgumentType.word())
+                                            .executes(context -> handleChannelLeave(
+                                                    StringArgumentType.getString(context, "name")))))
+                            .then(ClientCommandManager.literal("switch")
+                                    .then(ClientCommandManager.argument("name", StringArgumentType.word())
+                                            .executes(context -> handleChannelSwitch(
+                                                    StringArgumentType.getString(context, "name")))))
+                            .executes(context -> handleChannelList()))
+
                     // /directchat help
                     .then(ClientCommandManager.literal("help")
                             .executes(context -> handleHelp()))
@@ -158,8 +180,98 @@ public class CommandHandler {
         if (config.getCurrentUrl() != null && !config.getCurrentUrl().isEmpty()) {
             sendFeedback("§7Server: §f" + config.getCurrentUrl());
             sendFeedback("§7Secure: " + (config.isSecureConnection() ? "§aYes (HTTPS)" : "§c⚠ No (HTTP)"));
+
+            ApiClient api = mod.getApiClient();
+            sendFeedback("§7Channel: §f#" + config.getActiveChannel());
+            sendFeedback("§7Transport: §f" + (api.isWebSocketOpen() ? "WebSocket" : "HTTP polling"));
+            sendFeedback("§7Received: §f" + api.getReceivedBytes() + " bytes §7(" + api.getDecodedBytes() + " decoded)");
+        }
+
+        return 1;
+    }
+
+    private static int handleChannelList() {
+        DirectChatMod mod = DirectChatMod.getInstance();
+        if (!mod.isConnected()) {
+            sendFeedback("§c[DirectChat] Not connected! Use /directchat connect first.");
+            return 0;
+        }
+
+        String active = mod.getConfig().getActiveChannel();
+        mod.getApiClient().listChannels()
+                .thenAccept(channels -> MinecraftClient.getInstance().execute(() -> {
+                    if (channels == null) {
+                        sendFeedback("§c[DirectChat] Failed to list channels!");
+                        return;
+                    }
+                    sendFeedback("§6=== DirectChat Channels ===");
+                    for (JsonElement element : channels) {
+                        JsonObject channel = element.getAsJsonObject();
+                        String name = channel.get("name").getAsString();
+                        boolean joined = channel.has("joined") && channel.get("joined").getAsBoolean();
+                        int subscribers = channel.has("subscribers") ? channel.get("subscribers").getAsInt() : 0;
+                        sendFeedback((name.equals(active) ? "§a▶ " : "§7  ") + "#" + name
+                                + (joined ? " §f(joined)" : "") + " §7- " + subscribers + " online");
+                    }
+                }));
+        return 1;
+    }
+
+    private static int handleChannelJoin(String name) {
+        DirectChatMod mod = DirectChatMod.getInstance();
+        if (!mod.isConnected()) {
+            sendFeedback("§c[DirectChat] Not connected! Use /directchat connect first.");
+            return 0;
+        }
+
+        String channel = name.toLowerCase(Locale.ROOT);
+        mod.getApiClient().joinChannel(channel)
+                .thenAccept(error -> MinecraftClient.getInstance().execute(() -> {
+                    if (error != null) {
+                        sendFeedback("§c[DirectChat] Could not join #" + channel + ": " + error);
+                        return;
+                    }
+                    mod.getConfig().addChannel(channel);
+                    mod.getMessagePoller().follow(channel);
+                    sendFeedback("§a[DirectChat] Joined #" + channel
+                            + ". Use /directchat channel switch " + channel + " to talk in it.");
+                }));
+        return 1;
+    }
+
+    private static int handleChannelLeave(String name) {
+        DirectChatMod mod = DirectChatMod.getInstance();
+        if (!mod.isConnected()) {
+            sendFeedback("§c[DirectChat] Not connected! Use /directchat connect first.");
+            return 0;
+        }
+
+        String channel = name.toLowerCase(Locale.ROOT);
+        mod.getApiClient().leaveChannel(channel)
+                .thenAccept(error -> MinecraftClient.getInstance().execute(() -> {
+                    if (error != null) {
+                        sendFeedback("§c[DirectChat] Could not leave #" + channel + ": " + error);
+                        return;
+                    }
+                    mod.getConfig().removeChannel(channel);
+                    mod.getMessagePoller().unfollow(channel);
+                    sendFeedback("§e[DirectChat] Left #" + channel + ". Talking in #"
+                            + mod.getConfig().getActiveChannel() + ".");
+                }));
+        return 1;
+    }
+
+    private static int handleChannelSwitch(String name) {
+        DirectChatMod mod = DirectChatMod.getInstance();
+        String channel = name.toLowerCase(Locale.ROOT);
+
+        if (!mod.getConfig().hasChannel(channel)) {
+            sendFeedback("§c[DirectChat] Not in #" + channel + "! Use /directchat channel join " + channel + " first.");
+            return 0;
         }
 
+        mod.getConfig().setActiveChannel(channel);
+        sendFeedback("§a[DirectChat] Now talking in #" + channel + ".");
         return 1;
     }
 
@@ -169,6 +281,9 @@ public class CommandHandler {
         sendFeedback("§e/directchat disconnect §7- Disconnect from server");
         sendFeedback("§e/directchat toggle §7- Toggle Direct Mode on/off");
         sendFeedback("§e/directchat status §7- Show connection status");
+        sendFeedback("§e/directchat channel list §7- List channels you can join");
+        sendFeedback("§e/directchat channel join|leave <name> §7- Join or leave a channel");
+        sendFeedback("§e/directchat channel switch <name> §7- Send chat to a joined channel");
         sendFeedback("§e/directchat help §7- Show this help");
         return 1;
     }
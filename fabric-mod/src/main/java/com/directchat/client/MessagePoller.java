@@ -2,10 +2,14 @@ package com.directchat.client;
 
 import com.directchat.DirectChatMod;
 import com.directchat.api.ApiClient;
+import com.directchat.config.DirectChatConfig;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import net.minecraft.client.MinecraftClient;
 
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
@@ -13,16 +17,51 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * Background polling service that fetches messages from the DirectChat API.
+ * Uses long polling: each fetch is parked on the server until a message
+ * arrives, and the next fetch is issued as soon as the previous one returns.
+ * Falls back to fixed-interval polling if the server doesn't long-poll.
+ * When the server offers a WebSocket endpoint, messages are pushed over it
+ * instead and polling only resumes if that connection drops.
+ *
+ * <p>Every followed channel has its own cursor and its own long-poll loop,
+ * so a quiet channel never delays messages of another. Private messages
+ * come with the fetches of one of them.
  */
 public class MessagePoller {
-    
+
     private static final long POLL_INTERVAL_MS = 1000; // 1 second
-    
+    private static final long LONG_POLL_WAIT_MS = 25000; // 25 seconds
+    private static final long WEBSOCKET_RETRY_MS = 30000; // 30 seconds
+
+    /**
+     * Position of one followed channel.
+     */
+    private static final class Channel {
+        private final String name;
+        private volatile long lastMessageTimestamp;
+        // Sequence number of the last message received, -1 until the server sends one
+        private volatile long cursor = -1;
+        private ScheduledFuture<?> pollingTask;
+
+        Channel(String name, long since) {
+            this.name = name;
+            this.lastMessageTimestamp = since;
+        }
+    }
+
     private final ApiClient apiClient;
     private final ScheduledExecutorService scheduler;
-    private ScheduledFuture<?> pollingTask;
-    private long lastMessageTimestamp = 0;
-    
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+    // Incremented on every start/stop so responses from an old loop are dropped
+    private volatile int generation = 0;
+    private volatile boolean running = false;
+    private volatile long nextWebSocketAttempt = 0;
+    // Channel whose fetches also carry private messages, and the last one
+    // received, kept across restarts so a reconnect doesn't replay the inbox
+    private volatile String dmChannel;
+    private volatile long dmCursor = 0;
+    private volatile String dmServer;
+
     public MessagePoller(ApiClient apiClient) {
         this.apiClient = apiClient;
         this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
@@ -31,38 +70,66 @@ public class MessagePoller {
             return t;
         });
     }
-    
+
     /**
-     * Start polling for messages.
+     * Start polling for messages. Joins the configured channels again, since
+     * the server forgets them when the player leaves.
      */
-    public void start() {
-        if (pollingTask != null && !pollingTask.isCancelled()) {
+    public synchronized void start() {
+        if (running) {
             return; // Already running
         }
-        
-        lastMessageTimestamp = System.currentTimeMillis();
-        
-        pollingTask = scheduler.scheduleAtFixedRate(
-                this::pollMessages,
-                0,
-                POLL_INTERVAL_MS,
-                TimeUnit.MILLISECONDS
-        );
-        
+
+        running = true;
+        generation++;
+        channels.clear();
+        nextWebSocketAttempt = 0;
+        dmChannel = null;
+
+        // The server inbox outlives a reconnect to the same server, and a
+        // cursor past a fresh inbox's head reads it from the start
+        DirectChatConfig config = DirectChatMod.getInstance().getConfig();
+        String server = config.getCurrentUrl();
+        if (!Objects.equals(server, dmServer)) {
+            dmServer = server;
+            dmCursor = 0;
+        }
+
+        // The server joins the default channel on auth
+        if (!config.hasChannel(DirectChatConfig.DEFAULT_CHANNEL)) {
+            apiClient.leaveChannel(DirectChatConfig.DEFAULT_CHANNEL);
+        }
+        for (String channel : config.getChannels()) {
+            if (DirectChatConfig.DEFAULT_CHANNEL.equals(channel)) {
+                follow(channel);
+                continue;
+            }
+            apiClient.joinChannel(channel).thenAccept(error -> {
+                if (error == null) {
+                    follow(channel);
+                } else {
+                    ChatInterceptor.displayWarning("Could not join #" + channel + ": " + error);
+                }
+            });
+        }
+
         DirectChatMod.LOGGER.info("Message poller started");
     }
-    
+
     /**
      * Stop polling for messages.
      */
-    public void stop() {
-        if (pollingTask != null) {
-            pollingTask.cancel(false);
-            pollingTask = null;
+    public synchronized void stop() {
+        running = false;
+        generation++;
+        for (Channel channel : channels.values()) {
+            cancel(channel);
         }
+        channels.clear();
+        apiClient.disconnectWebSocket();
         DirectChatMod.LOGGER.info("Message poller stopped");
     }
-    
+
     /**
      * Shutdown the scheduler completely.
      */
@@ -70,57 +137,206 @@ public class MessagePoller {
         stop();
         scheduler.shutdown();
     }
-    
+
     /**
-     * Poll for new messages.
+     * Start receiving a channel the player has joined, from now on.
      */
-    private void pollMessages() {
+    public synchronized void follow(String name) {
+        if (!running || channels.containsKey(name)) {
+            return;
+        }
+        Channel channel = new Channel(name, System.currentTimeMillis());
+        channels.put(name, channel);
+        if (dmChannel == null) {
+            dmChannel = name;
+        }
+        scheduleNext(generation, channel, 0);
+    }
+
+    /**
+     * Stop receiving a channel the player has left.
+     */
+    public synchronized void unfollow(String name) {
+        Channel channel = channels.remove(name);
+        if (channel != null) {
+            cancel(channel);
+        }
+        if (name.equals(dmChannel)) {
+            // Another channel's next fetch picks the private messages up
+            dmChannel = channels.isEmpty() ? null : channels.keySet().iterator().next();
+        }
+    }
+
+    private static void cancel(Channel channel) {
+        if (channel.pollingTask != null) {
+            channel.pollingTask.cancel(false);
+            channel.pollingTask = null;
+        }
+    }
+
+    /**
+     * Schedule the next poll of a channel in the given loop generation.
+     */
+    private synchronized void scheduleNext(int loop, Channel channel, long delayMs) {
+        if (!running || loop != generation || channels.get(channel.name) != channel || scheduler.isShutdown()) {
+            return;
+        }
+        channel.pollingTask = scheduler.schedule(() -> pollMessages(loop, channel), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Poll a channel for new messages.
+     */
+    private void pollMessages(int loop, Channel channel) {
         DirectChatMod mod = DirectChatMod.getInstance();
-        
+
         // Don't poll if not connected or direct mode is off
         if (!mod.isConnected() || !mod.isDirectModeEnabled()) {
+            scheduleNext(loop, channel, POLL_INTERVAL_MS);
             return;
         }
-        
+
         // Don't poll if player is not in game
         MinecraftClient client = MinecraftClient.getInstance();
         if (client.player == null) {
+            scheduleNext(loop, channel, POLL_INTERVAL_MS);
             return;
         }
-        
-        apiClient.fetchMessages(lastMessageTimestamp)
+
+        // Messages are pushed while the WebSocket is open
+        if (apiClient.isWebSocketOpen()) {
+            scheduleNext(loop, channel, POLL_INTERVAL_MS);
+            return;
+        }
+
+        tryWebSocket();
+
+        long dm = channel.name.equals(dmChannel) ? dmCursor : -1;
+        apiClient.fetchMessages(channel.name, channel.cursor, channel.lastMessageTimestamp, dm, LONG_POLL_WAIT_MS)
                 .thenAccept(result -> {
+                    if (loop != generation || channels.get(channel.name) != channel) {
+                        return; // Poller was restarted or channel left, drop stale response
+                    }
+
+                    // The WebSocket came up while this request was parked and
+                    // already delivered these messages
+                    if (apiClient.isWebSocketOpen()) {
+                        scheduleNext(loop, channel, POLL_INTERVAL_MS);
+                        return;
+                    }
+
                     if (!result.success()) {
+                        // Honour Retry-After from a busy or rate-limiting server
+                        scheduleNext(loop, channel, Math.max(POLL_INTERVAL_MS, result.retryAfterMillis()));
                         return;
                     }
-                    
+
+                    if (result.gap() && channel.cursor >= 0) {
+                        ChatInterceptor.displayWarning("Some messages in #" + channel.name
+                                + " were missed while disconnected");
+                    }
                     JsonArray messages = result.messages();
                     for (int i = 0; i < messages.size(); i++) {
-                        JsonObject msg = messages.get(i).getAsJsonObject();
-                        
-                        String sender = msg.has("sender") ? msg.get("sender").getAsString() : "Unknown";
-                        String message = msg.has("message") ? msg.get("message").getAsString() : "";
-                        long timestamp = msg.has("timestamp") ? msg.get("timestamp").getAsLong() : 0;
-                        
-                        // Update last timestamp
-                        if (timestamp > lastMessageTimestamp) {
-                            lastMessageTimestamp = timestamp;
-                        }
-                        
-                        // Display message in chat
-                        ChatInterceptor.displayChatMessage(sender, message, timestamp);
+                        handleMessage(channel, messages.get(i).getAsJsonObject());
                     }
+                    if (result.cursor() >= 0) {
+                        channel.cursor = result.cursor();
+                    }
+                    JsonArray direct = result.direct();
+                    for (int i = 0; i < direct.size(); i++) {
+                        handleDirectMessage(direct.get(i).getAsJsonObject());
+                    }
+                    if (result.dmCursor() >= 0) {
+                        dmCursor = result.dmCursor();
+                    }
+
+                    // Re-poll right away when the server parked the request,
+                    // otherwise wait the regular interval
+                    scheduleNext(loop, channel, result.isLongPoll() ? 0 : POLL_INTERVAL_MS);
                 })
                 .exceptionally(e -> {
                     DirectChatMod.LOGGER.error("Error polling messages", e);
+                    scheduleNext(loop, channel, POLL_INTERVAL_MS);
                     return null;
                 });
     }
-    
+
+    /**
+     * Try the WebSocket upgrade, at most once per retry interval across all
+     * channel loops. Polling keeps ticking while the socket is open and takes
+     * over again if it drops.
+     */
+    private synchronized void tryWebSocket() {
+        long now = System.currentTimeMillis();
+        if (now < nextWebSocketAttempt) {
+            return;
+        }
+        nextWebSocketAttempt = now + WEBSOCKET_RETRY_MS;
+        apiClient.connectWebSocket(this::handlePushedMessage,
+                () -> nextWebSocketAttempt = System.currentTimeMillis() + WEBSOCKET_RETRY_MS);
+    }
+
+    /**
+     * Handle a message pushed over the WebSocket, for any joined channel or
+     * a private message.
+     */
+    private void handlePushedMessage(JsonObject msg) {
+        if ("direct".equals(msg.get("type").getAsString())) {
+            handleDirectMessage(msg);
+            return;
+        }
+        String name = msg.has("channel") ? msg.get("channel").getAsString() : DirectChatConfig.DEFAULT_CHANNEL;
+        Channel channel = channels.get(name);
+        if (channel != null) {
+            handleMessage(channel, msg);
+        }
+    }
+
+    /**
+     * Display a received message and advance the channel's fetch cursor.
+     * Used for both polled and WebSocket-pushed messages.
+     */
+    private void handleMessage(Channel channel, JsonObject msg) {
+        String sender = msg.has("sender") ? msg.get("sender").getAsString() : "Unknown";
+        String message = msg.has("message") ? msg.get("message").getAsString() : "";
+        long timestamp = msg.has("timestamp") ? msg.get("timestamp").getAsLong() : 0;
+
+        // Update last timestamp, and the cursor for pushed messages
+        if (timestamp > channel.lastMessageTimestamp) {
+            channel.lastMessageTimestamp = timestamp;
+        }
+        if (msg.has("seq")) {
+            channel.cursor = Math.max(channel.cursor, msg.get("seq").getAsLong());
+        }
+
+        // Display message in chat
+        ChatInterceptor.displayChatMessage(sender, message, timestamp, channel.name);
+    }
+
     /**
-     * Reset the last message timestamp (useful when reconnecting).
+     * Display a private message the player sent or received and advance the
+     * private message cursor.
+     */
+    private void handleDirectMessage(JsonObject msg) {
+        String sender = msg.has("sender") ? msg.get("sender").getAsString() : "Unknown";
+        String to = msg.has("to") ? msg.get("to").getAsString() : "Unknown";
+        String message = msg.has("message") ? msg.get("message").getAsString() : "";
+        long timestamp = msg.has("timestamp") ? msg.get("timestamp").getAsLong() : 0;
+        if (msg.has("seq")) {
+            dmCursor = Math.max(dmCursor, msg.get("seq").getAsLong());
+        }
+
+        ChatInterceptor.displayDirectMessage(sender, to, message, timestamp);
+    }
+
+    /**
+     * Reset the last message timestamps and cursors (useful when reconnecting).
      */
     public void resetTimestamp() {
-        lastMessageTimestamp = System.currentTimeMillis();
+        long now = System.currentTimeMillis();
+        for (Channel channel : channels.values()) {
+            channel.lastMessageTimestamp = now;
+            channel.cursor = -1;
+        }
     }
 }
@@ -1,6 +1,7 @@
 package com.directchat.config;
 
 import com.directchat.DirectChatMod;
+import com.directchat.protocol.ChatFormat;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import net.fabricmc.loader.api.FabricLoader;
@@ -8,13 +9,18 @@ import net.fabricmc.loader.api.FabricLoader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Configuration manager for DirectChat mod.
- * Stores connection URL, password, and authentication token.
+ * Stores connection URL, password, authentication token, chat format and
+ * the chat channels followed.
  */
 public class DirectChatConfig {
 
+    public static final String DEFAULT_CHANNEL = "global";
+
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
 
     private transient Path configPath;
@@ -24,6 +30,12 @@ public class DirectChatConfig {
     private String password = "";
     private String authToken = null;
     private boolean directModeEnabled = false;
+    // In-game line format, see ChatFormat for the placeholders
+    private String chatFormat = ChatFormat.DEFAULT_CHAT;
+    private String timeFormat = ChatFormat.DEFAULT_TIME;
+    // Channels joined on connect, and the one chat is sent to
+    private List<String> channels = new ArrayList<>(List.of(DEFAULT_CHANNEL));
+    private String activeChannel = DEFAULT_CHANNEL;
 
     public DirectChatConfig() {
         this.configPath = FabricLoader.getInstance()
@@ -44,6 +56,19 @@ public class DirectChatConfig {
                     this.password = loaded.password;
                     this.authToken = loaded.authToken;
                     this.directModeEnabled = loaded.directModeEnabled;
+                    // Absent in configs saved by older versions
+                    if (loaded.chatFormat != null) {
+                        this.chatFormat = loaded.chatFormat;
+                    }
+                    if (loaded.timeFormat != null) {
+                        this.timeFormat = loaded.timeFormat;
+                    }
+                    if (loaded.channels != null) {
+                        this.channels = new ArrayList<>(loaded.channels);
+                    }
+                    if (loaded.activeChannel != null) {
+                        this.activeChannel = loaded.activeChannel;
+                    }
                 }
                 DirectChatMod.LOGGER.info("Configuration loaded from {}", configPath);
             } catch (IOException e) {
@@ -106,6 +131,51 @@ public class DirectChatConfig {
         save();
     }
 
+    public String getChatFormat() {
+        return chatFormat;
+    }
+
+    public String getTimeFormat() {
+        return timeFormat;
+    }
+
+    public synchronized List<String> getChannels() {
+        return List.copyOf(channels);
+    }
+
+    public synchronized boolean hasChannel(String channel) {
+        return channels.contains(channel);
+    }
+
+    public synchronized void addChannel(String channel) {
+        if (!channels.contains(channel)) {
+            channels.add(channel);
+            save();
+        }
+    }
+
+    /**
+     * Stop following a channel; chat goes to the default channel if it was
+     * the active one.
+     */
+    public synchronized void removeChannel(String channel) {
+        if (channels.remove(channel)) {
+            if (channel.equals(activeChannel)) {
+                activeChannel = DEFAULT_CHANNEL;
+            }
+            save();
+        }
+    }
+
+    public String getActiveChannel() {
+        return activeChannel;
+    }
+
+    public void setActiveChannel(String channel) {
+        this.activeChannel = channel;
+        save();
+    }
+
     /**
      * Check if using HTTPS and warn if not.
      */
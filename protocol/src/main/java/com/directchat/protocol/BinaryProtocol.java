@@ -0,0 +1,364 @@
+package com.directchat.protocol;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of the /api/fetch and /api/send bodies, shared by
+ * the plugin and the mod. Used instead of JSON when the client asks for
+ * {@link #CONTENT_TYPE} in its Accept header.
+ *
+ * <p>Layout (varint = unsigned LEB128, string = varint byte length + UTF-8):
+ * <pre>
+ * fetch response: status=0, varint wait, varint senderCount, string[senderCount],
+ *                 varint messageCount, then per message:
+ *                 varint senderIndex, string message, varint timestamp
+ *                 (first absolute, then zigzag delta from the previous one),
+ *                 then varint cursor, byte flags (1 = gap); older responses end
+ *                 before the cursor and older readers ignore it;
+ *                 then, only if the client asked for private messages:
+ *                 varint dmCursor, varint directCount, then per message:
+ *                 varint seq, string sender, string to, string message,
+ *                 varint timestamp
+ * send request:   string message
+ * send response:  status=0
+ * error:          status=1, string message
+ * </pre>
+ */
+public final class BinaryProtocol {
+
+    public static final String CONTENT_TYPE = "application/x-directchat-binary";
+
+    public static final int STATUS_OK = 0;
+    public static final int STATUS_ERROR = 1;
+
+    private BinaryProtocol() {
+    }
+
+    /**
+     * A chat message as carried by the protocol.
+     */
+    public record Message(String sender, String message, long timestamp) {
+    }
+
+    /**
+     * A private message as carried by the protocol.
+     *
+     * @param sequence Position in the inbox of the player who fetched it
+     * @param to       Name of the recipient
+     */
+    public record DirectMessage(long sequence, String sender, String to, String message, long timestamp) {
+    }
+
+    /**
+     * Decoded fetch response. {@code error} is null on success.
+     *
+     * @param cursor   Sequence number to fetch after next time, or -1 if the
+     *                 server doesn't send one
+     * @param gap      Whether messages were dropped between the requested
+     *                 cursor and the first message returned
+     * @param direct   Private messages of the player, empty if there are none
+     * @param dmCursor Inbox sequence number to fetch private messages after
+     *                 next time, or -1 if the response has no direct section
+     */
+    public record FetchResponse(String error, long waitMillis, List<Message> messages, long cursor, boolean gap,
+            List<DirectMessage> direct, long dmCursor) {
+    }
+
+    // Flags after the fetch cursor
+    private static final int FLAG_GAP = 1;
+
+    /**
+     * Whether an Accept or Content-Type header value names the binary format.
+     */
+    public static boolean isBinary(String header) {
+        return header != null && header.toLowerCase(Locale.ROOT).contains(CONTENT_TYPE);
+    }
+
+    /**
+     * Encode a successful fetch response.
+     *
+     * @param cursor Sequence number of the newest message in history
+     * @param gap    Whether messages were dropped before the returned ones
+     */
+    public static void writeFetch(Output out, long waitMillis, List<Message> messages, long cursor, boolean gap) {
+        // Sender names repeat a lot; send each once and refer to it by index
+        Map<String, Integer> senderIndex = new HashMap<>();
+        List<String> senders = new ArrayList<>();
+        int[] indexes = new int[messages.size()];
+        for (int i = 0; i < messages.size(); i++) {
+            String sender = messages.get(i).sender();
+            Integer index = senderIndex.get(sender);
+            if (index == null) {
+                index = senders.size();
+                senderIndex.put(sender, index);
+                senders.add(sender);
+            }
+            indexes[i] = index;
+        }
+
+        out.write(STATUS_OK);
+        writeVarLong(out, Math.max(0, waitMillis));
+        writeVarLong(out, senders.size());
+        for (String sender : senders) {
+            writeString(out, sender);
+        }
+
+        writeVarLong(out, messages.size());
+        long previous = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            writeVarLong(out, indexes[i]);
+            writeString(out, message.message());
+            if (i == 0) {
+                writeVarLong(out, message.timestamp());
+            } else {
+                writeVarLong(out, zigzag(message.timestamp() - previous));
+            }
+            previous = message.timestamp();
+        }
+
+        writeVarLong(out, Math.max(0, cursor));
+        out.write(gap ? FLAG_GAP : 0);
+    }
+
+    /**
+     * Encode the direct section appended to a fetch response.
+     *
+     * @param dmCursor Sequence number of the newest message in the inbox
+     */
+    public static void writeDirect(Output out, long dmCursor, List<DirectMessage> messages) {
+        writeVarLong(out, Math.max(0, dmCursor));
+        writeVarLong(out, messages.size());
+        for (DirectMessage message : messages) {
+            writeVarLong(out, message.sequence());
+            writeString(out, message.sender());
+            writeString(out, message.to());
+            writeString(out, message.message());
+            writeVarLong(out, message.timestamp());
+        }
+    }
+
+    /**
+     * Encode a send request.
+     */
+    public static void writeSendRequest(Output out, String message) {
+        writeString(out, message);
+    }
+
+    /**
+     * Encode a status-only response: OK when {@code error} is null, otherwise ERROR.
+     */
+    public static void writeStatus(Output out, String error) {
+        if (error == null) {
+            out.write(STATUS_OK);
+        } else {
+            out.write(STATUS_ERROR);
+            writeString(out, error);
+        }
+    }
+
+    /**
+     * Decode a fetch response.
+     */
+    public static FetchResponse readFetch(byte[] data) throws IOException {
+        Input in = new Input(data);
+        String error = readStatus(in);
+        if (error != null) {
+            return new FetchResponse(error, 0, List.of(), -1, false, List.of(), -1);
+        }
+
+        long waitMillis = in.readVarLong();
+        String[] senders = new String[in.readCount()];
+        for (int i = 0; i < senders.length; i++) {
+            senders[i] = in.readString();
+        }
+
+        int count = in.readCount();
+        List<Message> messages = new ArrayList<>(count);
+        long timestamp = 0;
+        for (int i = 0; i < count; i++) {
+            long sender = in.readVarLong();
+            if (sender < 0 || sender >= senders.length) {
+                throw new IOException("Sender index out of range: " + sender);
+            }
+            String message = in.readString();
+            long value = in.readVarLong();
+            timestamp = i == 0 ? value : timestamp + unzigzag(value);
+            messages.add(new Message(senders[(int) sender], message, timestamp));
+        }
+
+        // Servers without sequence cursors end here
+        if (!in.hasRemaining()) {
+            return new FetchResponse(null, waitMillis, messages, -1, false, List.of(), -1);
+        }
+        long cursor = in.readVarLong();
+        boolean gap = (in.readByte() & FLAG_GAP) != 0;
+
+        // Responses without private messages end here
+        if (!in.hasRemaining()) {
+            return new FetchResponse(null, waitMillis, messages, cursor, gap, List.of(), -1);
+        }
+        long dmCursor = in.readVarLong();
+        int directCount = in.readCount();
+        List<DirectMessage> direct = new ArrayList<>(directCount);
+        for (int i = 0; i < directCount; i++) {
+            direct.add(new DirectMessage(in.readVarLong(), in.readString(), in.readString(), in.readString(),
+                    in.readVarLong()));
+        }
+        return new FetchResponse(null, waitMillis, messages, cursor, gap, direct, dmCursor);
+    }
+
+    /**
+     * Decode a send request.
+     */
+    public static String readSendRequest(byte[] data) throws IOException {
+        return new Input(data).readString();
+    }
+
+    /**
+     * Decode a status-only response.
+     *
+     * @return Error message, or null for OK
+     */
+    public static String readStatus(byte[] data) throws IOException {
+        return readStatus(new Input(data));
+    }
+
+    private static String readStatus(Input in) throws IOException {
+        int status = in.readByte();
+        return switch (status) {
+            case STATUS_OK -> null;
+            case STATUS_ERROR -> in.readString();
+            default -> throw new IOException("Unknown status " + status);
+        };
+    }
+
+    private static void writeString(Output out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarLong(Output out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Destination for encoded bytes.
+     */
+    public interface Output {
+        void write(int b);
+
+        void write(byte[] b, int off, int len);
+    }
+
+    /**
+     * Growable byte array output.
+     */
+    public static final class ByteArrayOutput implements Output {
+
+        private byte[] buf;
+        private int count;
+
+        public ByteArrayOutput(int initialCapacity) {
+            this.buf = new byte[Math.max(16, initialCapacity)];
+        }
+
+        @Override
+        public void write(int b) {
+            ensureCapacity(count + 1);
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buf, count);
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, capacity));
+            }
+        }
+    }
+
+    /**
+     * Bounds-checked reader over an encoded body.
+     */
+    private static final class Input {
+
+        private final byte[] data;
+        private int pos;
+
+        Input(byte[] data) {
+            this.data = data;
+        }
+
+        boolean hasRemaining() {
+            return pos < data.length;
+        }
+
+        int readByte() throws IOException {
+            if (pos >= data.length) {
+                throw new EOFException("Truncated message");
+            }
+            return data[pos++] & 0xFF;
+        }
+
+        long readVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Varint too long");
+        }
+
+        /**
+         * Read a length or count, which can't exceed the remaining input.
+         */
+        int readCount() throws IOException {
+            long value = readVarLong();
+            if (value < 0 || value > data.length - pos) {
+                throw new IOException("Invalid length " + value);
+            }
+            return (int) value;
+        }
+
+        String readString() throws IOException {
+            int length = readCount();
+            String value = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.directchat.protocol;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Chat line template shared by the plugin and the mod, such as
+ * {@code "&b[DC] &e{sender}&7: &f{message}"}. Compiled once into a list of
+ * literal text and placeholder segments, so rendering a message is a single
+ * pass over the segments with no parsing or {@code String.format}.
+ *
+ * <p>Placeholders: {@code {sender}}, {@code {message}}, {@code {time}} and
+ * {@code {channel}}; unknown ones are kept as literal text. {@code &} followed
+ * by a color or format code becomes {@code §}; use {@code &&} for a literal
+ * {@code &}.
+ */
+public final class ChatFormat {
+
+    public static final String DEFAULT_CHAT = "&b[DC] &e{sender}&7: &f{message}";
+    public static final String DEFAULT_SYSTEM = "&6[DC System] &f{message}";
+    public static final String DEFAULT_DIRECT = "&d[{sender} &7-> &dme] &f{message}";
+    public static final String DEFAULT_TIME = "HH:mm";
+
+    private static final String CODES = "0123456789abcdefklmnor";
+
+    private enum Field { SENDER, MESSAGE, TIME, CHANNEL }
+
+    // Literal text (String) or placeholder (Field), in order
+    private final Object[] segments;
+    // Length of the literal text, to size the output up front
+    private final int literalLength;
+    // Null if the template has no {time}
+    private final DateTimeFormatter timeFormatter;
+
+    private ChatFormat(Object[] segments, int literalLength, DateTimeFormatter timeFormatter) {
+        this.segments = segments;
+        this.literalLength = literalLength;
+        this.timeFormatter = timeFormatter;
+    }
+
+    /**
+     * Compile a template, formatting {@code {time}} in the local time zone.
+     *
+     * @param timePattern {@link DateTimeFormatter} pattern for {@code {time}}
+     * @throws IllegalArgumentException If the time pattern is invalid
+     */
+    public static ChatFormat compile(String template, String timePattern) {
+        List<Object> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        int literalLength = 0;
+        boolean hasTime = false;
+
+        int i = 0;
+        while (i < template.length()) {
+            char c = template.charAt(i);
+            if (c == '&' && i + 1 < template.length()) {
+                char next = template.charAt(i + 1);
+                if (next == '&') {
+                    literal.append('&');
+                    i += 2;
+                    continue;
+                }
+                if (CODES.indexOf(Character.toLowerCase(next)) >= 0) {
+                    literal.append('§').append(Character.toLowerCase(next));
+                    i += 2;
+                    continue;
+                }
+            }
+            if (c == '{') {
+                int end = template.indexOf('}', i);
+                Field field = end > 0 ? field(template.substring(i + 1, end)) : null;
+                if (field != null) {
+                    if (!literal.isEmpty()) {
+                        literalLength += literal.length();
+                        segments.add(literal.toString());
+                        literal.setLength(0);
+                    }
+                    segments.add(field);
+                    hasTime |= field == Field.TIME;
+                    i = end + 1;
+                    continue;
+                }
+            }
+            literal.append(c);
+            i++;
+        }
+        if (!literal.isEmpty()) {
+            literalLength += literal.length();
+            segments.add(literal.toString());
+        }
+
+        DateTimeFormatter timeFormatter = hasTime
+                ? DateTimeFormatter.ofPattern(timePattern).withZone(ZoneId.systemDefault())
+                : null;
+        return new ChatFormat(segments.toArray(), literalLength, timeFormatter);
+    }
+
+    private static Field field(String name) {
+        return switch (name.toLowerCase(Locale.ROOT)) {
+            case "sender" -> Field.SENDER;
+            case "message" -> Field.MESSAGE;
+            case "time" -> Field.TIME;
+            case "channel" -> Field.CHANNEL;
+            default -> null;
+        };
+    }
+
+    /**
+     * Render a message as legacy § text.
+     *
+     * @param timestamp Epoch milliseconds shown as {@code {time}}
+     */
+    public String render(String sender, String message, long timestamp, String channel) {
+        StringBuilder out = new StringBuilder(literalLength + sender.length() + message.length() + 16);
+        for (Object segment : segments) {
+            if (segment instanceof String text) {
+                out.append(text);
+                continue;
+            }
+            switch ((Field) segment) {
+                case SENDER -> out.append(sender);
+                case MESSAGE -> out.append(message);
+                case TIME -> timeFormatter.formatTo(Instant.ofEpochMilli(timestamp), out);
+                case CHANNEL -> out.append(channel);
+            }
+        }
+        return out.toString();
+    }
+}
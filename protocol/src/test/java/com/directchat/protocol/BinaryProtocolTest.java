@@ -0,0 +1,254 @@
+package com.directchat.protocol;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round trips of the binary fetch and send bodies, and rejection of
+ * malformed input. Encoding size and speed against JSON are measured by
+ * FetchEncodingBenchmark, see spigot-plugin/benchmarks.
+ */
+class BinaryProtocolTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    @Test
+    void emptyFetch() throws IOException {
+        BinaryProtocol.FetchResponse response = roundTrip(0, List.of(), 0, false);
+
+        assertNull(response.error());
+        assertEquals(0, response.waitMillis());
+        assertTrue(response.messages().isEmpty());
+        assertEquals(0, response.cursor());
+        assertFalse(response.gap());
+        assertTrue(response.direct().isEmpty());
+        assertEquals(-1, response.dmCursor());
+    }
+
+    @Test
+    void messagesKeepSendersAndOrder() throws IOException {
+        List<BinaryProtocol.Message> messages = List.of(
+                new BinaryProtocol.Message("Alice", "hi", T0),
+                new BinaryProtocol.Message("Bob", "hello", T0 + 5),
+                new BinaryProtocol.Message("Alice", "héllo wörld ✓", T0 + 5),
+                new BinaryProtocol.Message("Carol", "", T0 + 60_000));
+
+        BinaryProtocol.FetchResponse response = roundTrip(25_000, messages, 42, false);
+
+        assertEquals(25_000, response.waitMillis());
+        assertEquals(messages, response.messages());
+        assertEquals(42, response.cursor());
+    }
+
+    @Test
+    void repeatedSendersAreWrittenOnce() {
+        List<BinaryProtocol.Message> messages = List.of(
+                new BinaryProtocol.Message("Alice", "a", T0),
+                new BinaryProtocol.Message("Alice", "b", T0 + 1),
+                new BinaryProtocol.Message("Alice", "c", T0 + 2));
+
+        byte[] data = encodeFetch(0, messages, 3, false);
+
+        assertEquals(1, occurrences(data, "Alice".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void timestampDeltasMayGoBackwards() throws IOException {
+        List<BinaryProtocol.Message> messages = List.of(
+                new BinaryProtocol.Message("Alice", "a", T0),
+                new BinaryProtocol.Message("Bob", "b", T0 - 1_000),
+                new BinaryProtocol.Message("Alice", "c", T0 + 86_400_000L),
+                new BinaryProtocol.Message("Bob", "d", 0));
+
+        assertEquals(messages, roundTrip(0, messages, 4, false).messages());
+    }
+
+    @Test
+    void cursorAndGap() throws IOException {
+        BinaryProtocol.FetchResponse response = roundTrip(0,
+                List.of(new BinaryProtocol.Message("Alice", "a", T0)), Long.MAX_VALUE, true);
+
+        assertEquals(Long.MAX_VALUE, response.cursor());
+        assertTrue(response.gap());
+        assertEquals(-1, response.dmCursor());
+    }
+
+    @Test
+    void directSection() throws IOException {
+        List<BinaryProtocol.DirectMessage> direct = List.of(
+                new BinaryProtocol.DirectMessage(7, "Alice", "Bob", "psst", T0),
+                new BinaryProtocol.DirectMessage(8, "Bob", "Alice", "what", T0 + 10));
+        BinaryProtocol.ByteArrayOutput out = new BinaryProtocol.ByteArrayOutput(64);
+        BinaryProtocol.writeFetch(out, 0, List.of(new BinaryProtocol.Message("Carol", "x", T0)), 12, false);
+        BinaryProtocol.writeDirect(out, 8, direct);
+
+        BinaryProtocol.FetchResponse response = BinaryProtocol.readFetch(out.toByteArray());
+
+        assertEquals(12, response.cursor());
+        assertEquals(1, response.messages().size());
+        assertEquals(8, response.dmCursor());
+        assertEquals(direct, response.direct());
+    }
+
+    @Test
+    void emptyDirectSectionKeepsItsCursor() throws IOException {
+        BinaryProtocol.ByteArrayOutput out = new BinaryProtocol.ByteArrayOutput(16);
+        BinaryProtocol.writeFetch(out, 0, List.of(), 0, false);
+        BinaryProtocol.writeDirect(out, 3, List.of());
+
+        BinaryProtocol.FetchResponse response = BinaryProtocol.readFetch(out.toByteArray());
+
+        assertTrue(response.direct().isEmpty());
+        assertEquals(3, response.dmCursor());
+    }
+
+    @Test
+    void responseWithoutCursorSection() throws IOException {
+        // Servers from before sequence cursors end after the messages
+        List<BinaryProtocol.Message> messages = List.of(
+                new BinaryProtocol.Message("Alice", "a", T0),
+                new BinaryProtocol.Message("Bob", "b", T0 + 1));
+        byte[] full = encodeFetch(1_000, messages, 5, true);
+        byte[] old = Arrays.copyOf(full, full.length - 2);
+
+        BinaryProtocol.FetchResponse response = BinaryProtocol.readFetch(old);
+
+        assertNull(response.error());
+        assertEquals(1_000, response.waitMillis());
+        assertEquals(messages, response.messages());
+        assertEquals(-1, response.cursor());
+        assertFalse(response.gap());
+        assertEquals(-1, response.dmCursor());
+    }
+
+    @Test
+    void errorResponse() throws IOException {
+        BinaryProtocol.ByteArrayOutput out = new BinaryProtocol.ByteArrayOutput(16);
+        BinaryProtocol.writeStatus(out, "Invalid or expired token");
+        byte[] data = out.toByteArray();
+
+        assertEquals("Invalid or expired token", BinaryProtocol.readStatus(data));
+        BinaryProtocol.FetchResponse response = BinaryProtocol.readFetch(data);
+        assertEquals("Invalid or expired token", response.error());
+        assertTrue(response.messages().isEmpty());
+        assertEquals(-1, response.cursor());
+    }
+
+    @Test
+    void sendRequestAndStatus() throws IOException {
+        BinaryProtocol.ByteArrayOutput request = new BinaryProtocol.ByteArrayOutput(16);
+        BinaryProtocol.writeSendRequest(request, "hello ✓");
+        assertEquals("hello ✓", BinaryProtocol.readSendRequest(request.toByteArray()));
+
+        BinaryProtocol.ByteArrayOutput status = new BinaryProtocol.ByteArrayOutput(16);
+        BinaryProtocol.writeStatus(status, null);
+        assertArrayEquals(new byte[]{BinaryProtocol.STATUS_OK}, status.toByteArray());
+        assertNull(BinaryProtocol.readStatus(status.toByteArray()));
+    }
+
+    @Test
+    void truncatedInputIsRejected() {
+        byte[] full = encodeFetch(25_000, List.of(
+                new BinaryProtocol.Message("Alice", "hello", T0),
+                new BinaryProtocol.Message("Bob", "there", T0 + 1)), 2, false);
+
+        // Cutting into the cursor section reads as an old response; anything
+        // shorter ends inside the messages and must fail
+        int messagesEnd = full.length - 2;
+        for (int length = 0; length < messagesEnd; length++) {
+            byte[] truncated = Arrays.copyOf(full, length);
+            assertThrows(IOException.class, () -> BinaryProtocol.readFetch(truncated), "length " + length);
+        }
+        assertThrows(EOFException.class, () -> BinaryProtocol.readFetch(new byte[0]));
+        assertThrows(EOFException.class, () -> BinaryProtocol.readSendRequest(new byte[0]));
+    }
+
+    @Test
+    void truncatedDirectSectionIsRejected() {
+        BinaryProtocol.ByteArrayOutput out = new BinaryProtocol.ByteArrayOutput(64);
+        BinaryProtocol.writeFetch(out, 0, List.of(), 0, false);
+        int directStart = out.toByteArray().length;
+        BinaryProtocol.writeDirect(out, 1, List.of(new BinaryProtocol.DirectMessage(1, "Alice", "Bob", "hi", T0)));
+        byte[] full = out.toByteArray();
+
+        for (int length = directStart + 1; length < full.length; length++) {
+            byte[] truncated = Arrays.copyOf(full, length);
+            assertThrows(IOException.class, () -> BinaryProtocol.readFetch(truncated), "length " + length);
+        }
+    }
+
+    @Test
+    void oversizedLengthIsRejected() {
+        // A string claiming more bytes than the body holds
+        byte[] send = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0x7F, 'h', 'i'};
+        IOException e = assertThrows(IOException.class, () -> BinaryProtocol.readSendRequest(send));
+        assertTrue(e.getMessage().startsWith("Invalid length"), e.getMessage());
+
+        // A sender count far beyond the body, which must not be allocated
+        byte[] fetch = {BinaryProtocol.STATUS_OK, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        assertThrows(IOException.class, () -> BinaryProtocol.readFetch(fetch));
+
+        // A count that doesn't fit in a long at all
+        byte[] overlong = new byte[12];
+        Arrays.fill(overlong, (byte) 0xFF);
+        overlong[0] = BinaryProtocol.STATUS_OK;
+        overlong[1] = 0;
+        assertThrows(IOException.class, () -> BinaryProtocol.readFetch(overlong));
+    }
+
+    @Test
+    void senderIndexOutOfRangeIsRejected() {
+        // One sender, one message pointing at sender 1
+        byte[] data = {BinaryProtocol.STATUS_OK, 0, 1, 1, 'A', 1, 1, 1, 'x', 0};
+        IOException e = assertThrows(IOException.class, () -> BinaryProtocol.readFetch(data));
+        assertTrue(e.getMessage().startsWith("Sender index"), e.getMessage());
+    }
+
+    @Test
+    void unknownStatusIsRejected() {
+        assertThrows(IOException.class, () -> BinaryProtocol.readStatus(new byte[]{2}));
+        assertThrows(IOException.class, () -> BinaryProtocol.readFetch(new byte[]{(byte) 0xFF, 0, 0, 0}));
+    }
+
+    @Test
+    void isBinary() {
+        assertTrue(BinaryProtocol.isBinary(BinaryProtocol.CONTENT_TYPE));
+        assertTrue(BinaryProtocol.isBinary("Application/X-DirectChat-Binary, application/json;q=0.5"));
+        assertFalse(BinaryProtocol.isBinary("application/json"));
+        assertFalse(BinaryProtocol.isBinary(null));
+    }
+
+    private static BinaryProtocol.FetchResponse roundTrip(long waitMillis, List<BinaryProtocol.Message> messages,
+            long cursor, boolean gap) throws IOException {
+        return BinaryProtocol.readFetch(encodeFetch(waitMillis, messages, cursor, gap));
+    }
+
+    private static byte[] encodeFetch(long waitMillis, List<BinaryProtocol.Message> messages, long cursor,
+            boolean gap) {
+        BinaryProtocol.ByteArrayOutput out = new BinaryProtocol.ByteArrayOutput(64);
+        BinaryProtocol.writeFetch(out, waitMillis, messages, cursor, gap);
+        return out.toByteArray();
+    }
+
+    private static int occurrences(byte[] data, byte[] part) {
+        int count = 0;
+        for (int i = 0; i + part.length <= data.length; i++) {
+            if (Arrays.equals(data, i, i + part.length, part, 0, part.length)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,87 @@
+package com.directchat;
+
+import com.directchat.auth.TokenManager;
+import com.directchat.chat.ChatManager;
+import com.directchat.chat.ChatMessage;
+import com.directchat.metrics.MetricsRegistry;
+import com.directchat.standalone.StubPlayerRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Deterministic chat data for benchmarks, so runs are comparable.
+ */
+public final class BenchmarkData {
+
+    // Timestamps are one millisecond apart starting here
+    public static final long FIRST_TIMESTAMP = 1_700_000_000_000L;
+
+    private static final int SENDERS = 20;
+    private static final String[] WORDS = {
+            "hello", "anyone", "at", "spawn", "?", "selling", "diamonds", "for", "emeralds",
+            "gg", "brb", "the", "nether", "portal", "is", "broken", "again", "\"quoted\"",
+            "<b>", "über", "日本語", "lol", "where", "base", "x=120", "z=-340"
+    };
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Chat messages from a few senders, of typical length, including some
+     * characters that need escaping.
+     */
+    public static List<ChatMessage> messages(int count, long firstTimestamp) {
+        Random random = new Random(count);
+        List<ChatMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int sender = random.nextInt(SENDERS);
+            messages.add(message(random, new UUID(0, sender), "Player" + sender, firstTimestamp + i));
+        }
+        return messages;
+    }
+
+    /**
+     * A chat message with random words.
+     */
+    public static ChatMessage message(Random random, UUID sender, String senderName, long timestamp) {
+        StringBuilder text = new StringBuilder();
+        int words = 2 + random.nextInt(12);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return new ChatMessage(sender.toString(), senderName, text.toString(), timestamp);
+    }
+
+    /**
+     * Off-heap budget for a {@code store} benchmark parameter: 0 for "heap",
+     * enough for a million messages for "offheap".
+     */
+    public static long offHeapMemory(String store) {
+        return "offheap".equals(store) ? 512L * 1024 * 1024 : 0;
+    }
+
+    /**
+     * A chat manager with a full history of the given size.
+     */
+    public static ChatManager chatManager(int historySize) {
+        return chatManager(historySize, 0);
+    }
+
+    /**
+     * A chat manager with a full history of the given size, packed into
+     * offHeapMemory bytes of direct memory unless that is 0.
+     */
+    public static ChatManager chatManager(int historySize, long offHeapMemory) {
+        ChatManager chatManager = new ChatManager(historySize, offHeapMemory, new TokenManager(0),
+                new StubPlayerRegistry(), Logger.getLogger("DirectChat"), new MetricsRegistry());
+        chatManager.appendToHistory(messages(historySize, FIRST_TIMESTAMP));
+        return chatManager;
+    }
+}
@@ -0,0 +1,133 @@
+package com.directchat.api;
+
+import com.directchat.BenchmarkData;
+import com.directchat.chat.ChannelManager;
+import com.directchat.chat.ChatManager;
+import com.directchat.player.ChatPlayer;
+import com.directchat.standalone.StandaloneServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Full /api/fetch handling without HTTP: token check, history lookup and
+ * response encoding, hosted by an unstarted {@link StandaloneServer}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FetchBenchmark {
+
+    private static final int DIRECT_MESSAGES = 20;
+
+    @Param({"100", "1000", "10000"})
+    public int historySize;
+
+    @Param({"false", "true"})
+    public boolean binary;
+
+    private ChatManager chatManager;
+    private ApiHandler apiHandler;
+    private String token;
+    private String currentEtag;
+    private final AtomicLong nextTimestamp = new AtomicLong();
+    private final Random random = new Random(42);
+    private final UUID writer = new UUID(1, 1);
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        StandaloneServer server = new StandaloneServer(Map.of("message-history-size", Integer.toString(historySize),
+                "history-log-enabled", "false"));
+        token = server.getTokenManager().generateToken(new UUID(0, 0));
+        chatManager = server.getChannelManager().getGlobal();
+        chatManager.appendToHistory(BenchmarkData.messages(historySize, BenchmarkData.FIRST_TIMESTAMP));
+        apiHandler = new ApiHandler(server);
+        nextTimestamp.set(BenchmarkData.FIRST_TIMESTAMP + historySize);
+        currentEtag = apiHandler.handleFetch(token, ChannelManager.GLOBAL, 0, 0, -1, 0, null, binary).etag();
+
+        // Private messages for directCatchUp, from a second player
+        ChatPlayer reader = server.getPlayerRegistry().getOnlinePlayer(new UUID(0, 0));
+        ChatPlayer sender = server.getPlayerRegistry().getOnlinePlayer(new UUID(0, 1));
+        for (int i = 0; i < DIRECT_MESSAGES; i++) {
+            server.getChannelManager().getDirectMessages().send(sender, reader, "private message " + i);
+        }
+    }
+
+    /**
+     * A client catching up on the last 10 messages.
+     */
+    @Benchmark
+    public ApiHandler.FetchResponse catchUp() throws IOException {
+        return apiHandler.handleFetch(token, ChannelManager.GLOBAL, 0, chatManager.getSnapshot().lastSequence() - 10,
+                -1, 0, null, binary);
+    }
+
+    /**
+     * The same with the last 5 private messages added to the shared response.
+     */
+    @Benchmark
+    public ApiHandler.FetchResponse directCatchUp() throws IOException {
+        return apiHandler.handleFetch(token, ChannelManager.GLOBAL, 0, chatManager.getSnapshot().lastSequence() - 10,
+                DIRECT_MESSAGES - 5, 0, null, binary);
+    }
+
+    /**
+     * The same for an older client using timestamps.
+     */
+    @Benchmark
+    public ApiHandler.FetchResponse catchUpSince() throws IOException {
+        return apiHandler.handleFetch(token, ChannelManager.GLOBAL, chatManager.getSnapshot().newestTimestamp() - 10,
+                -1, -1, 0, null, binary);
+    }
+
+    /**
+     * A client joining and fetching the whole history.
+     */
+    @Benchmark
+    public ApiHandler.FetchResponse fullHistory() throws IOException {
+        return apiHandler.handleFetch(token, ChannelManager.GLOBAL, 0, 0, -1, 0, null, binary);
+    }
+
+    /**
+     * A client that is up to date and gets 304.
+     */
+    @Benchmark
+    public ApiHandler.FetchResponse notModified() throws IOException {
+        return apiHandler.handleFetch(token, ChannelManager.GLOBAL, 0, chatManager.getSnapshot().lastSequence(), -1,
+                0, currentEtag, binary);
+    }
+
+    /**
+     * Catching up while a writer invalidates cached responses.
+     */
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public ApiHandler.FetchResponse catchUpWhileWriting() throws IOException {
+        return catchUp();
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void append() {
+        chatManager.appendToHistory(List.of(
+                BenchmarkData.message(random, writer, "Writer", nextTimestamp.getAndIncrement())));
+    }
+}
@@ -0,0 +1,91 @@
+package com.directchat.api;
+
+import com.directchat.BenchmarkData;
+import com.directchat.chat.ChatMessage;
+import com.directchat.chat.StoredMessage;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding a fetch response: the Gson tree the handler used to build,
+ * the streaming codec with pre-encoded messages, and the binary protocol.
+ * Run with {@code -prof gc} to compare allocation per response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FetchEncodingBenchmark {
+
+    private static final Gson GSON = new Gson();
+
+    @Param({"10", "100", "1000"})
+    public int messageCount;
+
+    private List<ChatMessage> messages;
+    private List<StoredMessage> stored;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        messages = BenchmarkData.messages(messageCount, BenchmarkData.FIRST_TIMESTAMP);
+        stored = new ArrayList<>(messageCount);
+        for (ChatMessage message : messages) {
+            stored.add(StoredMessage.of(message));
+        }
+    }
+
+    @Benchmark
+    public byte[] gsonTree() {
+        JsonArray messagesArray = new JsonArray();
+        for (ChatMessage msg : messages) {
+            JsonObject msgObj = new JsonObject();
+            msgObj.addProperty("sender", msg.senderName());
+            msgObj.addProperty("message", msg.message());
+            msgObj.addProperty("timestamp", msg.timestamp());
+            messagesArray.add(msgObj);
+        }
+
+        JsonObject response = new JsonObject();
+        response.addProperty("status", "OK");
+        response.addProperty("wait", 0);
+        response.addProperty("cursor", messageCount);
+        response.add("messages", messagesArray);
+        return GSON.toJson(response).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] json() {
+        ResponseBuffer out = new ResponseBuffer(256);
+        ApiCodec.writeFetch(out, 0, messageCount, false, stored);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] binary() {
+        ResponseBuffer out = new ResponseBuffer(256);
+        ApiCodec.writeFetchBinary(out, 0, messageCount, false, stored);
+        return out.toByteArray();
+    }
+
+    /**
+     * Cost paid once per message when it is stored.
+     */
+    @Benchmark
+    public StoredMessage encodeStoredMessage() {
+        return StoredMessage.of(messages.get(0));
+    }
+}
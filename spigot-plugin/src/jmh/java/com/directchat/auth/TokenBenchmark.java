@@ -0,0 +1,97 @@
+package com.directchat.auth;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token lookups done on every request, alone and while players
+ * re-authenticate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TokenBenchmark {
+
+    // Players re-authenticating in the churn benchmark
+    private static final int CHURN_PLAYERS = 64;
+
+    @Param({"10", "100", "2000"})
+    public int tokenCount;
+
+    private TokenManager tokenManager;
+    private String[] tokens;
+    private UUID[] churnPlayers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        tokenManager = new TokenManager(3600);
+        tokens = new String[tokenCount];
+        for (int i = 0; i < tokenCount; i++) {
+            tokens[i] = tokenManager.generateToken(new UUID(0, i));
+        }
+        churnPlayers = new UUID[CHURN_PLAYERS];
+        for (int i = 0; i < CHURN_PLAYERS; i++) {
+            churnPlayers[i] = new UUID(1, i);
+            tokenManager.generateToken(churnPlayers[i]);
+        }
+    }
+
+    /**
+     * Per-thread position, so threads don't share a counter.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Benchmark
+    public UUID lookupValid(Cursor cursor) {
+        return tokenManager.getPlayerUuid(nextToken(cursor));
+    }
+
+    @Benchmark
+    public UUID lookupUnknown() {
+        return tokenManager.getPlayerUuid("AAAAAAAAAAAAAAAA");
+    }
+
+    @Benchmark
+    public Set<UUID> authenticatedPlayers() {
+        return tokenManager.getAuthenticatedPlayers();
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(3)
+    public UUID lookupWhileAuthenticating(Cursor cursor) {
+        return tokenManager.getPlayerUuid(nextToken(cursor));
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public String authenticate(Cursor cursor) {
+        UUID player = churnPlayers[cursor.next++ & (CHURN_PLAYERS - 1)];
+        return tokenManager.generateToken(player);
+    }
+
+    private String nextToken(Cursor cursor) {
+        int index = cursor.next++;
+        if (cursor.next == tokens.length) {
+            cursor.next = 0;
+        }
+        return tokens[index];
+    }
+}
@@ -0,0 +1,43 @@
+package com.directchat.chat;
+
+import com.directchat.protocol.ChatFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering an in-game line from a compiled format, against the
+ * {@code String.format} it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChatFormatBenchmark {
+
+    private final ChatFormat plain = ChatFormat.compile(ChatFormat.DEFAULT_CHAT, ChatFormat.DEFAULT_TIME);
+    private final ChatFormat timed = ChatFormat.compile("&8[{time}] &7#{channel} " + ChatFormat.DEFAULT_CHAT,
+            ChatFormat.DEFAULT_TIME);
+    private final String sender = "Player-1234";
+    private final String message = "Has anyone seen the diamonds I left in the chest by spawn?";
+    private final long timestamp = System.currentTimeMillis();
+
+    @Benchmark
+    public String stringFormat() {
+        return String.format("§b[DC] §e%s§7: §f%s", sender, message);
+    }
+
+    @Benchmark
+    public String compiled() {
+        return plain.render(sender, message, timestamp, "global");
+    }
+
+    @Benchmark
+    public String compiledWithTime() {
+        return timed.render(sender, message, timestamp, "global");
+    }
+}
@@ -0,0 +1,87 @@
+package com.directchat.chat;
+
+import com.directchat.BenchmarkData;
+import com.directchat.auth.TokenManager;
+import com.directchat.metrics.MetricsRegistry;
+import com.directchat.standalone.StubPlayerRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Appending to history backed by the persistent chat log, and catching up
+ * from a cursor that is only in the log, {@code behind} messages back.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ChatLogBenchmark {
+
+    private static final int HISTORY_SIZE = 100;
+
+    @Param({"10000", "100000"})
+    public int logSize;
+
+    @Param({"1000", "9000"})
+    public int behind;
+
+    private Path directory;
+    private ChatLog log;
+    private ChatManager chatManager;
+    private final Random random = new Random(42);
+    private final UUID writer = new UUID(1, 1);
+    private long nextTimestamp;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("directchat-log");
+        log = ChatLog.open(directory, 16 * 1024 * 1024, 0, 0, Logger.getLogger("DirectChat"));
+        chatManager = new ChatManager(HISTORY_SIZE, new TokenManager(0), new StubPlayerRegistry(),
+                Logger.getLogger("DirectChat"), new MetricsRegistry());
+        chatManager.restore(log);
+        for (int i = 0; i < logSize; i += 1000) {
+            chatManager.appendToHistory(BenchmarkData.messages(1000, BenchmarkData.FIRST_TIMESTAMP + i));
+        }
+        nextTimestamp = BenchmarkData.FIRST_TIMESTAMP + logSize;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        log.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<StoredMessage> append() {
+        return chatManager.appendToHistory(List.of(
+                BenchmarkData.message(random, writer, "Writer", nextTimestamp++)));
+    }
+
+    @Benchmark
+    public HistorySlice catchUpFromLog() {
+        HistorySnapshot snapshot = chatManager.getSnapshot();
+        return snapshot.after(snapshot.lastSequence() - behind);
+    }
+}
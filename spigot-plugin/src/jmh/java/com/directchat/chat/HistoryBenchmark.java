@@ -0,0 +1,86 @@
+package com.directchat.chat;
+
+import com.directchat.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reading chat history by timestamp and by sequence cursor, alone and while
+ * one writer appends, with history on the heap and off-heap. Readers ask for
+ * the newest {@code newMessages} messages, like a client polling regularly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HistoryBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int historySize;
+
+    @Param({"10", "100"})
+    public int newMessages;
+
+    @Param({"heap", "offheap"})
+    public String store;
+
+    private ChatManager chatManager;
+    private final AtomicLong nextTimestamp = new AtomicLong();
+    private final Random random = new Random(42);
+    private final UUID writer = new UUID(1, 1);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        chatManager = BenchmarkData.chatManager(historySize, BenchmarkData.offHeapMemory(store));
+        nextTimestamp.set(BenchmarkData.FIRST_TIMESTAMP + historySize);
+    }
+
+    @Benchmark
+    public List<ChatMessage> getMessagesSince() {
+        return chatManager.getMessagesSince(pollTimestamp());
+    }
+
+    @Benchmark
+    public List<StoredMessage> snapshotSince() {
+        return chatManager.getSnapshot().since(pollTimestamp());
+    }
+
+    @Benchmark
+    public HistorySlice snapshotAfter() {
+        HistorySnapshot snapshot = chatManager.getSnapshot();
+        return snapshot.after(snapshot.lastSequence() - newMessages);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public List<ChatMessage> readWhileWriting() {
+        return chatManager.getMessagesSince(pollTimestamp());
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void append() {
+        chatManager.appendToHistory(List.of(
+                BenchmarkData.message(random, writer, "Writer", nextTimestamp.getAndIncrement())));
+    }
+
+    private long pollTimestamp() {
+        return chatManager.getSnapshot().newestTimestamp() - newMessages;
+    }
+}
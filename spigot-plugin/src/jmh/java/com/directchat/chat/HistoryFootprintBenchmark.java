@@ -0,0 +1,71 @@
+package com.directchat.chat;
+
+import com.directchat.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a full history costs the garbage collector, on the heap and off-heap:
+ * the time of a full GC while it is held. The heap and direct memory it
+ * retains are printed once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class HistoryFootprintBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int historySize;
+
+    @Param({"heap", "offheap"})
+    public String store;
+
+    private ChatManager chatManager;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        long heapBefore = usedHeap();
+        long directBefore = directMemory();
+        chatManager = BenchmarkData.chatManager(historySize, BenchmarkData.offHeapMemory(store));
+        long heap = usedHeap() - heapBefore;
+        long direct = directMemory() - directBefore;
+        System.out.printf("%n%d messages %s: %.1f MB heap (%d bytes/message), %.1f MB direct%n",
+                chatManager.getSnapshot().size(), store, heap / 1048576.0, heap / historySize, direct / 1048576.0);
+    }
+
+    @Benchmark
+    public void fullGc() {
+        System.gc();
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long directMemory() {
+        long total = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                total += pool.getMemoryUsed();
+            }
+        }
+        return total;
+    }
+}
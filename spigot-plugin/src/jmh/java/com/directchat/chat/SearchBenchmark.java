@@ -0,0 +1,74 @@
+package com.directchat.chat;
+
+import com.directchat.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searching a fully indexed history by words, sender and time range.
+ * Every word occurs in about one message in five, so intersections have
+ * long lists to walk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchBenchmark {
+
+    private static final int LIMIT = 50;
+
+    @Param({"100000", "1000000"})
+    public int historySize;
+
+    private ChatManager chatManager;
+    private long middle;
+
+    @Setup(Level.Trial)
+    public void setUp() throws InterruptedException {
+        chatManager = BenchmarkData.chatManager(historySize);
+        chatManager.startSearchIndex(historySize + 1);
+        // Wait until the indexer has caught up with a marker message
+        chatManager.appendToHistory(List.of(new ChatMessage(new UUID(2, 2).toString(), "Marker", "indexmarker",
+                BenchmarkData.FIRST_TIMESTAMP + historySize)));
+        while (chatManager.search("indexmarker", null, Long.MIN_VALUE, Long.MAX_VALUE, 1).isEmpty()) {
+            Thread.sleep(10);
+        }
+        middle = BenchmarkData.FIRST_TIMESTAMP + historySize / 2;
+    }
+
+    @Benchmark
+    public List<StoredMessage> oneWord() {
+        return chatManager.search("diamonds", null, Long.MIN_VALUE, Long.MAX_VALUE, LIMIT);
+    }
+
+    @Benchmark
+    public List<StoredMessage> twoWords() {
+        return chatManager.search("selling diamonds", null, Long.MIN_VALUE, Long.MAX_VALUE, LIMIT);
+    }
+
+    @Benchmark
+    public List<StoredMessage> senderAndWord() {
+        return chatManager.search("nether", "player7", Long.MIN_VALUE, Long.MAX_VALUE, LIMIT);
+    }
+
+    @Benchmark
+    public List<StoredMessage> wordInTimeRange() {
+        return chatManager.search("portal", null, middle - 60_000, middle, LIMIT);
+    }
+
+    @Benchmark
+    public List<StoredMessage> noMatch() {
+        return chatManager.search("spawn portal broken emeralds", "player3", Long.MIN_VALUE, Long.MAX_VALUE,
+                LIMIT);
+    }
+}
@@ -0,0 +1,110 @@
+package com.directchat;
+
+import com.directchat.api.RequestExecutor;
+import com.directchat.audit.AuditLog;
+import com.directchat.auth.TokenManager;
+import com.directchat.chat.ChannelManager;
+import com.directchat.metrics.MetricsRegistry;
+import com.directchat.player.PlayerRegistry;
+
+import java.util.logging.Logger;
+
+/**
+ * What the API servers need from their host: configuration, shared managers,
+ * players and logging. Implemented by the plugin and by the standalone server.
+ */
+public interface DirectChatContext {
+
+    Logger getLogger();
+
+    /**
+     * Log a message if debug mode is enabled.
+     */
+    void debug(String message);
+
+    /**
+     * Asynchronous log of chat, commands and logins from API clients.
+     */
+    AuditLog getAuditLog();
+
+    TokenManager getTokenManager();
+
+    /**
+     * Chat channels, each with its own history and subscribers.
+     */
+    ChannelManager getChannelManager();
+
+    MetricsRegistry getMetrics();
+
+    PlayerRegistry getPlayerRegistry();
+
+    String getPassword();
+
+    String getCaptchaProvider();
+
+    /**
+     * Port of the running WebSocket endpoint, or 0 if it is disabled.
+     */
+    int getWebSocketPort();
+
+    /**
+     * HTTP server engine: "jdk" (com.sun.net.httpserver) or "nio".
+     */
+    String getServerEngine();
+
+    /**
+     * Most connections the nio engine keeps open at once.
+     */
+    int getNioMaxConnections();
+
+    RequestExecutor.Mode getExecutorMode();
+
+    int getExecutorThreads();
+
+    int getExecutorQueueSize();
+
+    long getExecutorMaxQueueWait();
+
+    /**
+     * Most requests handled at once with 'executor: virtual'.
+     */
+    int getExecutorMaxConcurrent();
+
+    long getLongPollMaxWait();
+
+    /**
+     * Most messages one /api/search request may return.
+     */
+    int getSearchMaxResults();
+
+    boolean isCompressionEnabled();
+
+    int getCompressionMinSize();
+
+    boolean isRequireHttps();
+
+    /**
+     * Keystore file path, already resolved against the host's data directory.
+     */
+    String getKeystorePath();
+
+    String getKeystorePassword();
+
+    /**
+     * Bearer token for /api/metrics and the details of /api/health, or empty
+     * to keep them private.
+     */
+    String getStatsToken();
+
+    int getTlsSessionCacheSize();
+
+    int getTlsSessionTimeout();
+
+    double getSendRateLimit();
+
+    int getSendRateBurst();
+
+    double getFetchRateLimit();
+
+    int getFetchRateBurst();
+}
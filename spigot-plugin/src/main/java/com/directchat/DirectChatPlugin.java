@@ -1,32 +1,96 @@
 package com.directchat;
 
+import com.directchat.api.RequestExecutor;
+import com.directchat.api.TlsSupport;
 import com.directchat.api.WebServer;
+import com.directchat.api.WebSocketServer;
+import com.directchat.audit.AuditLog;
 import com.directchat.auth.TokenManager;
+import com.directchat.chat.ChannelManager;
+import com.directchat.chat.ChatLog;
 import com.directchat.chat.ChatManager;
 import com.directchat.listeners.ChatListener;
+import com.directchat.metrics.MetricsRegistry;
+import com.directchat.player.BukkitPlayerRegistry;
+import com.directchat.player.PlayerRegistry;
+import com.directchat.protocol.ChatFormat;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 /**
  * Main plugin class for DirectChat.
  * Hosts an internal API server for DirectChat mod communication.
  */
-public class DirectChatPlugin extends JavaPlugin {
+public class DirectChatPlugin extends JavaPlugin implements DirectChatContext {
 
     private static DirectChatPlugin instance;
 
     private WebServer webServer;
+    private WebSocketServer webSocketServer;
     private TokenManager tokenManager;
-    private ChatManager chatManager;
+    private ChannelManager channelManager;
+    private AuditLog auditLog;
+    private MetricsRegistry metrics;
+    private PlayerRegistry playerRegistry;
 
     // Configuration values
     private String password;
     private int port;
+    private int websocketPort;
+    private String serverEngine;
+    private int nioMaxConnections;
+    private RequestExecutor.Mode executorMode;
+    private int executorThreads;
+    private int executorQueueSize;
+    private long executorMaxQueueWait;
+    private int executorMaxConcurrent;
     private boolean requireHttps;
+    private String keystorePath;
+    private String keystorePassword;
+    private String statsToken;
+    private int tlsSessionCacheSize;
+    private int tlsSessionTimeout;
     private String captchaProvider;
     private int messageHistorySize;
+    private long historyOffHeapMemory;
+    private boolean historyLogEnabled;
+    private int historyLogSegmentSize;
+    private long historyLogSyncInterval;
+    private long historyLogRetention;
+    private long historyLogMaxSize;
+    private long longPollMaxWait;
+    private long fanoutMaxTickNanos;
+    private List<String> channels;
+    private List<String> restrictedChannels;
+    private boolean teamChannels;
+    private int inboxSize;
+    private boolean searchEnabled;
+    private int searchMaxMessages;
+    private int searchMaxResults;
+    private boolean auditEnabled;
+    private boolean auditConsole;
+    private int auditQueueSize;
+    private long auditFlushInterval;
+    private long auditMaxFileSize;
+    private int auditRetentionDays;
+    private String chatFormat;
+    private String systemFormat;
+    private String directFormat;
+    private String timeFormat;
+    private boolean compressionEnabled;
+    private int compressionMinSize;
     private int tokenExpiry;
+    private double sendRateLimit;
+    private int sendRateBurst;
+    private double fetchRateLimit;
+    private int fetchRateBurst;
     private boolean debug;
 
     @Override
@@ -38,8 +102,23 @@ public class DirectChatPlugin extends JavaPlugin {
         loadConfiguration();
 
         // Initialize managers
+        metrics = new MetricsRegistry();
+        auditLog = AuditLog.start(auditEnabled ? new File(getDataFolder(), "audit").toPath() : null, auditConsole,
+                auditQueueSize, auditFlushInterval, auditMaxFileSize, auditRetentionDays, getLogger(), metrics);
+        BukkitPlayerRegistry bukkitPlayers = new BukkitPlayerRegistry(this);
+        bukkitPlayers.startTeamTracking();
+        getServer().getPluginManager().registerEvents(bukkitPlayers, this);
+        playerRegistry = bukkitPlayers;
         tokenManager = new TokenManager(tokenExpiry);
-        chatManager = new ChatManager(messageHistorySize);
+        channelManager = new ChannelManager(channels, restrictedChannels, teamChannels, messageHistorySize,
+                historyOffHeapMemory, inboxSize, tokenManager, playerRegistry, getLogger(), metrics,
+                this::setUpChannel);
+        channelManager.getDirectMessages().setFormat(directFormat, timeFormat);
+        metrics.gauge("directchat_tokens", "Issued auth tokens", tokenManager::getTokenCount);
+        channelManager.addListener((channel, stored) -> auditLog.chat(channel.getChannel(), stored.message()));
+
+        // Show API messages in game once per tick
+        channelManager.startFanout(fanoutMaxTickNanos);
 
         // Start web server
         webServer = new WebServer(this, port);
@@ -52,25 +131,85 @@ public class DirectChatPlugin extends JavaPlugin {
             return;
         }
 
+        // Start WebSocket endpoint (optional, on its own port)
+        if (websocketPort > 0) {
+            TlsSupport tls = webServer.getTlsSupport();
+            webSocketServer = new WebSocketServer(this, websocketPort, webServer.getApiHandler(),
+                    webServer.getSendLimiter(), tls != null ? tls.getSslContext() : null);
+            try {
+                webSocketServer.start();
+                WebSocketServer sessions = webSocketServer;
+                metrics.gauge("directchat_websocket_sessions", "Open WebSocket sessions", sessions::getSessionCount);
+            } catch (Exception e) {
+                getLogger().log(Level.WARNING, "Failed to start WebSocket endpoint, clients will use HTTP polling", e);
+                webSocketServer = null;
+            }
+        }
+
         // Register event listeners
         getServer().getPluginManager().registerEvents(new ChatListener(this), this);
 
         getLogger().info("DirectChat plugin enabled successfully!");
     }
 
+    /**
+     * Replay a channel's persistent chat log into its history, index it for
+     * /api/search and set its formats. Called for every channel, including
+     * team channels created later. The global channel's log is kept in
+     * history/, the others' in history/&lt;channel&gt;/.
+     */
+    private void setUpChannel(ChatManager channel) {
+        if (historyLogEnabled) {
+            File directory = new File(getDataFolder(), "history");
+            if (!ChannelManager.GLOBAL.equals(channel.getChannel())) {
+                directory = new File(directory, channel.getChannel());
+            }
+            try {
+                ChatLog chatLog = ChatLog.open(directory.toPath(), historyLogSegmentSize, historyLogRetention,
+                        historyLogMaxSize, getLogger());
+                channel.restore(chatLog);
+                chatLog.startSync(historyLogSyncInterval);
+            } catch (IOException e) {
+                getLogger().log(Level.WARNING, "Failed to open chat log of channel " + channel.getChannel()
+                        + ", its history will only be kept in memory", e);
+            }
+        }
+
+        // Index history for /api/search in the background
+        if (searchEnabled) {
+            channel.startSearchIndex(searchMaxMessages);
+        }
+        channel.setFormats(chatFormat, systemFormat, timeFormat);
+    }
+
     @Override
     public void onDisable() {
+        // Stop WebSocket endpoint
+        if (webSocketServer != null) {
+            webSocketServer.stop();
+        }
+
         // Stop web server
         if (webServer != null) {
             webServer.stop();
             getLogger().info("DirectChat API server stopped");
         }
 
+        // Flush the chat logs to disk
+        if (channelManager != null) {
+            channelManager.close();
+        }
+
         // Clear tokens
         if (tokenManager != null) {
             tokenManager.clearAll();
         }
 
+        // Write the audit events still queued
+        if (auditLog != null) {
+            auditLog.close();
+        }
+
         getLogger().info("DirectChat plugin disabled");
     }
 
@@ -79,10 +218,60 @@ public class DirectChatPlugin extends JavaPlugin {
 
         password = getConfig().getString("password", "changeme");
         port = getConfig().getInt("port", 36679);
+        websocketPort = getConfig().getInt("websocket-port", 0);
+        serverEngine = getConfig().getString("engine", "jdk").trim().toLowerCase(Locale.ROOT);
+        nioMaxConnections = getConfig().getInt("nio-max-connections", 10000);
+        executorMode = RequestExecutor.Mode.fromConfig(getConfig().getString("executor", "platform"));
+        executorThreads = getConfig().getInt("executor-threads", 4);
+        executorQueueSize = getConfig().getInt("executor-queue-size", 200);
+        executorMaxQueueWait = getConfig().getLong("executor-max-queue-wait", 5000);
+        executorMaxConcurrent = getConfig().getInt("executor-max-concurrent", 2000);
         requireHttps = getConfig().getBoolean("require-https", false);
+        keystorePath = getConfig().getString("keystore-path", "");
+        keystorePassword = getConfig().getString("keystore-password", "");
+        statsToken = getConfig().getString("stats-token", "");
+        tlsSessionCacheSize = getConfig().getInt("tls-session-cache-size", 10000);
+        tlsSessionTimeout = getConfig().getInt("tls-session-timeout", 86400);
         captchaProvider = getConfig().getString("captcha-provider", "none");
         messageHistorySize = getConfig().getInt("message-history-size", 100);
+        // 0 keeps history on the heap
+        historyOffHeapMemory = "offheap".equalsIgnoreCase(getConfig().getString("history-store", "heap").trim())
+                ? Math.max(1, getConfig().getLong("history-offheap-memory", 256)) * 1024 * 1024
+                : 0;
+        historyLogEnabled = getConfig().getBoolean("history-log-enabled", false);
+        // Segments are mapped whole, so at most 1 GB each
+        historyLogSegmentSize = Math.min(1024, Math.max(1, getConfig().getInt("history-log-segment-size", 16)))
+                * 1024 * 1024;
+        historyLogSyncInterval = Math.max(0, getConfig().getLong("history-log-sync-interval", 1000));
+        historyLogRetention = TimeUnit.HOURS.toMillis(
+                Math.max(0, getConfig().getLong("history-log-retention-hours", 168)));
+        historyLogMaxSize = Math.max(0, getConfig().getLong("history-log-max-size", 512)) * 1024 * 1024;
+        longPollMaxWait = Math.max(0, getConfig().getLong("long-poll-max-wait", 25000));
+        fanoutMaxTickNanos = (long) (Math.max(0, getConfig().getDouble("fanout-max-tick-time", 2)) * 1_000_000);
+        chatFormat = getConfig().getString("format-chat", ChatFormat.DEFAULT_CHAT);
+        systemFormat = getConfig().getString("format-system", ChatFormat.DEFAULT_SYSTEM);
+        directFormat = getConfig().getString("format-direct", ChatFormat.DEFAULT_DIRECT);
+        timeFormat = getConfig().getString("format-time", ChatFormat.DEFAULT_TIME);
+        channels = Arrays.asList(getConfig().getString("channels", "global, trade, staff").split(","));
+        restrictedChannels = Arrays.asList(getConfig().getString("channels-restricted", "staff").split(","));
+        teamChannels = getConfig().getBoolean("team-channels", true);
+        inboxSize = Math.min(10000, Math.max(0, getConfig().getInt("inbox-size", 100)));
+        searchEnabled = getConfig().getBoolean("search-enabled", false);
+        searchMaxMessages = Math.min(50_000_000, Math.max(1000, getConfig().getInt("search-max-messages", 100000)));
+        searchMaxResults = Math.max(1, getConfig().getInt("search-max-results", 100));
+        auditEnabled = getConfig().getBoolean("audit-enabled", true);
+        auditConsole = getConfig().getBoolean("audit-console", true);
+        auditQueueSize = Math.max(16, getConfig().getInt("audit-queue-size", 65536));
+        auditFlushInterval = Math.max(1, getConfig().getLong("audit-flush-interval", 200));
+        auditMaxFileSize = Math.max(0, getConfig().getLong("audit-max-file-size", 64)) * 1024 * 1024;
+        auditRetentionDays = Math.max(0, getConfig().getInt("audit-retention-days", 30));
+        compressionEnabled = getConfig().getBoolean("compression-enabled", true);
+        compressionMinSize = getConfig().getInt("compression-min-size", 1024);
         tokenExpiry = getConfig().getInt("token-expiry", 3600);
+        sendRateLimit = getConfig().getDouble("rate-limit-send-per-second", 2);
+        sendRateBurst = getConfig().getInt("rate-limit-send-burst", 10);
+        fetchRateLimit = getConfig().getDouble("rate-limit-fetch-per-second", 5);
+        fetchRateBurst = getConfig().getInt("rate-limit-fetch-burst", 20);
         debug = getConfig().getBoolean("debug", false);
 
         if ("changeme".equals(password)) {
@@ -94,33 +283,172 @@ public class DirectChatPlugin extends JavaPlugin {
         return instance;
     }
 
+    @Override
     public TokenManager getTokenManager() {
         return tokenManager;
     }
 
-    public ChatManager getChatManager() {
-        return chatManager;
+    @Override
+    public ChannelManager getChannelManager() {
+        return channelManager;
+    }
+
+    @Override
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public PlayerRegistry getPlayerRegistry() {
+        return playerRegistry;
     }
 
+    @Override
     public String getPassword() {
         return password;
     }
 
+    @Override
     public String getCaptchaProvider() {
         return captchaProvider;
     }
 
+    /**
+     * Port of the running WebSocket endpoint, or 0 if it is disabled.
+     */
+    @Override
+    public int getWebSocketPort() {
+        return webSocketServer != null ? webSocketServer.getPort() : 0;
+    }
+
+    /**
+     * HTTP server engine: "jdk" (com.sun.net.httpserver) or "nio".
+     */
+    @Override
+    public String getServerEngine() {
+        return serverEngine;
+    }
+
+    @Override
+    public int getNioMaxConnections() {
+        return nioMaxConnections;
+    }
+
+    @Override
+    public RequestExecutor.Mode getExecutorMode() {
+        return executorMode;
+    }
+
+    @Override
+    public int getExecutorThreads() {
+        return executorThreads;
+    }
+
+    @Override
+    public int getExecutorQueueSize() {
+        return executorQueueSize;
+    }
+
+    @Override
+    public long getExecutorMaxQueueWait() {
+        return executorMaxQueueWait;
+    }
+
+    @Override
+    public int getExecutorMaxConcurrent() {
+        return executorMaxConcurrent;
+    }
+
+    @Override
+    public long getLongPollMaxWait() {
+        return longPollMaxWait;
+    }
+
+    @Override
+    public int getSearchMaxResults() {
+        return searchMaxResults;
+    }
+
+    @Override
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    @Override
+    public int getCompressionMinSize() {
+        return compressionMinSize;
+    }
+
+    @Override
     public boolean isRequireHttps() {
         return requireHttps;
     }
 
+    /**
+     * Keystore path from config, resolved against the plugin folder if relative.
+     */
+    @Override
+    public String getKeystorePath() {
+        if (keystorePath == null || keystorePath.isEmpty()) {
+            return keystorePath;
+        }
+        File file = new File(keystorePath);
+        return file.isAbsolute() ? file.getPath() : new File(getDataFolder(), keystorePath).getPath();
+    }
+
+    @Override
+    public String getKeystorePassword() {
+        return keystorePassword;
+    }
+
+    @Override
+    public String getStatsToken() {
+        return statsToken;
+    }
+
+    @Override
+    public int getTlsSessionCacheSize() {
+        return tlsSessionCacheSize;
+    }
+
+    @Override
+    public int getTlsSessionTimeout() {
+        return tlsSessionTimeout;
+    }
+
+    @Override
+    public double getSendRateLimit() {
+        return sendRateLimit;
+    }
+
+    @Override
+    public int getSendRateBurst() {
+        return sendRateBurst;
+    }
+
+    @Override
+    public double getFetchRateLimit() {
+        return fetchRateLimit;
+    }
+
+    @Override
+    public int getFetchRateBurst() {
+        return fetchRateBurst;
+    }
+
     public boolean isDebug() {
         return debug;
     }
 
+    @Override
     public void debug(String message) {
         if (debug) {
-            getLogger().info("[DEBUG] " + message);
+            auditLog.debug(message);
         }
     }
+
+    @Override
+    public AuditLog getAuditLog() {
+        return auditLog;
+    }
 }
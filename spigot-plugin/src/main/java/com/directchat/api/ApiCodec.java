@@ -0,0 +1,398 @@
+package com.directchat.api;
+
+import com.directchat.chat.ChatManager;
+import com.directchat.chat.ChatMessage;
+import com.directchat.chat.DirectMessage;
+import com.directchat.chat.StoredMessage;
+import com.directchat.protocol.BinaryProtocol;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Streaming JSON codec for API requests and responses.
+ * Reads request fields with {@link JsonReader} and writes responses with
+ * {@link JsonWriter} straight into a {@link ResponseBuffer}, without building
+ * JsonObject trees. Output matches what Gson produced for the same objects.
+ * Clients that negotiated the {@link BinaryProtocol} get binary fetch responses instead.
+ */
+final class ApiCodec {
+
+    // Fixed parts of the /api/fetch response around the wait value and messages
+    private static final byte[] FETCH_HEAD = "{\"status\":\"OK\",\"wait\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FETCH_CURSOR = ",\"cursor\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FETCH_GAP = ",\"gap\":true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FETCH_MESSAGES = ",\"messages\":[".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FETCH_TAIL = "]}".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DIRECT_CURSOR = ",\"dmCursor\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DIRECT_MESSAGES = ",\"direct\":[".getBytes(StandardCharsets.US_ASCII);
+
+    private ApiCodec() {
+    }
+
+    /**
+     * Fields of an /api/auth request. Missing fields are null.
+     */
+    record AuthRequest(String uuid, String password, String captchaResponse) {
+    }
+
+    /**
+     * Read an /api/auth request body.
+     */
+    static AuthRequest readAuthRequest(byte[] body) throws IOException {
+        String uuid = null;
+        String password = null;
+        String captchaResponse = null;
+
+        try (JsonReader reader = reader(body)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "uuid" -> uuid = nextString(reader);
+                    case "password" -> password = nextString(reader);
+                    case "captcha_response" -> captchaResponse = nextString(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        return new AuthRequest(uuid, password, captchaResponse);
+    }
+
+    /**
+     * Fields of a POST /api/channels request. Missing fields are null.
+     */
+    record ChannelAction(String action, String channel) {
+    }
+
+    /**
+     * Read a POST /api/channels request body.
+     */
+    static ChannelAction readChannelAction(byte[] body) throws IOException {
+        String action = null;
+        String channel = null;
+
+        try (JsonReader reader = reader(body)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "action" -> action = nextString(reader);
+                    case "channel" -> channel = nextString(reader);
+                    default -> reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        return new ChannelAction(action, channel);
+    }
+
+    /**
+     * Read the "message" field of an /api/send request body, or null.
+     */
+    static String readSendMessage(byte[] body) throws IOException {
+        String message = null;
+
+        try (JsonReader reader = reader(body)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("message".equals(reader.nextName())) {
+                    message = nextString(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        return message;
+    }
+
+    /**
+     * Read the "messages" array of an /api/send/batch request body, or null.
+     * Items that aren't strings are kept as null so results stay aligned.
+     */
+    static List<String> readSendBatch(byte[] body) throws IOException {
+        List<String> messages = null;
+
+        try (JsonReader reader = reader(body)) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if ("messages".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    messages = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        JsonToken token = reader.peek();
+                        if (token == JsonToken.BEGIN_ARRAY || token == JsonToken.BEGIN_OBJECT) {
+                            reader.skipValue();
+                            messages.add(null);
+                        } else {
+                            messages.add(nextString(reader));
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+
+        return messages;
+    }
+
+    /**
+     * /api/send/batch response: {"status":"OK","results":[{"status":...},...]}
+     *
+     * @param errors Error message per item, null for items that were sent
+     */
+    static void writeBatchResults(ResponseBuffer out, List<String> errors) throws IOException {
+        JsonWriter writer = writer(out);
+        writer.beginObject();
+        writer.name("status").value("OK");
+        writer.name("results").beginArray();
+        for (String error : errors) {
+            writer.beginObject();
+            writer.name("status").value(error == null ? "OK" : "ERROR");
+            if (error != null) {
+                writer.name("message").value(error);
+            }
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+    }
+
+    /**
+     * {"status":"OK"}
+     */
+    static void writeOk(ResponseBuffer out) throws IOException {
+        JsonWriter writer = writer(out);
+        writer.beginObject();
+        writer.name("status").value("OK");
+        writer.endObject();
+        writer.flush();
+    }
+
+    /**
+     * {"status":"ERROR","message":...}
+     */
+    static void writeError(ResponseBuffer out, String message) throws IOException {
+        JsonWriter writer = writer(out);
+        writer.beginObject();
+        writer.name("status").value("ERROR");
+        writer.name("message").value(message);
+        writer.endObject();
+        writer.flush();
+    }
+
+    /**
+     * GET /api/channels response:
+     * {"status":"OK","channels":[{"name":...,"joined":...,"subscribers":...},...]}
+     */
+    static void writeChannels(ResponseBuffer out, List<ChatManager> channels, UUID playerUuid) throws IOException {
+        JsonWriter writer = writer(out);
+        writer.beginObject();
+        writer.name("status").value("OK");
+        writer.name("channels").beginArray();
+        for (ChatManager channel : channels) {
+            writer.beginObject();
+            writer.name("name").value(channel.getChannel());
+            writer.name("joined").value(channel.isSubscribed(playerUuid));
+            writer.name("subscribers").value(channel.getSubscriberCount());
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+    }
+
+    /**
+     * Successful /api/search response, newest message first.
+     */
+    static void writeSearch(ResponseBuffer out, List<StoredMessage> messages) throws IOException {
+        JsonWriter writer = writer(out);
+        writer.beginObject();
+        writer.name("status").value("OK");
+        writer.name("count").value(messages.size());
+        writer.name("messages").beginArray();
+        for (StoredMessage stored : messages) {
+            ChatMessage msg = stored.message();
+            writer.beginObject();
+            writer.name("sequence").value(stored.sequence());
+            writer.name("sender").value(msg.senderName());
+            writer.name("sender_uuid").value(msg.senderUuid());
+            writer.name("message").value(msg.message());
+            writer.name("timestamp").value(msg.timestamp());
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+        writer.flush();
+    }
+
+    /**
+     * Successful /api/auth response.
+     *
+     * @param websocketPort Port of the WebSocket endpoint, left out if 0
+     */
+    static void writeAuthOk(ResponseBuffer out, String token, String playerName, int websocketPort)
+            throws IOException {
+        JsonWriter writer = writer(out);
+        writer.beginObject();
+        writer.name("status").value("OK");
+        writer.name("token").value(token);
+        writer.name("player_name").value(playerName);
+        if (websocketPort > 0) {
+            writer.name("websocket_port").value(websocketPort);
+        }
+        writer.endObject();
+        writer.flush();
+    }
+
+    /**
+     * /api/auth response asking for a captcha.
+     *
+     * @param captchaImage Captcha data, left out if null
+     */
+    static void writeCaptchaRequired(ResponseBuffer out, String captchaImage) throws IOException {
+        JsonWriter writer = writer(out);
+        writer.beginObject();
+        writer.name("status").value("CAPTCHA_REQUIRED");
+        if (captchaImage != null) {
+            writer.name("captcha_image").value(captchaImage);
+        }
+        writer.endObject();
+        writer.flush();
+    }
+
+    /**
+     * /api/fetch response, assembled from the messages' pre-encoded JSON.
+     *
+     * @param cursor Sequence number of the newest message in history
+     * @param gap    Whether messages were dropped before the returned ones;
+     *               "gap" is left out if false
+     */
+    static void writeFetch(ResponseBuffer out, long waitMillis, long cursor, boolean gap,
+            List<StoredMessage> messages) {
+        int size = FETCH_HEAD.length + 20 + FETCH_CURSOR.length + 20 + FETCH_GAP.length
+                + FETCH_MESSAGES.length + FETCH_TAIL.length + messages.size();
+        for (StoredMessage msg : messages) {
+            size += msg.json().length;
+        }
+        out.reserve(size);
+
+        out.write(FETCH_HEAD, 0, FETCH_HEAD.length);
+        byte[] wait = Long.toString(waitMillis).getBytes(StandardCharsets.US_ASCII);
+        out.write(wait, 0, wait.length);
+        out.write(FETCH_CURSOR, 0, FETCH_CURSOR.length);
+        byte[] cursorBytes = Long.toString(cursor).getBytes(StandardCharsets.US_ASCII);
+        out.write(cursorBytes, 0, cursorBytes.length);
+        if (gap) {
+            out.write(FETCH_GAP, 0, FETCH_GAP.length);
+        }
+        out.write(FETCH_MESSAGES, 0, FETCH_MESSAGES.length);
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            byte[] json = messages.get(i).json();
+            out.write(json, 0, json.length);
+        }
+        out.write(FETCH_TAIL, 0, FETCH_TAIL.length);
+    }
+
+    /**
+     * /api/fetch response in the binary format.
+     */
+    static void writeFetchBinary(ResponseBuffer out, long waitMillis, long cursor, boolean gap,
+            List<StoredMessage> messages) {
+        List<BinaryProtocol.Message> encoded = new ArrayList<>(messages.size());
+        for (StoredMessage stored : messages) {
+            ChatMessage msg = stored.message();
+            encoded.add(new BinaryProtocol.Message(msg.senderName(), msg.message(), msg.timestamp()));
+        }
+        BinaryProtocol.writeFetch(out, waitMillis, encoded, cursor, gap);
+    }
+
+    /**
+     * Copy of an encoded /api/fetch response with the player's private
+     * messages added, as "dmCursor" and "direct" fields in JSON or as the
+     * trailing direct section in the binary format.
+     */
+    static byte[] appendDirect(byte[] fetch, boolean binary, long dmCursor, List<DirectMessage> messages) {
+        int size = fetch.length + DIRECT_CURSOR.length + 20 + DIRECT_MESSAGES.length + FETCH_TAIL.length
+                + messages.size();
+        for (DirectMessage msg : messages) {
+            size += msg.json().length;
+        }
+        ResponseBuffer out = new ResponseBuffer(size);
+
+        if (binary) {
+            out.write(fetch, 0, fetch.length);
+            List<BinaryProtocol.DirectMessage> encoded = new ArrayList<>(messages.size());
+            for (DirectMessage direct : messages) {
+                ChatMessage msg = direct.message();
+                encoded.add(new BinaryProtocol.DirectMessage(direct.sequence(), msg.senderName(), direct.recipient(),
+                        msg.message(), msg.timestamp()));
+            }
+            BinaryProtocol.writeDirect(out, dmCursor, encoded);
+            return out.toByteArray();
+        }
+
+        // Reopen the response object before its closing brace
+        out.write(fetch, 0, fetch.length - 1);
+        out.write(DIRECT_CURSOR, 0, DIRECT_CURSOR.length);
+        byte[] cursorBytes = Long.toString(dmCursor).getBytes(StandardCharsets.US_ASCII);
+        out.write(cursorBytes, 0, cursorBytes.length);
+        out.write(DIRECT_MESSAGES, 0, DIRECT_MESSAGES.length);
+        for (int i = 0; i < messages.size(); i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            byte[] json = messages.get(i).json();
+            out.write(json, 0, json.length);
+        }
+        out.write(FETCH_TAIL, 0, FETCH_TAIL.length);
+        return out.toByteArray();
+    }
+
+    private static JsonReader reader(byte[] body) {
+        JsonReader reader = new JsonReader(new StringReader(new String(body, StandardCharsets.UTF_8)));
+        // Gson.fromJson parsed leniently, keep accepting the same bodies
+        reader.setLenient(true);
+        return reader;
+    }
+
+    private static JsonWriter writer(ResponseBuffer out) {
+        JsonWriter writer = new JsonWriter(out.writer());
+        // Same output as Gson.toJson: HTML characters escaped, null fields left out
+        writer.setHtmlSafe(true);
+        writer.setSerializeNulls(false);
+        return writer;
+    }
+
+    /**
+     * Read a string value, accepting numbers/booleans like JsonElement.getAsString() did.
+     */
+    private static String nextString(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        if (token == JsonToken.BOOLEAN) {
+            return Boolean.toString(reader.nextBoolean());
+        }
+        return reader.nextString();
+    }
+}
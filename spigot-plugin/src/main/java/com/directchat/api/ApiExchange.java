@@ -0,0 +1,52 @@
+package com.directchat.api;
+
+import java.io.IOException;
+
+/**
+ * A single HTTP request/response, independent of the server engine serving it.
+ */
+public interface ApiExchange {
+
+    /**
+     * Request method, e.g. GET or POST.
+     */
+    String getMethod();
+
+    /**
+     * Request path without the query string.
+     */
+    String getPath();
+
+    /**
+     * Raw (still URL-encoded) query string, or null if there is none.
+     */
+    String getRawQuery();
+
+    /**
+     * First value of a request header (case-insensitive name), or null.
+     */
+    String getRequestHeader(String name);
+
+    /**
+     * Full request body.
+     */
+    byte[] getRequestBody() throws IOException;
+
+    /**
+     * Set a response header. Must be called before {@link #sendResponse}.
+     */
+    void setResponseHeader(String name, String value);
+
+    /**
+     * Send the response status and the first {@code length} bytes of
+     * {@code body} and complete the exchange. An empty body sends no content.
+     */
+    void sendResponse(int statusCode, byte[] body, int length) throws IOException;
+
+    /**
+     * Send the response status and body and complete the exchange.
+     */
+    default void sendResponse(int statusCode, byte[] body) throws IOException {
+        sendResponse(statusCode, body, body.length);
+    }
+}
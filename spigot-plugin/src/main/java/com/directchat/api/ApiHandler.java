@@ -1,58 +1,150 @@
 package com.directchat.api;
 
-import com.directchat.DirectChatPlugin;
+import com.directchat.DirectChatContext;
+import com.directchat.audit.AuditLog;
 import com.directchat.auth.TokenManager;
+import com.directchat.chat.ChannelManager;
 import com.directchat.chat.ChatManager;
-import com.directchat.chat.ChatMessage;
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonObject;
-import org.bukkit.Bukkit;
-import org.bukkit.entity.Player;
-
+import com.directchat.chat.DirectMessage;
+import com.directchat.chat.DirectMessages;
+import com.directchat.chat.HistorySnapshot;
+import com.directchat.chat.Inbox;
+import com.directchat.metrics.LatencyHistogram;
+import com.directchat.metrics.MetricsRegistry;
+import com.directchat.protocol.BinaryProtocol;
+import com.directchat.player.ChatPlayer;
+import com.directchat.player.PlayerRegistry;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Handles API endpoint logic.
+ * Requests are read and responses written with the streaming {@link ApiCodec}.
  */
 public class ApiHandler {
 
-    private static final Gson GSON = new Gson();
+    // Most items accepted in one /api/send/batch request
+    private static final int MAX_BATCH_SIZE = 50;
+
+    private static final String SEARCH_PERMISSION = "directchat.search";
+    // Whisper commands answered from the inboxes instead of run on the main thread
+    private static final Set<String> DIRECT_COMMANDS = Set.of("msg", "tell", "w", "whisper", "m");
+    private static final Set<String> REPLY_COMMANDS = Set.of("r", "reply");
 
-    private final DirectChatPlugin plugin;
+    private final DirectChatContext context;
     private final TokenManager tokenManager;
-    private final ChatManager chatManager;
+    private final ChannelManager channels;
+    private final DirectMessages directMessages;
+    private final PlayerRegistry players;
+    private final AuditLog auditLog;
+    // One per channel, since each has its own history versions
+    private final Map<ChatManager, FetchResponseCache> fetchCaches = new ConcurrentHashMap<>();
+    private final LatencyHistogram authLatency;
+    private final LatencyHistogram sendLatency;
+    private final LatencyHistogram sendBatchLatency;
+    private final LatencyHistogram fetchLatency;
+    private final String etagPrefix = Long.toHexString(System.currentTimeMillis()) + "-";
+
+    public ApiHandler(DirectChatContext context) {
+        this.context = context;
+        this.tokenManager = context.getTokenManager();
+        this.channels = context.getChannelManager();
+        this.directMessages = channels.getDirectMessages();
+        this.players = context.getPlayerRegistry();
+        this.auditLog = context.getAuditLog();
+        channels.addRemoveListener(fetchCaches::remove);
+
+        MetricsRegistry metrics = context.getMetrics();
+        String name = "directchat_api_operation_seconds";
+        String help = "Time spent in ApiHandler operations, including long-poll waiting";
+        this.authLatency = metrics.histogram(name, help, "operation", "auth");
+        this.sendLatency = metrics.histogram(name, help, "operation", "send");
+        this.sendBatchLatency = metrics.histogram(name, help, "operation", "send_batch");
+        this.fetchLatency = metrics.histogram(name, help, "operation", "fetch");
+    }
+
+    /**
+     * Handle /api/search request, for players with the directchat.search
+     * permission.
+     *
+     * @param token   Authorization token
+     * @param channel Channel to search
+     * @param words   Words that must all occur in the message, or null
+     * @param sender  Sender name, or null for any
+     * @param from    Oldest timestamp to return
+     * @param to      Newest timestamp to return
+     * @param limit   Most messages to return
+     * @param out     Buffer the JSON response is written to
+     */
+    public void handleSearch(String token, String channel, String words, String sender, long from, long to,
+            int limit, ResponseBuffer out) throws IOException {
+        try {
+            Sender staff = resolveSender(token);
+            if (staff.error() != null) {
+                ApiCodec.writeError(out, staff.error());
+                return;
+            }
+            if (!staff.player().hasPermission(SEARCH_PERMISSION)) {
+                ApiCodec.writeError(out, "Missing permission " + SEARCH_PERMISSION);
+                return;
+            }
+            Target target = resolveChannel(channel, staff.player().getUniqueId());
+            if (target.error() != null) {
+                ApiCodec.writeError(out, target.error());
+                return;
+            }
+            ChatManager chatManager = target.channel();
+            if (!chatManager.isSearchEnabled()) {
+                ApiCodec.writeError(out, "Search is disabled");
+                return;
+            }
+            if ((words == null || words.isBlank()) && sender == null && from == Long.MIN_VALUE
+                    && to == Long.MAX_VALUE) {
+                ApiCodec.writeError(out, "Search needs words, a sender or a time range");
+                return;
+            }
 
-    public ApiHandler(DirectChatPlugin plugin) {
-        this.plugin = plugin;
-        this.tokenManager = plugin.getTokenManager();
-        this.chatManager = plugin.getChatManager();
+            ApiCodec.writeSearch(out, chatManager.search(words != null ? words : "", sender, from, to, limit));
+        } catch (Exception e) {
+            context.getLogger().warning("Search error: " + e.getMessage());
+            out.reset();
+            ApiCodec.writeError(out, "Internal error");
+        }
     }
 
     /**
      * Handle /api/auth request.
      * 
      * @param body JSON request body
-     * @return JSON response
+     * @param out  Buffer the JSON response is written to
      */
-    public String handleAuth(String body) {
+    public void handleAuth(byte[] body, ResponseBuffer out) throws IOException {
+        long start = System.nanoTime();
         try {
-            JsonObject request = GSON.fromJson(body, JsonObject.class);
+            ApiCodec.AuthRequest request = ApiCodec.readAuthRequest(body);
 
-            String uuid = request.has("uuid") ? request.get("uuid").getAsString() : null;
-            String password = request.has("password") ? request.get("password").getAsString() : null;
-            String captchaResponse = request.has("captcha_response") ? request.get("captcha_response").getAsString()
-                    : null;
+            String uuid = request.uuid();
+            String password = request.password();
+            String captchaResponse = request.captchaResponse();
 
             if (uuid == null || password == null) {
-                return errorResponse("Missing uuid or password");
+                ApiCodec.writeError(out, "Missing uuid or password");
+                return;
             }
 
             // Validate password
-            if (!plugin.getPassword().equals(password)) {
-                plugin.debug("Auth failed for " + uuid + ": invalid password");
-                return errorResponse("Invalid password");
+            if (!context.getPassword().equals(password)) {
+                context.debug("Auth failed for " + uuid + ": invalid password");
+                ApiCodec.writeError(out, "Invalid password");
+                return;
             }
 
             // Check if player is online
@@ -60,168 +152,474 @@ public class ApiHandler {
             try {
                 playerUuid = UUID.fromString(uuid);
             } catch (IllegalArgumentException e) {
-                return errorResponse("Invalid UUID format");
+                ApiCodec.writeError(out, "Invalid UUID format");
+                return;
             }
 
-            Player player = Bukkit.getPlayer(playerUuid);
-            if (player == null || !player.isOnline()) {
-                return errorResponse("Player not online");
+            ChatPlayer player = players.getOnlinePlayer(playerUuid);
+            if (player == null) {
+                ApiCodec.writeError(out, "Player not online");
+                return;
             }
 
             // Check captcha requirement
-            String captchaProvider = plugin.getCaptchaProvider();
+            String captchaProvider = context.getCaptchaProvider();
             if (!"none".equals(captchaProvider) && captchaResponse == null) {
                 // Captcha required but not provided
-                return captchaRequiredResponse(captchaProvider, playerUuid);
+                ApiCodec.writeCaptchaRequired(out, generateCaptcha(captchaProvider, playerUuid));
+                return;
             }
 
             // Validate captcha if provided
             if (captchaResponse != null && !"none".equals(captchaProvider)) {
                 if (!validateCaptcha(captchaProvider, playerUuid, captchaResponse)) {
-                    return captchaRequiredResponse(captchaProvider, playerUuid);
+                    ApiCodec.writeCaptchaRequired(out, generateCaptcha(captchaProvider, playerUuid));
+                    return;
                 }
             }
 
             // Generate token
             String token = tokenManager.generateToken(playerUuid);
 
-            plugin.debug("Auth successful for " + player.getName() + " (" + uuid + ")");
-            plugin.getLogger().info("Player " + player.getName() + " authenticated via DirectChat");
+            context.debug("Auth successful for " + player.getName() + " (" + uuid + ")");
+            auditLog.auth(player);
+            channels.joinDefaults(player);
 
-            JsonObject response = new JsonObject();
-            response.addProperty("status", "OK");
-            response.addProperty("token", token);
-            response.addProperty("player_name", player.getName());
-
-            return GSON.toJson(response);
+            ApiCodec.writeAuthOk(out, token, player.getName(), context.getWebSocketPort());
 
         } catch (Exception e) {
-            plugin.getLogger().warning("Auth error: " + e.getMessage());
-            return errorResponse("Internal error");
+            context.getLogger().warning("Auth error: " + e.getMessage());
+            internalError(out);
+        } finally {
+            authLatency.recordSince(start);
         }
     }
 
     /**
      * Handle /api/send request.
      * 
+     * @param token   Authorization token
+     * @param channel Channel to send to
+     * @param body    Request body
+     * @param binary  Whether request and response use the binary protocol instead of JSON
+     * @param out     Buffer the response is written to
+     */
+    public void handleSend(String token, String channel, byte[] body, boolean binary, ResponseBuffer out)
+            throws IOException {
+        long start = System.nanoTime();
+        try {
+            // Token is checked before the body is parsed
+            Sender sender = resolveSender(token);
+            String error = sender.error();
+            if (error == null) {
+                String message = binary ? BinaryProtocol.readSendRequest(body) : ApiCodec.readSendMessage(body);
+                error = send(sender.player(), channel, Collections.singletonList(message)).get(0);
+            }
+
+            if (binary) {
+                BinaryProtocol.writeStatus(out, error);
+            } else if (error != null) {
+                ApiCodec.writeError(out, error);
+            } else {
+                ApiCodec.writeOk(out);
+            }
+        } catch (Exception e) {
+            context.getLogger().warning("Send error: " + e.getMessage());
+            out.reset();
+            if (binary) {
+                BinaryProtocol.writeStatus(out, "Internal error");
+            } else {
+                ApiCodec.writeError(out, "Internal error");
+            }
+        } finally {
+            sendLatency.recordSince(start);
+        }
+    }
+
+    /**
+     * Handle /api/send/batch request.
+     * 
+     * @param token   Authorization token
+     * @param channel Channel to send to
+     * @param body    JSON request body with an ordered "messages" array
+     * @param out     Buffer the JSON response with one result per message is written to
+     */
+    public void handleSendBatch(String token, String channel, byte[] body, ResponseBuffer out) throws IOException {
+        long start = System.nanoTime();
+        try {
+            Sender sender = resolveSender(token);
+            if (sender.error() != null) {
+                ApiCodec.writeError(out, sender.error());
+                return;
+            }
+
+            List<String> messages = ApiCodec.readSendBatch(body);
+            if (messages == null || messages.isEmpty()) {
+                ApiCodec.writeError(out, "No messages");
+                return;
+            }
+            if (messages.size() > MAX_BATCH_SIZE) {
+                ApiCodec.writeError(out, "Too many messages (max " + MAX_BATCH_SIZE + ")");
+                return;
+            }
+
+            ApiCodec.writeBatchResults(out, send(sender.player(), channel, messages));
+
+        } catch (Exception e) {
+            context.getLogger().warning("Batch send error: " + e.getMessage());
+            internalError(out);
+        } finally {
+            sendBatchLatency.recordSince(start);
+        }
+    }
+
+    /**
+     * Send a chat message or command for the player owning a token.
+     * Shared by /api/send and the WebSocket endpoint.
+     *
+     * @param token   Authorization token
+     * @param channel Channel to send to
+     * @param message Message or command to send
+     * @return Error message, or null if the message was sent
+     */
+    public String sendMessage(String token, String channel, String message) {
+        Sender sender = resolveSender(token);
+        if (sender.error() != null) {
+            return sender.error();
+        }
+        return send(sender.player(), channel, Collections.singletonList(message)).get(0);
+    }
+
+    /**
+     * Handle GET /api/channels: the channels the player may join, and which
+     * of them they have joined.
+     *
      * @param token Authorization token
-     * @param body  JSON request body
-     * @return JSON response
+     * @param out   Buffer the JSON response is written to
      */
-    public String handleSend(String token, String body) {
+    public void handleChannels(String token, ResponseBuffer out) throws IOException {
         try {
-            // Validate token
-            UUID playerUuid = tokenManager.getPlayerUuid(token);
-            if (playerUuid == null) {
-                return errorResponse("Invalid or expired token");
+            Sender sender = resolveSender(token);
+            if (sender.error() != null) {
+                ApiCodec.writeError(out, sender.error());
+                return;
             }
+            ApiCodec.writeChannels(out, channels.getAccessible(sender.player()), sender.player().getUniqueId());
+        } catch (Exception e) {
+            context.getLogger().warning("Channels error: " + e.getMessage());
+            internalError(out);
+        }
+    }
 
-            Player player = Bukkit.getPlayer(playerUuid);
-            if (player == null || !player.isOnline()) {
-                tokenManager.invalidateToken(token);
-                return errorResponse("Player not online");
+    /**
+     * Handle POST /api/channels: join or leave a channel. Joined channels are
+     * shown in game and pushed over WebSocket.
+     *
+     * @param token Authorization token
+     * @param body  JSON request body with "action" (join or leave) and "channel"
+     * @param out   Buffer the JSON response is written to
+     */
+    public void handleChannelAction(String token, byte[] body, ResponseBuffer out) throws IOException {
+        try {
+            Sender sender = resolveSender(token);
+            if (sender.error() != null) {
+                ApiCodec.writeError(out, sender.error());
+                return;
+            }
+
+            ApiCodec.ChannelAction request = ApiCodec.readChannelAction(body);
+            String channel = ChannelManager.normalize(request.channel());
+            ChatPlayer player = sender.player();
+            if ("join".equals(request.action())) {
+                if (!channels.join(player, channel)) {
+                    ApiCodec.writeError(out, "Unknown channel or no access: " + channel);
+                    return;
+                }
+                context.debug(player.getName() + " joined channel " + channel);
+            } else if ("leave".equals(request.action())) {
+                channels.leave(player.getUniqueId(), channel);
+                context.debug(player.getName() + " left channel " + channel);
+            } else {
+                ApiCodec.writeError(out, "Unknown action, use join or leave");
+                return;
             }
+            ApiCodec.writeOk(out);
+        } catch (Exception e) {
+            context.getLogger().warning("Channel action error: " + e.getMessage());
+            internalError(out);
+        }
+    }
+
+    /**
+     * Online player owning a token, or why there is none.
+     */
+    private record Sender(ChatPlayer player, String error) {
+    }
+
+    private Sender resolveSender(String token) {
+        // Validate token
+        UUID playerUuid = tokenManager.getPlayerUuid(token);
+        if (playerUuid == null) {
+            return new Sender(null, "Invalid or expired token");
+        }
+
+        ChatPlayer player = players.getOnlinePlayer(playerUuid);
+        if (player == null) {
+            tokenManager.invalidateToken(token);
+            return new Sender(null, "Player not online");
+        }
+        return new Sender(player, null);
+    }
 
-            JsonObject request = GSON.fromJson(body, JsonObject.class);
-            String message = request.has("message") ? request.get("message").getAsString() : null;
+    /**
+     * Channel a request is for, or why the player can't use it.
+     */
+    private record Target(ChatManager channel, String error) {
+    }
 
-            if (message == null || message.trim().isEmpty()) {
-                return errorResponse("Empty message");
+    private Target resolveChannel(String name, UUID playerUuid) {
+        // Open channels don't need the player, which keeps fetches cheap
+        if (!channels.isRestricted(name)) {
+            ChatManager channel = channels.get(name);
+            return channel != null ? new Target(channel, null) : new Target(null, "Unknown channel " + name);
+        }
+        ChatPlayer player = players.getOnlinePlayer(playerUuid);
+        ChatManager channel = player != null ? channels.getForPlayer(name, player) : null;
+        return channel != null ? new Target(channel, null) : new Target(null, "No access to channel " + name);
+    }
+
+    /**
+     * Send messages and commands in order. Chat messages are added to the
+     * channel's history together; commands run in one main-thread task,
+     * except private messages, which go straight to the recipient's inbox.
+     *
+     * @return Error message per item, null for items that were sent
+     */
+    private List<String> send(ChatPlayer player, String channel, List<String> messages) {
+        Target target = resolveChannel(channel, player.getUniqueId());
+        if (target.error() != null) {
+            return Collections.nCopies(messages.size(), target.error());
+        }
+
+        List<String> errors = new ArrayList<>(messages.size());
+        List<String> chat = new ArrayList<>();
+        List<String> commands = new ArrayList<>();
+
+        for (String raw : messages) {
+            if (raw == null || raw.trim().isEmpty()) {
+                errors.add("Empty message");
+                continue;
             }
 
             // Sanitize message
-            message = message.trim();
+            String message = raw.trim();
             if (message.length() > 256) {
                 message = message.substring(0, 256);
             }
 
-            plugin.debug("Message from " + player.getName() + ": " + message);
+            context.debug("Message from " + player.getName() + ": " + message);
 
-            // Check if it's a command
+            // Check if it's a command; private messages are delivered here
+            if (message.startsWith("/") && directMessages.isEnabled() && isDirectMessage(message)) {
+                errors.add(sendDirect(player, message));
+                continue;
+            }
             if (message.startsWith("/")) {
-                // Execute command on main thread
-                String finalMessage = message;
-                Bukkit.getScheduler().runTask(plugin, () -> {
-                    player.performCommand(finalMessage.substring(1));
-                });
+                commands.add(message.substring(1));
             } else {
-                // Broadcast to authenticated players
-                chatManager.broadcastMessage(player, message);
+                chat.add(message);
             }
+            errors.add(null);
+        }
 
-            JsonObject response = new JsonObject();
-            response.addProperty("status", "OK");
-            return GSON.toJson(response);
+        if (!commands.isEmpty()) {
+            // Execute commands on main thread
+            players.runOnMainThread(() -> {
+                for (String command : commands) {
+                    auditLog.command(player, command);
+                    player.performCommand(command);
+                }
+            });
+        }
+        if (!chat.isEmpty()) {
+            // Broadcast to the channel's subscribers
+            target.channel().broadcastMessages(player, chat);
+        }
 
-        } catch (Exception e) {
-            plugin.getLogger().warning("Send error: " + e.getMessage());
-            return errorResponse("Internal error");
+        return errors;
+    }
+
+    /**
+     * Whether a command is one of {@link #DIRECT_COMMANDS} or
+     * {@link #REPLY_COMMANDS}.
+     */
+    private static boolean isDirectMessage(String command) {
+        String name = commandName(command);
+        return DIRECT_COMMANDS.contains(name) || REPLY_COMMANDS.contains(name);
+    }
+
+    private static String commandName(String command) {
+        int end = command.indexOf(' ');
+        return (end < 0 ? command.substring(1) : command.substring(1, end)).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Deliver "/msg &lt;player&gt; &lt;message&gt;" or "/r &lt;message&gt;"
+     * to the recipient's inbox instead of running it as a command.
+     *
+     * @return Error message, or null if the message was delivered
+     */
+    private String sendDirect(ChatPlayer player, String command) {
+        String name = commandName(command);
+        int space = command.indexOf(' ');
+        String message = space < 0 ? "" : command.substring(space + 1).trim();
+
+        String recipientName;
+        if (REPLY_COMMANDS.contains(name)) {
+            recipientName = directMessages.getReplyTarget(player.getUniqueId());
+            if (recipientName == null) {
+                return "Nobody to reply to";
+            }
+        } else {
+            space = message.indexOf(' ');
+            if (space < 0) {
+                return "Usage: /" + name + " <player> <message>";
+            }
+            recipientName = message.substring(0, space);
+            message = message.substring(space + 1).trim();
+        }
+        if (message.isEmpty()) {
+            return "Empty message";
+        }
+
+        ChatPlayer recipient = players.getOnlinePlayer(recipientName);
+        if (recipient == null) {
+            return "Player not online: " + recipientName;
+        }
+        DirectMessage sent = directMessages.send(player, recipient, message);
+        auditLog.chat("@" + recipient.getName(), sent.message());
+        return null;
+    }
+
+    /**
+     * Result of an /api/fetch request.
+     *
+     * @param body        Encoded JSON response, shared between requests (don't modify);
+     *                    null when the client's copy is still current
+     * @param etag        ETag of the history version the response was built from,
+     *                    or null for error responses
+     */
+    public record FetchResponse(byte[] body, String etag) {
+
+        public boolean isNotModified() {
+            return body == null;
         }
     }
 
     /**
      * Handle /api/fetch request.
      * 
-     * @param token Authorization token
-     * @param since Timestamp to fetch messages after
-     * @return JSON response
+     * @param token       Authorization token
+     * @param channel     Channel to fetch from
+     * @param since       Timestamp to fetch messages after, if there is no cursor
+     * @param cursor      Sequence number to fetch messages after (0 = from the
+     *                    start of history), or -1 to use the timestamp
+     * @param dmCursor    Sequence number in the player's private message inbox
+     *                    to include messages after, or -1 to leave them out
+     * @param waitMillis  How long to park the request if there are no new
+     *                    messages yet (0 = answer immediately)
+     * @param ifNoneMatch Value of the If-None-Match header, or null
+     * @param binary      Whether to respond with the binary protocol instead of JSON
      */
-    public String handleFetch(String token, long since) {
+    public FetchResponse handleFetch(String token, String channel, long since, long cursor, long dmCursor,
+            long waitMillis, String ifNoneMatch, boolean binary) throws IOException {
+        long start = System.nanoTime();
         try {
             // Validate token
             UUID playerUuid = tokenManager.getPlayerUuid(token);
             if (playerUuid == null) {
-                return errorResponse("Invalid or expired token");
+                return errorFetchResponse("Invalid or expired token", binary);
+            }
+            Target target = resolveChannel(channel, playerUuid);
+            if (target.error() != null) {
+                return errorFetchResponse(target.error(), binary);
             }
+            ChatManager chatManager = target.channel();
 
-            // Get messages since timestamp
-            List<ChatMessage> messages = chatManager.getMessagesSince(since);
+            // Private messages ride along with this channel's fetch
+            Inbox inbox = dmCursor >= 0 && directMessages.isEnabled() ? directMessages.getInbox(playerUuid) : null;
 
-            JsonArray messagesArray = new JsonArray();
-            for (ChatMessage msg : messages) {
-                JsonObject msgObj = new JsonObject();
-                msgObj.addProperty("sender", msg.senderName());
-                msgObj.addProperty("message", msg.message());
-                msgObj.addProperty("timestamp", msg.timestamp());
-                messagesArray.add(msgObj);
+            // Get history with new messages, long-polling if requested
+            boolean byCursor = cursor >= 0;
+            HistorySnapshot snapshot;
+            try {
+                if (inbox != null) {
+                    snapshot = byCursor
+                            ? chatManager.awaitSnapshotAfter(cursor, waitMillis, inbox, dmCursor)
+                            : chatManager.awaitSnapshot(since, waitMillis, inbox, dmCursor);
+                } else {
+                    snapshot = byCursor
+                            ? chatManager.awaitSnapshotAfter(cursor, waitMillis)
+                            : chatManager.awaitSnapshot(since, waitMillis);
+                }
+            } catch (InterruptedException e) {
+                // Server is shutting down
+                Thread.currentThread().interrupt();
+                snapshot = chatManager.getSnapshot();
             }
 
-            JsonObject response = new JsonObject();
-            response.addProperty("status", "OK");
-            response.add("messages", messagesArray);
+            String etag = etag(chatManager, snapshot);
+            // Nothing new and the client already has this version
+            boolean hasNew = byCursor ? snapshot.hasMessagesAfter(cursor) : snapshot.hasMessagesSince(since);
+            boolean hasDirect = inbox != null && inbox.lastSequence() != dmCursor;
+            if (!hasNew && !hasDirect && etag.equals(ifNoneMatch)) {
+                return new FetchResponse(null, etag);
+            }
 
-            return GSON.toJson(response);
+            FetchResponseCache fetchCache = fetchCaches.computeIfAbsent(chatManager, c -> new FetchResponseCache());
+            byte[] body = byCursor
+                    ? fetchCache.getAfter(snapshot, cursor, waitMillis, binary)
+                    : fetchCache.get(snapshot, since, waitMillis, binary);
+            if (hasDirect) {
+                // The shared channel response stays cached; only this copy gets the inbox
+                Inbox.Slice direct = inbox.after(dmCursor);
+                body = ApiCodec.appendDirect(body, binary, direct.cursor(), direct.messages());
+            }
+            return new FetchResponse(body, etag);
 
         } catch (Exception e) {
-            plugin.getLogger().warning("Fetch error: " + e.getMessage());
-            return errorResponse("Internal error");
+            context.getLogger().warning("Fetch error: " + e.getMessage());
+            return errorFetchResponse("Internal error", binary);
+        } finally {
+            fetchLatency.recordSince(start);
         }
     }
 
+    private static FetchResponse errorFetchResponse(String message, boolean binary) throws IOException {
+        ResponseBuffer out = new ResponseBuffer(64);
+        if (binary) {
+            BinaryProtocol.writeStatus(out, message);
+        } else {
+            ApiCodec.writeError(out, message);
+        }
+        return new FetchResponse(out.toByteArray(), null);
+    }
+
     /**
-     * Generate error response.
+     * ETag of a channel's history version. Includes the server start time so
+     * tags from before a restart never match; weak because the body may be
+     * sent compressed or not.
      */
-    private String errorResponse(String message) {
-        JsonObject response = new JsonObject();
-        response.addProperty("status", "ERROR");
-        response.addProperty("message", message);
-        return GSON.toJson(response);
+    private String etag(ChatManager channel, HistorySnapshot snapshot) {
+        return "W/\"" + etagPrefix + channel.getChannel() + "-" + snapshot.version() + "\"";
     }
 
     /**
-     * Generate captcha required response.
+     * Replace whatever was written so far with an internal error response.
      */
-    private String captchaRequiredResponse(String provider, UUID playerUuid) {
-        JsonObject response = new JsonObject();
-        response.addProperty("status", "CAPTCHA_REQUIRED");
-
-        // Generate captcha based on provider
-        String captchaData = generateCaptcha(provider, playerUuid);
-        if (captchaData != null) {
-            response.addProperty("captcha_image", captchaData);
-        }
-
-        return GSON.toJson(response);
+    private void internalError(ResponseBuffer out) throws IOException {
+        out.reset();
+        ApiCodec.writeError(out, "Internal error");
     }
 
     /**
@@ -278,7 +676,7 @@ public class ApiHandler {
     // nAntiBot integration stubs
     private String generateNAntiBotCaptcha(UUID playerUuid) {
         // TODO: Integrate with nAntiBot API when available
-        plugin.debug("nAntiBot integration not implemented, using simple captcha");
+        context.debug("nAntiBot integration not implemented, using simple captcha");
         return generateSimpleCaptcha(playerUuid);
     }
 
@@ -290,7 +688,7 @@ public class ApiHandler {
     // Captcha API integration stubs
     private String generateCaptchaApi(UUID playerUuid) {
         // TODO: Integrate with Captcha API plugin when available
-        plugin.debug("Captcha API integration not implemented, using simple captcha");
+        context.debug("Captcha API integration not implemented, using simple captcha");
         return generateSimpleCaptcha(playerUuid);
     }
 
@@ -0,0 +1,112 @@
+package com.directchat.api;
+
+import com.directchat.chat.HistorySlice;
+import com.directchat.chat.HistorySnapshot;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Encoded /api/fetch responses for the current history version.
+ * Clients that poll with the same position/wait parameters and format share one immutable
+ * response body; the cache is dropped as soon as history changes.
+ */
+class FetchResponseCache {
+
+    // Distinct position/wait combinations kept per history version
+    private static final int MAX_ENTRIES = 256;
+
+    // Normalized cursor for every request answered with all of history and a gap
+    private static final long GAP = -1;
+
+    /**
+     * @param byCursor Whether position is a sequence cursor rather than a timestamp
+     */
+    private record Key(boolean byCursor, long position, long waitMillis, boolean binary) {
+    }
+
+    private record Generation(long version, Map<Key, byte[]> responses) {
+    }
+
+    private volatile Generation generation = new Generation(-1, new ConcurrentHashMap<>());
+
+    /**
+     * Get the encoded response for a snapshot and timestamp-based request,
+     * building it on a miss.
+     */
+    byte[] get(HistorySnapshot snapshot, long since, long waitMillis, boolean binary) {
+        Key key = new Key(false, normalizeSince(snapshot, since), waitMillis, binary);
+        return get(snapshot, key, () -> new HistorySlice(snapshot.since(since), snapshot.lastSequence(), false));
+    }
+
+    /**
+     * Get the encoded response for a snapshot and cursor-based request,
+     * building it on a miss.
+     */
+    byte[] getAfter(HistorySnapshot snapshot, long cursor, long waitMillis, boolean binary) {
+        Key key = new Key(true, normalizeCursor(snapshot, cursor), waitMillis, binary);
+        return get(snapshot, key, () -> snapshot.after(cursor));
+    }
+
+    private byte[] get(HistorySnapshot snapshot, Key key, Supplier<HistorySlice> reader) {
+        Generation current = generation;
+        if (current.version() < snapshot.version()) {
+            current = new Generation(snapshot.version(), new ConcurrentHashMap<>());
+            generation = current;
+        }
+
+        boolean cacheable = current.version() == snapshot.version();
+        if (cacheable) {
+            byte[] cached = current.responses().get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        ResponseBuffer buffer = new ResponseBuffer(512);
+        HistorySlice slice = reader.get();
+        if (key.binary()) {
+            ApiCodec.writeFetchBinary(buffer, key.waitMillis(), slice.cursor(), slice.gap(), slice.messages());
+        } else {
+            ApiCodec.writeFetch(buffer, key.waitMillis(), slice.cursor(), slice.gap(), slice.messages());
+        }
+        byte[] response = buffer.toByteArray();
+        // Responses for an outdated snapshot (e.g. a long poll that lost a race) aren't kept
+        if (cacheable && current.responses().size() < MAX_ENTRIES) {
+            current.responses().putIfAbsent(key, response);
+        }
+        return response;
+    }
+
+    /**
+     * Map 'since' values that produce the same response to one key: every
+     * up-to-date client gets the empty response, and every 'since' before
+     * the oldest message gets the whole history.
+     */
+    private static long normalizeSince(HistorySnapshot snapshot, long since) {
+        if (!snapshot.hasMessagesSince(since)) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(since, snapshot.oldestTimestamp() - 1);
+    }
+
+    /**
+     * Map cursors that produce the same response to one key: up-to-date
+     * clients, clients without a cursor, and clients that missed messages.
+     * Cursors served from the persistent log keep their own key.
+     */
+    private static long normalizeCursor(HistorySnapshot snapshot, long cursor) {
+        if (!snapshot.hasMessagesAfter(cursor)) {
+            return Long.MAX_VALUE;
+        }
+        // Both start from the oldest message while history fits in one page
+        if (cursor == 0 || (cursor == snapshot.firstSequence() - 1 && snapshot.size() <= HistorySnapshot.PAGE_SIZE)) {
+            return 0;
+        }
+        if (cursor > snapshot.lastSequence() || cursor < snapshot.oldestSequence() - 1) {
+            return GAP;
+        }
+        return cursor;
+    }
+}
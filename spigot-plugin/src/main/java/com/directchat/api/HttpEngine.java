@@ -0,0 +1,33 @@
+package com.directchat.api;
+
+import java.io.IOException;
+
+/**
+ * Server engine that accepts HTTP connections and passes each request to a
+ * {@link Handler} on the request executor.
+ */
+public interface HttpEngine {
+
+    /**
+     * Handles one request. Must always complete the exchange.
+     */
+    @FunctionalInterface
+    interface Handler {
+        void handle(ApiExchange exchange) throws IOException;
+    }
+
+    /**
+     * Start listening.
+     */
+    void start() throws IOException;
+
+    /**
+     * Stop listening and close open connections.
+     */
+    void stop();
+
+    /**
+     * Short name for logs and /api/health.
+     */
+    String getName();
+}
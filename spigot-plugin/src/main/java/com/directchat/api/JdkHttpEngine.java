@@ -0,0 +1,114 @@
+package com.directchat.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+
+/**
+ * Engine backed by the JDK's com.sun.net.httpserver, with optional HTTPS.
+ */
+public class JdkHttpEngine implements HttpEngine {
+
+    private final int port;
+    private final Executor executor;
+    private final TlsSupport tls;
+    private final Handler handler;
+    private HttpServer server;
+
+    /**
+     * @param tls TLS setup for HTTPS, or null for plain HTTP
+     */
+    public JdkHttpEngine(int port, Executor executor, TlsSupport tls, Handler handler) {
+        this.port = port;
+        this.executor = executor;
+        this.tls = tls;
+        this.handler = handler;
+    }
+
+    @Override
+    public void start() throws IOException {
+        if (tls != null) {
+            HttpsServer httpsServer = HttpsServer.create(new InetSocketAddress(port), 0);
+            httpsServer.setHttpsConfigurator(tls.createConfigurator());
+            server = httpsServer;
+        } else {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        }
+
+        // Routing is done by WebServer, so every path goes to one context
+        server.createContext("/", exchange -> handler.handle(new Exchange(exchange)));
+
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    @Override
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "jdk";
+    }
+
+    /**
+     * Adapts an HttpExchange to ApiExchange.
+     */
+    private static class Exchange implements ApiExchange {
+
+        private final HttpExchange exchange;
+
+        Exchange(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        @Override
+        public String getMethod() {
+            return exchange.getRequestMethod();
+        }
+
+        @Override
+        public String getPath() {
+            return exchange.getRequestURI().getPath();
+        }
+
+        @Override
+        public String getRawQuery() {
+            return exchange.getRequestURI().getRawQuery();
+        }
+
+        @Override
+        public String getRequestHeader(String name) {
+            return exchange.getRequestHeaders().getFirst(name);
+        }
+
+        @Override
+        public byte[] getRequestBody() throws IOException {
+            try (InputStream is = exchange.getRequestBody()) {
+                return is.readAllBytes();
+            }
+        }
+
+        @Override
+        public void setResponseHeader(String name, String value) {
+            exchange.getResponseHeaders().set(name, value);
+        }
+
+        @Override
+        public void sendResponse(int statusCode, byte[] body, int length) throws IOException {
+            exchange.sendResponseHeaders(statusCode, length > 0 ? length : -1);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body, 0, length);
+            }
+        }
+    }
+}
@@ -0,0 +1,640 @@
+package com.directchat.api;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Small selector-based HTTP/1.1 engine.
+ * One thread accepts, reads and writes all connections using pooled direct
+ * buffers; parsed requests run on the request executor. Supports keep-alive
+ * and Content-Length request bodies (no chunked uploads, no TLS).
+ */
+public class NioHttpEngine implements HttpEngine {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 1024;
+    private static final int MAX_BODY_SIZE = 64 * 1024;
+    private static final long IDLE_TIMEOUT_MS = 60_000;
+    private static final long SELECT_TIMEOUT_MS = 1000;
+    // Pause after accept() fails, e.g. when out of file descriptors
+    private static final long ACCEPT_BACKOFF_MS = 100;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int port;
+    private final int maxConnections;
+    private final Executor executor;
+    private final Handler handler;
+    private final Logger logger;
+    private final BufferPool bufferPool = new BufferPool(BUFFER_SIZE, MAX_POOLED_BUFFERS);
+
+    // Connections with a response ready to write, handed over from workers
+    private final ConcurrentLinkedQueue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+    // Only touched by the selector thread
+    private final Set<Connection> connections = new HashSet<>();
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private SelectionKey serverKey;
+    // Only touched by the selector thread
+    private long acceptPausedUntil;
+    private boolean acceptFailing;
+    private Thread selectorThread;
+    private volatile boolean running = false;
+
+    /**
+     * @param maxConnections Connections kept open at once; more wait in the backlog
+     */
+    public NioHttpEngine(int port, int maxConnections, Executor executor, Handler handler, Logger logger) {
+        this.port = port;
+        this.maxConnections = Math.max(1, maxConnections);
+        this.executor = executor;
+        this.handler = handler;
+        this.logger = logger;
+    }
+
+    @Override
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        serverChannel.configureBlocking(false);
+        serverKey = serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        running = true;
+        selectorThread = new Thread(this::selectLoop, "DirectChat-NIO");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (selectorThread != null) {
+            try {
+                selectorThread.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "nio";
+    }
+
+    private void selectLoop() {
+        long lastIdleCheck = System.currentTimeMillis();
+        try {
+            while (running) {
+                // Wake up in time to resume accepting after a backoff
+                boolean backingOff = System.currentTimeMillis() < acceptPausedUntil;
+                selector.select(backingOff ? ACCEPT_BACKOFF_MS : SELECT_TIMEOUT_MS);
+
+                Connection pending;
+                while ((pending = pendingWrites.poll()) != null) {
+                    pending.startWrite();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            Connection connection = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                connection.onReadable();
+                            } else if (key.isWritable()) {
+                                connection.onWritable();
+                            }
+                        }
+                    } catch (CancelledKeyException e) {
+                        // Connection closed concurrently
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastIdleCheck >= SELECT_TIMEOUT_MS) {
+                    lastIdleCheck = now;
+                    closeIdle(now);
+                }
+                updateAccepting(now);
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                logger.log(Level.SEVERE, "NIO engine selector failed", e);
+            }
+        } finally {
+            for (Connection connection : new ArrayList<>(connections)) {
+                connection.close();
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Accept pending connections up to the connection limit. A failing
+     * accept or peer only costs that connection, never the engine.
+     */
+    private void accept() {
+        while (connections.size() < maxConnections) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                // Usually out of file descriptors; retry once some are freed
+                if (!acceptFailing) {
+                    logger.log(Level.WARNING, "NIO engine failed to accept a connection: " + e.getMessage());
+                }
+                acceptFailing = true;
+                acceptPausedUntil = System.currentTimeMillis() + ACCEPT_BACKOFF_MS;
+                break;
+            }
+            if (channel == null) {
+                break;
+            }
+            acceptFailing = false;
+
+            try {
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Connection connection = new Connection(channel);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connections.add(connection);
+            } catch (IOException e) {
+                // Peer already reset
+                logger.log(Level.FINE, "NIO engine dropped a connection during setup", e);
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        updateAccepting(System.currentTimeMillis());
+    }
+
+    /**
+     * Listen for new connections only while below the limit and not backing
+     * off; the rest wait in the accept backlog.
+     */
+    private void updateAccepting(long now) {
+        boolean accepting = connections.size() < maxConnections && now >= acceptPausedUntil;
+        int ops = accepting ? SelectionKey.OP_ACCEPT : 0;
+        if (serverKey.isValid() && serverKey.interestOps() != ops) {
+            serverKey.interestOps(ops);
+        }
+    }
+
+    private void closeIdle(long now) {
+        List<Connection> idle = new ArrayList<>();
+        for (Connection connection : connections) {
+            if (!connection.inFlight && now - connection.lastActive > IDLE_TIMEOUT_MS) {
+                idle.add(connection);
+            }
+        }
+        for (Connection connection : idle) {
+            connection.close();
+        }
+    }
+
+    /**
+     * State of one client connection. All methods except
+     * {@link #queueResponse} run on the selector thread.
+     */
+    private class Connection {
+
+        private final SocketChannel channel;
+        private SelectionKey key;
+        private long lastActive = System.currentTimeMillis();
+
+        // Incoming bytes in write mode; only held while data is pending
+        private ByteBuffer readBuffer;
+        private Exchange parsing;
+        private byte[] body;
+        private int bodyFilled;
+
+        private volatile boolean inFlight = false;
+        private volatile boolean closed = false;
+        private ByteBuffer writeBuffer;
+        private boolean closeAfterWrite;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        void onReadable() {
+            if (readBuffer == null) {
+                readBuffer = bufferPool.acquire();
+            }
+
+            int read;
+            try {
+                read = channel.read(readBuffer);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (read < 0) {
+                close();
+                return;
+            }
+
+            lastActive = System.currentTimeMillis();
+            processInput();
+        }
+
+        /**
+         * Parse as much of the buffered input as possible and dispatch a
+         * complete request.
+         */
+        private void processInput() {
+            if (readBuffer == null || inFlight || closed) {
+                return;
+            }
+
+            if (parsing == null) {
+                int headerEnd = findHeaderEnd(readBuffer);
+                if (headerEnd < 0) {
+                    if (!readBuffer.hasRemaining()) {
+                        respondAndClose(431);
+                    } else {
+                        releaseReadBufferIfEmpty();
+                    }
+                    return;
+                }
+
+                parsing = parseHead(headerEnd);
+                if (parsing == null) {
+                    respondAndClose(400);
+                    return;
+                }
+
+                if (parsing.getRequestHeader("transfer-encoding") != null) {
+                    respondAndClose(411);
+                    return;
+                }
+
+                int contentLength;
+                try {
+                    String header = parsing.getRequestHeader("content-length");
+                    contentLength = header != null ? Integer.parseInt(header.trim()) : 0;
+                } catch (NumberFormatException e) {
+                    respondAndClose(400);
+                    return;
+                }
+                if (contentLength < 0 || contentLength > MAX_BODY_SIZE) {
+                    respondAndClose(413);
+                    return;
+                }
+
+                body = contentLength == 0 ? EMPTY : new byte[contentLength];
+                bodyFilled = 0;
+                consume(headerEnd + 4);
+            }
+
+            // Copy body bytes out of the pooled buffer
+            int available = readBuffer.position();
+            int needed = body.length - bodyFilled;
+            int take = Math.min(available, needed);
+            if (take > 0) {
+                readBuffer.flip();
+                readBuffer.get(body, bodyFilled, take);
+                readBuffer.compact();
+                bodyFilled += take;
+            }
+
+            if (bodyFilled < body.length) {
+                releaseReadBufferIfEmpty();
+                return;
+            }
+
+            Exchange exchange = parsing;
+            exchange.body = body;
+            parsing = null;
+            body = null;
+            releaseReadBufferIfEmpty();
+            dispatch(exchange);
+        }
+
+        private void dispatch(Exchange exchange) {
+            inFlight = true;
+            key.interestOps(0);
+            closeAfterWrite = !exchange.keepAlive;
+
+            try {
+                executor.execute(() -> {
+                    try {
+                        handler.handle(exchange);
+                    } catch (Throwable t) {
+                        logger.log(Level.WARNING, "Error handling " + exchange.path, t);
+                    } finally {
+                        if (!exchange.responded) {
+                            closeAfterWrite = true;
+                            exchange.sendQuietly(500);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Overloaded: answer here without running the handler
+                exchange.setResponseHeader("Retry-After", "1");
+                exchange.sendQuietly(503);
+            }
+        }
+
+        /**
+         * Called on the selector thread once a worker queued a response.
+         */
+        void startWrite() {
+            if (closed) {
+                bufferPool.release(writeBuffer);
+                writeBuffer = null;
+                return;
+            }
+            try {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } catch (CancelledKeyException e) {
+                close();
+                return;
+            }
+            onWritable();
+        }
+
+        void onWritable() {
+            try {
+                channel.write(writeBuffer);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (writeBuffer.hasRemaining()) {
+                return;
+            }
+
+            bufferPool.release(writeBuffer);
+            writeBuffer = null;
+            lastActive = System.currentTimeMillis();
+
+            if (closeAfterWrite) {
+                close();
+                return;
+            }
+
+            inFlight = false;
+            key.interestOps(SelectionKey.OP_READ);
+            // A pipelined request may already be buffered
+            processInput();
+        }
+
+        /**
+         * Hand a response over to the selector thread. Called from workers.
+         */
+        void queueResponse(ByteBuffer response) {
+            writeBuffer = response;
+            pendingWrites.add(this);
+            selector.wakeup();
+        }
+
+        private void respondAndClose(int status) {
+            Exchange exchange = new Exchange(this, "GET", "/", null, Map.of(), false);
+            inFlight = true;
+            key.interestOps(0);
+            closeAfterWrite = true;
+            parsing = null;
+            exchange.sendQuietly(status);
+        }
+
+        private Exchange parseHead(int headerEnd) {
+            byte[] head = new byte[headerEnd];
+            readBuffer.get(0, head);
+            String[] lines = new String(head, StandardCharsets.ISO_8859_1).split("\r\n");
+
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+                return null;
+            }
+
+            Map<String, String> headers = new HashMap<>();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon > 0) {
+                    headers.putIfAbsent(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                            lines[i].substring(colon + 1).trim());
+                }
+            }
+
+            String target = requestLine[1];
+            int q = target.indexOf('?');
+            String path = q >= 0 ? target.substring(0, q) : target;
+            String query = q >= 0 ? target.substring(q + 1) : null;
+
+            String connection = headers.getOrDefault("connection", "").toLowerCase(Locale.ROOT);
+            boolean keepAlive = "HTTP/1.1".equals(requestLine[2])
+                    ? !connection.contains("close")
+                    : connection.contains("keep-alive");
+
+            return new Exchange(this, requestLine[0], path, query, headers, keepAlive);
+        }
+
+        /**
+         * Drop the first {@code count} bytes of the read buffer.
+         */
+        private void consume(int count) {
+            readBuffer.flip();
+            readBuffer.position(count);
+            readBuffer.compact();
+        }
+
+        private void releaseReadBufferIfEmpty() {
+            if (readBuffer != null && readBuffer.position() == 0) {
+                bufferPool.release(readBuffer);
+                readBuffer = null;
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            connections.remove(this);
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            bufferPool.release(readBuffer);
+            readBuffer = null;
+            if (!inFlight) {
+                bufferPool.release(writeBuffer);
+                writeBuffer = null;
+            }
+        }
+    }
+
+    /**
+     * Position of the CRLFCRLF ending the request head, or -1.
+     */
+    private static int findHeaderEnd(ByteBuffer buffer) {
+        int limit = buffer.position() - 3;
+        for (int i = 0; i < limit; i++) {
+            if (buffer.get(i) == '\r' && buffer.get(i + 1) == '\n'
+                    && buffer.get(i + 2) == '\r' && buffer.get(i + 3) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String reasonPhrase(int status) {
+        return switch (status) {
+            case 200 -> "OK";
+            case 304 -> "Not Modified";
+            case 400 -> "Bad Request";
+            case 401 -> "Unauthorized";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 411 -> "Length Required";
+            case 413 -> "Payload Too Large";
+            case 429 -> "Too Many Requests";
+            case 431 -> "Request Header Fields Too Large";
+            case 500 -> "Internal Server Error";
+            case 503 -> "Service Unavailable";
+            default -> "";
+        };
+    }
+
+    /**
+     * Parsed request plus response state.
+     */
+    private class Exchange implements ApiExchange {
+
+        private final Connection connection;
+        private final String method;
+        private final String path;
+        private final String query;
+        private final Map<String, String> headers;
+        private final boolean keepAlive;
+        private final List<String[]> responseHeaders = new ArrayList<>(6);
+        private byte[] body = EMPTY;
+        private volatile boolean responded = false;
+
+        Exchange(Connection connection, String method, String path, String query,
+                Map<String, String> headers, boolean keepAlive) {
+            this.connection = connection;
+            this.method = method;
+            this.path = path;
+            this.query = query;
+            this.headers = headers;
+            this.keepAlive = keepAlive;
+        }
+
+        @Override
+        public String getMethod() {
+            return method;
+        }
+
+        @Override
+        public String getPath() {
+            return path;
+        }
+
+        @Override
+        public String getRawQuery() {
+            return query;
+        }
+
+        @Override
+        public String getRequestHeader(String name) {
+            return headers.get(name.toLowerCase(Locale.ROOT));
+        }
+
+        @Override
+        public byte[] getRequestBody() {
+            return body;
+        }
+
+        @Override
+        public void setResponseHeader(String name, String value) {
+            for (String[] header : responseHeaders) {
+                if (header[0].equalsIgnoreCase(name)) {
+                    header[1] = value;
+                    return;
+                }
+            }
+            responseHeaders.add(new String[]{name, value});
+        }
+
+        @Override
+        public void sendResponse(int statusCode, byte[] responseBody, int length) {
+            if (responded) {
+                throw new IllegalStateException("Response already sent");
+            }
+            responded = true;
+
+            StringBuilder head = new StringBuilder(128 + responseHeaders.size() * 48);
+            head.append("HTTP/1.1 ").append(statusCode).append(' ').append(reasonPhrase(statusCode)).append("\r\n");
+            for (String[] header : responseHeaders) {
+                head.append(header[0]).append(": ").append(header[1]).append("\r\n");
+            }
+            if (statusCode != 304) {
+                head.append("Content-Length: ").append(length).append("\r\n");
+            }
+            head.append(connection.closeAfterWrite ? "Connection: close\r\n" : "Connection: keep-alive\r\n");
+            head.append("\r\n");
+            byte[] headBytes = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+
+            int total = headBytes.length + length;
+            ByteBuffer response = total <= bufferPool.getBufferSize()
+                    ? bufferPool.acquire()
+                    : ByteBuffer.allocate(total);
+            response.put(headBytes).put(responseBody, 0, length).flip();
+
+            connection.queueResponse(response);
+        }
+
+        void sendQuietly(int statusCode) {
+            if (!responded) {
+                sendResponse(statusCode, EMPTY, 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.directchat.api;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token-bucket rate limiter keyed by player. Callers validate the auth
+ * token first, so unauthenticated requests never create a bucket.
+ * Each bucket is a single "theoretical arrival time" (the GCRA form of a
+ * token bucket), updated with a CAS, so checking a request takes no lock.
+ */
+public class RateLimiter {
+
+    // How often idle buckets are dropped
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private final double perSecond;
+    private final int burst;
+    private final long intervalNanos;
+    private final long burstNanos;
+
+    private final Map<UUID, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime() + SWEEP_INTERVAL_NANOS);
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    /**
+     * @param perSecond Sustained requests per second (0 or less = unlimited)
+     * @param burst     Requests allowed at once after being idle
+     */
+    public RateLimiter(double perSecond, int burst) {
+        this.perSecond = perSecond;
+        this.burst = Math.max(1, burst);
+        this.intervalNanos = perSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / perSecond) : 0;
+        this.burstNanos = intervalNanos * this.burst;
+    }
+
+    public boolean isEnabled() {
+        return intervalNanos > 0;
+    }
+
+    /**
+     * Take a token for a request.
+     *
+     * @return 0 if the request may proceed, otherwise nanoseconds until it would be allowed
+     */
+    public long tryAcquire(UUID player) {
+        if (!isEnabled()) {
+            return 0;
+        }
+
+        long now = System.nanoTime();
+        sweepIfDue(now);
+
+        AtomicLong bucket = buckets.computeIfAbsent(player, k -> new AtomicLong(now));
+        while (true) {
+            long tat = bucket.get();
+            long next = Math.max(tat, now) + intervalNanos;
+            long excess = next - now - burstNanos;
+            if (excess > 0) {
+                throttled.increment();
+                return excess;
+            }
+            if (bucket.compareAndSet(tat, next)) {
+                allowed.increment();
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Drop buckets that have refilled completely; they behave like new ones.
+     */
+    private void sweepIfDue(long now) {
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) {
+            return;
+        }
+        buckets.values().removeIf(bucket -> bucket.get() - now <= 0);
+    }
+
+    public double getPerSecond() {
+        return perSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public long getAllowed() {
+        return allowed.sum();
+    }
+
+    public long getThrottled() {
+        return throttled.sum();
+    }
+
+    /**
+     * Number of players currently tracked.
+     */
+    public int getTrackedKeys() {
+        return buckets.size();
+    }
+}
@@ -0,0 +1,291 @@
+package com.directchat.api;
+
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor used by the embedded HTTP server to run request handlers.
+ * Supports a fixed platform thread pool or one virtual thread per request,
+ * and keeps track of how many requests are currently being handled.
+ * The platform pool has a bounded queue and virtual threads a bound on
+ * concurrent requests: requests that don't fit, or that waited too long,
+ * are run with {@link #isShedding()} set so the handler answers 503 right
+ * away instead of doing the work. Shed requests run on a single thread of
+ * their own, never on the engine's accept or selector thread; when that
+ * falls behind too, {@link #execute} throws RejectedExecutionException and
+ * the engine drops or answers the request itself.
+ */
+public class RequestExecutor implements Executor {
+
+    /**
+     * Threading mode for request handlers.
+     */
+    public enum Mode {
+        PLATFORM,
+        VIRTUAL;
+
+        /**
+         * Parse a mode from config, falling back to PLATFORM for unknown values.
+         */
+        public static Mode fromConfig(String value) {
+            if (value == null) {
+                return PLATFORM;
+            }
+            try {
+                return Mode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return PLATFORM;
+            }
+        }
+    }
+
+    // Set while a shed request runs, see isShedding()
+    private static final ThreadLocal<Boolean> SHEDDING = new ThreadLocal<>();
+
+    private final Mode mode;
+    private final int threads;
+    private final int queueCapacity;
+    private final long maxQueueWaitNanos;
+    private final int maxConcurrent;
+    private final ExecutorService delegate;
+    private final BlockingQueue<Runnable> queue;
+    // Bounds concurrent requests on virtual threads, null in platform mode
+    private final Semaphore permits;
+    private final ExecutorService shedder;
+
+    private final LongAdder shed = new LongAdder();
+    private volatile long lastShedNanos = System.nanoTime() - TimeUnit.DAYS.toNanos(1);
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+
+    /**
+     * @param mode              Threading mode
+     * @param threads           Pool size in platform mode
+     * @param queueCapacity     Requests that may wait for a platform thread
+     * @param maxQueueWaitMillis Requests that waited longer are shed (0 = no limit)
+     * @param maxConcurrent     Requests handled at once in virtual mode
+     */
+    public RequestExecutor(Mode mode, int threads, int queueCapacity, long maxQueueWaitMillis, int maxConcurrent) {
+        this.mode = mode;
+        this.threads = Math.max(1, threads);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.maxQueueWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxQueueWaitMillis));
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        if (mode == Mode.VIRTUAL) {
+            // Every admitted request gets a thread right away, nothing queues
+            this.queue = null;
+            this.permits = new Semaphore(this.maxConcurrent);
+            this.delegate = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("DirectChat-API-", 0).factory());
+        } else {
+            this.queue = new ArrayBlockingQueue<>(this.queueCapacity);
+            this.permits = null;
+            this.delegate = new ThreadPoolExecutor(this.threads, this.threads, 0, TimeUnit.MILLISECONDS,
+                    queue, platformThreadFactory("DirectChat-API-"), (task, pool) -> shed(((Admitted) task).command));
+        }
+        // Rejects when full, so a flood of shed requests can't queue up either
+        this.shedder = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(this.queueCapacity), platformThreadFactory("DirectChat-API-Shed-"));
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (permits != null && !permits.tryAcquire()) {
+            shed(command);
+            return;
+        }
+        try {
+            delegate.execute(new Admitted(command, System.nanoTime()));
+        } catch (RejectedExecutionException e) {
+            if (permits != null) {
+                permits.release();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Whether the request running on this thread is being shed and should be
+     * answered with 503 without doing any work.
+     */
+    public static boolean isShedding() {
+        return SHEDDING.get() != null;
+    }
+
+    /**
+     * Hand a request that was not admitted to the shed thread.
+     *
+     * @throws RejectedExecutionException if the shed thread is backed up too
+     */
+    private void shed(Runnable command) {
+        lastShedNanos = System.nanoTime();
+        try {
+            shedder.execute(() -> runShed(command));
+        } catch (RejectedExecutionException e) {
+            shed.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Run a request that was not admitted, answering 503 on this thread.
+     */
+    private void runShed(Runnable command) {
+        shed.increment();
+        lastShedNanos = System.nanoTime();
+        SHEDDING.set(Boolean.TRUE);
+        try {
+            command.run();
+        } finally {
+            SHEDDING.remove();
+        }
+    }
+
+    /**
+     * A request with the time it was handed to the executor.
+     */
+    private final class Admitted implements Runnable {
+
+        private final Runnable command;
+        private final long submittedNanos;
+
+        Admitted(Runnable command, long submittedNanos) {
+            this.command = command;
+            this.submittedNanos = submittedNanos;
+        }
+
+        @Override
+        public void run() {
+            // The client has most likely given up on a request that queued this long
+            if (maxQueueWaitNanos > 0 && System.nanoTime() - submittedNanos > maxQueueWaitNanos) {
+                try {
+                    runShed(command);
+                } finally {
+                    if (permits != null) {
+                        permits.release();
+                    }
+                }
+                return;
+            }
+
+            int current = inFlight.incrementAndGet();
+            peakInFlight.accumulateAndGet(current, Math::max);
+            try {
+                command.run();
+            } finally {
+                inFlight.decrementAndGet();
+                completed.incrementAndGet();
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop accepting new requests and wait briefly for running ones to finish.
+     */
+    public void shutdown() {
+        shedder.shutdownNow();
+        delegate.shutdown();
+        try {
+            if (!delegate.awaitTermination(2, TimeUnit.SECONDS)) {
+                delegate.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            delegate.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Number of platform threads, or 0 when running on virtual threads.
+     */
+    public int getThreads() {
+        return mode == Mode.VIRTUAL ? 0 : threads;
+    }
+
+    /**
+     * Number of requests currently being handled.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Highest number of concurrently handled requests since start.
+     */
+    public int getPeakInFlight() {
+        return peakInFlight.get();
+    }
+
+    /**
+     * Requests waiting for a platform thread (always 0 on virtual threads).
+     */
+    public int getQueueDepth() {
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * Maximum queue depth, or 0 on virtual threads.
+     */
+    public int getQueueCapacity() {
+        return queue != null ? queueCapacity : 0;
+    }
+
+    /**
+     * Most requests handled at once on virtual threads, or 0 in platform mode.
+     */
+    public int getMaxConcurrent() {
+        return permits != null ? maxConcurrent : 0;
+    }
+
+    /**
+     * Total number of requests answered 503 instead of being handled.
+     */
+    public long getShed() {
+        return shed.sum();
+    }
+
+    /**
+     * Whether the executor is overloaded: its queue is full, every virtual
+     * thread permit is taken, or it shed a request within the last second.
+     */
+    public boolean isSaturated() {
+        return (queue != null && queue.remainingCapacity() == 0)
+                || (permits != null && permits.availablePermits() == 0)
+                || System.nanoTime() - lastShedNanos < TimeUnit.SECONDS.toNanos(1);
+    }
+
+    /**
+     * Total number of requests handled since start.
+     */
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    private static ThreadFactory platformThreadFactory(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + counter.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
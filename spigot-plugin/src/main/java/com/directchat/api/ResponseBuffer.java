@@ -0,0 +1,158 @@
+package com.directchat.api;
+
+import com.directchat.protocol.BinaryProtocol;
+
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer that API responses are encoded into.
+ * Its {@link #writer()} encodes characters straight to UTF-8, so JSON
+ * written through it never goes through an intermediate String, and the
+ * backing array is handed to the engine without another copy.
+ * Also used as output for the {@link BinaryProtocol} encoder.
+ */
+public class ResponseBuffer extends OutputStream implements BinaryProtocol.Output {
+
+    private byte[] buf;
+    private int count;
+    private final Utf8Writer writer = new Utf8Writer();
+
+    public ResponseBuffer(int initialCapacity) {
+        this.buf = new byte[Math.max(16, initialCapacity)];
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    /**
+     * Writer that appends UTF-8 encoded characters to this buffer.
+     */
+    public Writer writer() {
+        return writer;
+    }
+
+    /**
+     * Backing array; only the first {@link #size()} bytes are valid.
+     */
+    public byte[] array() {
+        return buf;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Discard everything written so far (e.g. to replace a half-written
+     * response with an error).
+     */
+    public void reset() {
+        count = 0;
+        writer.pendingHighSurrogate = 0;
+    }
+
+    /**
+     * Copy of the written bytes.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    /**
+     * Make room for at least {@code additional} more bytes.
+     */
+    void reserve(int additional) {
+        ensureCapacity(count + additional);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length << 1, capacity));
+        }
+    }
+
+    /**
+     * UTF-8 encoder writing into the enclosing buffer.
+     */
+    private class Utf8Writer extends Writer {
+
+        private char pendingHighSurrogate;
+
+        @Override
+        public void write(int c) {
+            writeChar((char) c);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            ensureCapacity(count + len);
+            for (int i = off; i < off + len; i++) {
+                writeChar(cbuf[i]);
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            ensureCapacity(count + len);
+            for (int i = off; i < off + len; i++) {
+                writeChar(str.charAt(i));
+            }
+        }
+
+        private void writeChar(char c) {
+            if (pendingHighSurrogate != 0) {
+                char high = pendingHighSurrogate;
+                pendingHighSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    int cp = Character.toCodePoint(high, c);
+                    ensureCapacity(count + 4);
+                    buf[count++] = (byte) (0xF0 | (cp >> 18));
+                    buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buf[count++] = (byte) (0x80 | (cp & 0x3F));
+                    return;
+                }
+                // Unpaired surrogate
+                ResponseBuffer.this.write('?');
+            }
+
+            if (c < 0x80) {
+                ensureCapacity(count + 1);
+                buf[count++] = (byte) c;
+            } else if (c < 0x800) {
+                ensureCapacity(count + 2);
+                buf[count++] = (byte) (0xC0 | (c >> 6));
+                buf[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)) {
+                pendingHighSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                ResponseBuffer.this.write('?');
+            } else {
+                ensureCapacity(count + 3);
+                buf[count++] = (byte) (0xE0 | (c >> 12));
+                buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
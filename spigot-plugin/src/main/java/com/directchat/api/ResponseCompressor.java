@@ -0,0 +1,165 @@
+package com.directchat.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses API responses according to the client's Accept-Encoding header.
+ * Bodies below the configured size are sent as-is, since the compression
+ * header overhead would outweigh the savings.
+ * Keeps byte counters so the threshold can be tuned.
+ */
+public class ResponseCompressor {
+
+    /**
+     * A response body ready to send: the first {@code length} bytes of
+     * {@code body}. {@code encoding} is null when uncompressed.
+     */
+    public record Encoded(byte[] body, int length, String encoding) {
+    }
+
+    private final boolean enabled;
+    private final int minSize;
+
+    private final LongAdder uncompressedBytes = new LongAdder();
+    private final LongAdder sentBytes = new LongAdder();
+    private final LongAdder compressedResponses = new LongAdder();
+    private final LongAdder plainResponses = new LongAdder();
+
+    public ResponseCompressor(boolean enabled, int minSize) {
+        this.enabled = enabled;
+        this.minSize = Math.max(0, minSize);
+    }
+
+    /**
+     * Compress a body if the client accepts it and it is large enough.
+     *
+     * @param acceptEncoding Value of the request's Accept-Encoding header (may be null)
+     * @param body           Uncompressed response body
+     */
+    public Encoded encode(String acceptEncoding, byte[] body) {
+        return encode(acceptEncoding, body, body.length);
+    }
+
+    /**
+     * Compress the first {@code length} bytes of a buffer if the client accepts
+     * it and it is large enough. The buffer itself is returned when sent plain.
+     */
+    public Encoded encode(String acceptEncoding, byte[] body, int length) {
+        uncompressedBytes.add(length);
+
+        String encoding = enabled && length >= minSize ? negotiate(acceptEncoding) : null;
+        if (encoding != null) {
+            try {
+                byte[] compressed = compress(encoding, body, length);
+                // Incompressible bodies are cheaper to send plain
+                if (compressed.length < length) {
+                    compressedResponses.increment();
+                    sentBytes.add(compressed.length);
+                    return new Encoded(compressed, compressed.length, encoding);
+                }
+            } catch (IOException ignored) {
+                // Fall through and send uncompressed
+            }
+        }
+
+        plainResponses.increment();
+        sentBytes.add(length);
+        return new Encoded(body, length, null);
+    }
+
+    /**
+     * Total response bytes before compression.
+     */
+    public long getUncompressedBytes() {
+        return uncompressedBytes.sum();
+    }
+
+    /**
+     * Total response bytes actually written (after compression).
+     */
+    public long getSentBytes() {
+        return sentBytes.sum();
+    }
+
+    public long getCompressedResponses() {
+        return compressedResponses.sum();
+    }
+
+    public long getPlainResponses() {
+        return plainResponses.sum();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    /**
+     * Pick gzip or deflate from an Accept-Encoding header, honouring q=0.
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+
+        boolean gzip = false;
+        boolean deflate = false;
+        for (String part : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+            String[] params = part.trim().split(";");
+            String coding = params[0].trim();
+            if (isRefused(params)) {
+                continue;
+            }
+            if ("gzip".equals(coding) || "x-gzip".equals(coding) || "*".equals(coding)) {
+                gzip = true;
+            } else if ("deflate".equals(coding)) {
+                deflate = true;
+            }
+        }
+
+        if (gzip) {
+            return "gzip";
+        }
+        return deflate ? "deflate" : null;
+    }
+
+    private static boolean isRefused(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2)) <= 0;
+                } catch (NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static byte[] compress(String encoding, byte[] body, int length) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, length / 4));
+        if ("gzip".equals(encoding)) {
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(body, 0, length);
+            }
+        } else {
+            Deflater deflater = new Deflater();
+            try (DeflaterOutputStream deflate = new DeflaterOutputStream(out, deflater)) {
+                deflate.write(body, 0, length);
+            } finally {
+                deflater.end();
+            }
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,194 @@
+package com.directchat.api;
+
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsParameters;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyManagementException;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TLS setup for the API server, built from the keystore settings in config.yml.
+ * Enables the server-side session cache so clients that reconnect and poll
+ * often can resume sessions instead of doing a full handshake each time,
+ * and counts completed handshakes, full and resumed, to measure how often
+ * that works.
+ */
+public class TlsSupport {
+
+    private final SSLContext sslContext;
+    // Same context, with every engine it creates reporting its handshake
+    private final SSLContext countingContext;
+
+    private final LongAdder handshakes = new LongAdder();
+    private final LongAdder resumedHandshakes = new LongAdder();
+
+    private TlsSupport(SSLContext sslContext) {
+        this.sslContext = sslContext;
+        this.countingContext = new SSLContext(new CountingContextSpi(sslContext), sslContext.getProvider(),
+                sslContext.getProtocol()) {
+        };
+    }
+
+    /**
+     * Load the keystore and create a TLS context with session caching.
+     *
+     * @param keystorePath      Path to a PKCS12 or JKS keystore
+     * @param keystorePassword  Keystore (and key) password
+     * @param sessionCacheSize  Maximum cached sessions (0 = unlimited)
+     * @param sessionTimeout    Session lifetime in seconds (0 = unlimited)
+     */
+    public static TlsSupport create(String keystorePath, String keystorePassword,
+            int sessionCacheSize, int sessionTimeout) throws IOException, GeneralSecurityException {
+        if (keystorePath == null || keystorePath.isEmpty()) {
+            throw new IOException("require-https is enabled but keystore-path is not set");
+        }
+
+        File keystoreFile = new File(keystorePath);
+        if (!keystoreFile.isFile()) {
+            throw new IOException("Keystore not found: " + keystoreFile.getAbsolutePath());
+        }
+
+        char[] password = keystorePassword != null ? keystorePassword.toCharArray() : new char[0];
+        // Detects PKCS12 or JKS from the file contents
+        KeyStore keyStore = KeyStore.getInstance(keystoreFile, password);
+
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        kmf.init(keyStore, password);
+
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(kmf.getKeyManagers(), null, null);
+
+        SSLSessionContext sessions = context.getServerSessionContext();
+        sessions.setSessionCacheSize(Math.max(0, sessionCacheSize));
+        sessions.setSessionTimeout(Math.max(0, sessionTimeout));
+
+        return new TlsSupport(context);
+    }
+
+    public SSLContext getSslContext() {
+        return sslContext;
+    }
+
+    /**
+     * Configurator for HttpsServer, whose connections' handshakes are counted.
+     */
+    public HttpsConfigurator createConfigurator() {
+        return new HttpsConfigurator(countingContext) {
+            @Override
+            public void configure(HttpsParameters params) {
+                params.setSSLParameters(getSSLContext().getDefaultSSLParameters());
+            }
+        };
+    }
+
+    private void recordHandshake(SSLSession session, boolean resumed) {
+        handshakes.increment();
+        if (resumed) {
+            resumedHandshakes.increment();
+        }
+    }
+
+    /**
+     * Completed TLS handshakes.
+     */
+    public long getHandshakes() {
+        return handshakes.sum();
+    }
+
+    /**
+     * Handshakes that negotiated a new session.
+     */
+    public long getFullHandshakes() {
+        return Math.max(0, getHandshakes() - getResumedHandshakes());
+    }
+
+    /**
+     * Handshakes that resumed a cached session.
+     */
+    public long getResumedHandshakes() {
+        return resumedHandshakes.sum();
+    }
+
+    /**
+     * Fraction of handshakes that resumed a session (0 to 1).
+     */
+    public double getResumptionRate() {
+        long total = getHandshakes();
+        return total == 0 ? 0 : (double) getResumedHandshakes() / total;
+    }
+
+    /**
+     * Delegates to the real context, wrapping the engines it creates.
+     */
+    private final class CountingContextSpi extends SSLContextSpi {
+
+        private final SSLContext delegate;
+
+        CountingContextSpi(SSLContext delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected void engineInit(KeyManager[] km, TrustManager[] tm, SecureRandom random)
+                throws KeyManagementException {
+            delegate.init(km, tm, random);
+        }
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() {
+            return delegate.getSocketFactory();
+        }
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() {
+            return delegate.getServerSocketFactory();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine() {
+            return new HandshakeCountingEngine(delegate.createSSLEngine(), TlsSupport.this::recordHandshake);
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine(String host, int port) {
+            return new HandshakeCountingEngine(delegate.createSSLEngine(host, port),
+                    TlsSupport.this::recordHandshake);
+        }
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() {
+            return delegate.getServerSessionContext();
+        }
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() {
+            return delegate.getClientSessionContext();
+        }
+
+        @Override
+        protected SSLParameters engineGetDefaultSSLParameters() {
+            return delegate.getDefaultSSLParameters();
+        }
+
+        @Override
+        protected SSLParameters engineGetSupportedSSLParameters() {
+            return delegate.getSupportedSSLParameters();
+        }
+    }
+}
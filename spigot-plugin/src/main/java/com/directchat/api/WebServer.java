@@ -1,74 +1,305 @@
 package com.directchat.api;
 
-import com.directchat.DirectChatPlugin;
-import com.sun.net.httpserver.HttpServer;
-import com.sun.net.httpserver.HttpHandler;
-import com.sun.net.httpserver.HttpExchange;
+import com.directchat.DirectChatContext;
+import com.directchat.chat.ChannelManager;
+import com.directchat.metrics.Counter;
+import com.directchat.metrics.LatencyHistogram;
+import com.directchat.metrics.MetricsRegistry;
+import com.directchat.protocol.BinaryProtocol;
+import com.google.gson.JsonObject;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.InetSocketAddress;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.Executors;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Embedded HTTP server for DirectChat API.
+ * Routes requests to {@link ApiHandler}; the connection handling itself is
+ * done by a pluggable {@link HttpEngine} chosen in config.
+ * Serves HTTPS directly when require-https is enabled in config.
  */
 public class WebServer {
 
-    private final DirectChatPlugin plugin;
+    // Initial size of response buffers, enough for auth/send and small fetches
+    private static final int RESPONSE_BUFFER_SIZE = 512;
+    private static final byte[] EMPTY = new byte[0];
+    private static final String JSON = "application/json";
+    private static final String PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+    private static final String OVERLOADED = "{\"status\":\"ERROR\",\"message\":\"Server busy\"}";
+    private static final String RATE_LIMITED = "{\"status\":\"ERROR\",\"message\":\"Rate limited\"}";
+    private static final String NOT_FOUND = "{\"status\":\"ERROR\",\"message\":\"Not found\"}";
+    private static final String UNAUTHORIZED =
+            "{\"status\":\"ERROR\",\"message\":\"Missing or invalid authorization\"}";
+    private static final String INVALID_TOKEN = "{\"status\":\"ERROR\",\"message\":\"Invalid or expired token\"}";
+    // Label of unknown paths, so scanners can't create new series
+    private static final String OTHER_ENDPOINT = "other";
+
+    private final DirectChatContext context;
     private final int port;
-    private HttpServer server;
+    private HttpEngine engine;
+    private RequestExecutor executor;
+    private TlsSupport tls;
     private final ApiHandler apiHandler;
+    private final ResponseCompressor compressor;
+    private final RateLimiter sendLimiter;
+    private final RateLimiter fetchLimiter;
+    private final Map<String, HttpEngine.Handler> routes = new HashMap<>();
+    private final MetricsRegistry metrics;
+    private final Map<String, EndpointMetrics> endpointMetrics = new HashMap<>();
+    // UTF-8 bytes of stats-token, empty if monitoring is private
+    private final byte[] statsToken;
 
-    public WebServer(DirectChatPlugin plugin, int port) {
-        this.plugin = plugin;
+    public WebServer(DirectChatContext context, int port) {
+        this.context = context;
         this.port = port;
-        this.apiHandler = new ApiHandler(plugin);
+        this.apiHandler = new ApiHandler(context);
+        this.compressor = new ResponseCompressor(context.isCompressionEnabled(), context.getCompressionMinSize());
+        this.sendLimiter = new RateLimiter(context.getSendRateLimit(), context.getSendRateBurst());
+        this.fetchLimiter = new RateLimiter(context.getFetchRateLimit(), context.getFetchRateBurst());
+        this.metrics = context.getMetrics();
+        String token = context.getStatsToken();
+        this.statsToken = token != null ? token.getBytes(StandardCharsets.UTF_8) : EMPTY;
+    }
+
+    /**
+     * Metrics of one endpoint, looked up once at startup so requests only
+     * record into them.
+     */
+    private record EndpointMetrics(LatencyHistogram latency, Counter[] responsesByClass) {
+
+        static EndpointMetrics create(MetricsRegistry metrics, String endpoint) {
+            Counter[] responses = new Counter[5];
+            for (int i = 0; i < responses.length; i++) {
+                responses[i] = metrics.counter("directchat_http_responses_total",
+                        "HTTP responses by endpoint and status class", "endpoint", endpoint, "code", (i + 1) + "xx");
+            }
+            return new EndpointMetrics(metrics.histogram("directchat_http_request_seconds",
+                    "HTTP request handling time by endpoint", "endpoint", endpoint), responses);
+        }
+
+        void record(long start, int statusCode) {
+            latency.recordSince(start);
+            int statusClass = statusCode / 100;
+            responsesByClass[statusClass >= 1 && statusClass <= 5 ? statusClass - 1 : 4].increment();
+        }
     }
 
     /**
      * Start the HTTP server.
      */
     public void start() throws IOException {
-        server = HttpServer.create(new InetSocketAddress(port), 0);
-
         // Register endpoints
-        server.createContext("/api/auth", new AuthHandler());
-        server.createContext("/api/send", new SendHandler());
-        server.createContext("/api/fetch", new FetchHandler());
-        server.createContext("/api/health", new HealthHandler());
+        routes.put("/api/auth", new AuthHandler());
+        routes.put("/api/send", new SendHandler());
+        routes.put("/api/send/batch", new SendBatchHandler());
+        routes.put("/api/fetch", new FetchHandler());
+        routes.put("/api/search", new SearchHandler());
+        routes.put("/api/channels", new ChannelsHandler());
+        routes.put("/api/health", new HealthHandler());
+        routes.put("/api/metrics", new MetricsHandler());
+        for (String endpoint : routes.keySet()) {
+            endpointMetrics.put(endpoint, EndpointMetrics.create(metrics, endpoint));
+        }
+        endpointMetrics.put(OTHER_ENDPOINT, EndpointMetrics.create(metrics, OTHER_ENDPOINT));
+
+        // Run handlers on platform pool or virtual threads, depending on config
+        executor = new RequestExecutor(context.getExecutorMode(), context.getExecutorThreads(),
+                context.getExecutorQueueSize(), context.getExecutorMaxQueueWait(), context.getExecutorMaxConcurrent());
 
-        // Use a thread pool for handling requests
-        server.setExecutor(Executors.newFixedThreadPool(4));
-        server.start();
+        String engineName = context.getServerEngine();
+        if ("nio".equals(engineName) && context.isRequireHttps()) {
+            context.getLogger().warning("The nio engine doesn't support HTTPS, using the jdk engine");
+            engineName = "jdk";
+        }
+
+        if ("nio".equals(engineName)) {
+            engine = new NioHttpEngine(port, context.getNioMaxConnections(), executor, this::dispatch,
+                    context.getLogger());
+        } else {
+            if (context.isRequireHttps()) {
+                try {
+                    tls = TlsSupport.create(context.getKeystorePath(), context.getKeystorePassword(),
+                            context.getTlsSessionCacheSize(), context.getTlsSessionTimeout());
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Failed to load keystore: " + e.getMessage(), e);
+                }
+            }
+            engine = new JdkHttpEngine(port, executor, tls, this::dispatch);
+        }
+        engine.start();
+        registerGauges();
+
+        context.getLogger().info("API endpoints registered: /api/auth, /api/send, /api/send/batch, /api/fetch, /api/search, /api/channels, /api/health, /api/metrics");
+        context.getLogger().info("API server engine: " + engine.getName());
+        context.getLogger().info("API request executor: " + describeExecutor());
+        context.getLogger().info("API transport: " + (tls != null ? "HTTPS (TLS session resumption enabled)" : "plain HTTP"));
 
-        plugin.getLogger().info("API endpoints registered: /api/auth, /api/send, /api/fetch, /api/health");
+        if (context.getLongPollMaxWait() > 0 && executor.getMode() != RequestExecutor.Mode.VIRTUAL) {
+            context.getLogger().warning("Long polling needs 'executor: virtual'; /api/fetch will answer immediately");
+        }
     }
 
     /**
      * Stop the HTTP server.
      */
     public void stop() {
-        if (server != null) {
-            server.stop(0);
+        if (engine != null) {
+            engine.stop();
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Get the TLS setup, or null when serving plain HTTP.
+     */
+    public TlsSupport getTlsSupport() {
+        return tls;
+    }
+
+    /**
+     * Get the API handler shared with the WebSocket endpoint.
+     */
+    public ApiHandler getApiHandler() {
+        return apiHandler;
+    }
+
+    /**
+     * Get the rate limiter for sends, shared with the WebSocket endpoint.
+     */
+    public RateLimiter getSendLimiter() {
+        return sendLimiter;
+    }
+
+    /**
+     * Get the executor running request handlers.
+     */
+    public RequestExecutor getExecutor() {
+        return executor;
+    }
+
+    private String describeExecutor() {
+        if (executor.getMode() == RequestExecutor.Mode.VIRTUAL) {
+            return "virtual threads (one per request, at most " + executor.getMaxConcurrent() + ")";
+        }
+        return "platform pool (" + executor.getThreads() + " threads)";
+    }
+
+    /**
+     * Route a request to its endpoint handler.
+     */
+    private void dispatch(ApiExchange apiExchange) throws IOException {
+        long start = System.nanoTime();
+        HttpEngine.Handler handler = routes.get(apiExchange.getPath());
+        EndpointMetrics endpoint = endpointMetrics.get(handler != null ? apiExchange.getPath() : OTHER_ENDPOINT);
+        StatusRecorder exchange = new StatusRecorder(apiExchange);
+
+        try {
+            // Overloaded: answer before reading anything so the client backs off
+            if (RequestExecutor.isShedding()) {
+                exchange.setResponseHeader("Retry-After", "1");
+                sendResponse(exchange, 503, OVERLOADED);
+                return;
+            }
+
+            if (handler == null) {
+                sendResponse(exchange, 404, NOT_FOUND);
+                return;
+            }
+            handler.handle(exchange);
+        } finally {
+            endpoint.record(start, exchange.statusCode);
         }
     }
 
+    /**
+     * Passes an exchange through, remembering the status code sent.
+     */
+    private static final class StatusRecorder implements ApiExchange {
+
+        private final ApiExchange delegate;
+        // 500 if the handler failed without responding
+        private int statusCode = 500;
+
+        StatusRecorder(ApiExchange delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public String getMethod() {
+            return delegate.getMethod();
+        }
+
+        @Override
+        public String getPath() {
+            return delegate.getPath();
+        }
+
+        @Override
+        public String getRawQuery() {
+            return delegate.getRawQuery();
+        }
+
+        @Override
+        public String getRequestHeader(String name) {
+            return delegate.getRequestHeader(name);
+        }
+
+        @Override
+        public byte[] getRequestBody() throws IOException {
+            return delegate.getRequestBody();
+        }
+
+        @Override
+        public void setResponseHeader(String name, String value) {
+            delegate.setResponseHeader(name, value);
+        }
+
+        @Override
+        public void sendResponse(int statusCode, byte[] body, int length) throws IOException {
+            this.statusCode = statusCode;
+            delegate.sendResponse(statusCode, body, length);
+        }
+    }
+
+    /**
+     * Export executor, rate limiter and compression stats as gauges.
+     */
+    private void registerGauges() {
+        metrics.gauge("directchat_executor_in_flight", "Requests being handled", executor::getInFlight);
+        metrics.gauge("directchat_executor_queue_depth", "Requests waiting for a thread", executor::getQueueDepth);
+        metrics.gauge("directchat_executor_shed_requests", "Requests answered 503 since start", executor::getShed);
+        metrics.gauge("directchat_rate_limit_throttled", "Requests answered 429 since start",
+                sendLimiter::getThrottled, "limit", "send");
+        metrics.gauge("directchat_rate_limit_throttled", "Requests answered 429 since start",
+                fetchLimiter::getThrottled, "limit", "fetch");
+        metrics.gauge("directchat_response_uncompressed_bytes", "Response bytes before compression",
+                compressor::getUncompressedBytes);
+        metrics.gauge("directchat_response_sent_bytes", "Response bytes after compression",
+                compressor::getSentBytes);
+    }
+
     /**
      * Handler for /api/auth endpoint.
      */
-    private class AuthHandler implements HttpHandler {
+    private class AuthHandler implements HttpEngine.Handler {
         @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            if (!"POST".equals(exchange.getRequestMethod())) {
+        public void handle(ApiExchange exchange) throws IOException {
+            if (!"POST".equals(exchange.getMethod())) {
                 sendResponse(exchange, 405, "{\"status\":\"ERROR\",\"message\":\"Method not allowed\"}");
                 return;
             }
 
-            String body = readRequestBody(exchange);
-            String response = apiHandler.handleAuth(body);
+            ResponseBuffer response = newResponseBuffer();
+            apiHandler.handleAuth(exchange.getRequestBody(), response);
             sendResponse(exchange, 200, response);
         }
     }
@@ -76,23 +307,59 @@ public class WebServer {
     /**
      * Handler for /api/send endpoint.
      */
-    private class SendHandler implements HttpHandler {
+    private class SendHandler implements HttpEngine.Handler {
         @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            if (!"POST".equals(exchange.getRequestMethod())) {
+        public void handle(ApiExchange exchange) throws IOException {
+            if (!"POST".equals(exchange.getMethod())) {
                 sendResponse(exchange, 405, "{\"status\":\"ERROR\",\"message\":\"Method not allowed\"}");
                 return;
             }
 
-            String authHeader = exchange.getRequestHeaders().getFirst("Authorization");
+            String authHeader = exchange.getRequestHeader("Authorization");
             if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-                sendResponse(exchange, 401, "{\"status\":\"ERROR\",\"message\":\"Missing or invalid authorization\"}");
+                sendResponse(exchange, 401, UNAUTHORIZED);
                 return;
             }
 
             String token = authHeader.substring(7);
-            String body = readRequestBody(exchange);
-            String response = apiHandler.handleSend(token, body);
+            if (isRefused(exchange, sendLimiter, token)) {
+                return;
+            }
+
+            // Mods that support it send the binary protocol; answer in kind
+            boolean binary = BinaryProtocol.isBinary(exchange.getRequestHeader("Content-Type"));
+            String channel = ChannelManager.normalize(parseQuery(exchange.getRawQuery()).get("channel"));
+            ResponseBuffer response = newResponseBuffer();
+            apiHandler.handleSend(token, channel, exchange.getRequestBody(), binary, response);
+            sendResponse(exchange, 200, contentType(binary), response.array(), response.size());
+        }
+    }
+
+    /**
+     * Handler for /api/send/batch endpoint.
+     */
+    private class SendBatchHandler implements HttpEngine.Handler {
+        @Override
+        public void handle(ApiExchange exchange) throws IOException {
+            if (!"POST".equals(exchange.getMethod())) {
+                sendResponse(exchange, 405, "{\"status\":\"ERROR\",\"message\":\"Method not allowed\"}");
+                return;
+            }
+
+            String authHeader = exchange.getRequestHeader("Authorization");
+            if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+                sendResponse(exchange, 401, UNAUTHORIZED);
+                return;
+            }
+
+            String token = authHeader.substring(7);
+            if (isRefused(exchange, sendLimiter, token)) {
+                return;
+            }
+
+            String channel = ChannelManager.normalize(parseQuery(exchange.getRawQuery()).get("channel"));
+            ResponseBuffer response = newResponseBuffer();
+            apiHandler.handleSendBatch(token, channel, exchange.getRequestBody(), response);
             sendResponse(exchange, 200, response);
         }
     }
@@ -100,33 +367,116 @@ public class WebServer {
     /**
      * Handler for /api/fetch endpoint.
      */
-    private class FetchHandler implements HttpHandler {
+    private class FetchHandler implements HttpEngine.Handler {
         @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            if (!"GET".equals(exchange.getRequestMethod())) {
+        public void handle(ApiExchange exchange) throws IOException {
+            if (!"GET".equals(exchange.getMethod())) {
                 sendResponse(exchange, 405, "{\"status\":\"ERROR\",\"message\":\"Method not allowed\"}");
                 return;
             }
 
-            String authHeader = exchange.getRequestHeaders().getFirst("Authorization");
+            String authHeader = exchange.getRequestHeader("Authorization");
             if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-                sendResponse(exchange, 401, "{\"status\":\"ERROR\",\"message\":\"Missing or invalid authorization\"}");
+                sendResponse(exchange, 401, UNAUTHORIZED);
                 return;
             }
 
             String token = authHeader.substring(7);
+            if (isRefused(exchange, fetchLimiter, token)) {
+                return;
+            }
 
-            // Parse query parameter 'since'
-            String query = exchange.getRequestURI().getQuery();
-            long since = 0;
-            if (query != null && query.startsWith("since=")) {
-                try {
-                    since = Long.parseLong(query.substring(6));
-                } catch (NumberFormatException ignored) {
-                }
+            // Parse query parameters 'channel', 'after' (sequence cursor), 'since' (timestamp, older
+            // clients), 'dm' (private message cursor, to include them) and 'wait'
+            Map<String, String> query = parseQuery(exchange.getRawQuery());
+            String channel = ChannelManager.normalize(query.get("channel"));
+            long since = parseLong(query.get("since"), 0);
+            long cursor = query.containsKey("after") ? Math.max(0, parseLong(query.get("after"), 0)) : -1;
+            long dmCursor = query.containsKey("dm") ? Math.max(0, parseLong(query.get("dm"), 0)) : -1;
+            long wait = Math.max(0, Math.min(parseLong(query.get("wait"), 0), maxFetchWait()));
+
+            boolean binary = BinaryProtocol.isBinary(exchange.getRequestHeader("Accept"));
+            ApiHandler.FetchResponse response = apiHandler.handleFetch(token, channel, since, cursor, dmCursor,
+                    wait, exchange.getRequestHeader("If-None-Match"), binary);
+            if (response.etag() != null) {
+                exchange.setResponseHeader("ETag", response.etag());
+            }
+            if (response.isNotModified()) {
+                exchange.setResponseHeader("Vary", "Accept, Accept-Encoding");
+                exchange.sendResponse(304, EMPTY);
+                return;
+            }
+            sendResponse(exchange, 200, contentType(binary), response.body(), response.body().length);
+        }
+    }
+
+    /**
+     * Handler for /api/search endpoint.
+     */
+    private class SearchHandler implements HttpEngine.Handler {
+        @Override
+        public void handle(ApiExchange exchange) throws IOException {
+            if (!"GET".equals(exchange.getMethod())) {
+                sendResponse(exchange, 405, "{\"status\":\"ERROR\",\"message\":\"Method not allowed\"}");
+                return;
+            }
+
+            String authHeader = exchange.getRequestHeader("Authorization");
+            if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+                sendResponse(exchange, 401, UNAUTHORIZED);
+                return;
+            }
+
+            String token = authHeader.substring(7);
+            if (isRefused(exchange, fetchLimiter, token)) {
+                return;
             }
 
-            String response = apiHandler.handleFetch(token, since);
+            // Parse query parameters 'channel', 'q' (words), 'sender', 'from' and 'to' (timestamps) and 'limit'
+            Map<String, String> query = parseQuery(exchange.getRawQuery());
+            String channel = ChannelManager.normalize(query.get("channel"));
+            long from = parseLong(query.get("from"), Long.MIN_VALUE);
+            long to = parseLong(query.get("to"), Long.MAX_VALUE);
+            int maxResults = context.getSearchMaxResults();
+            int limit = (int) Math.max(1, Math.min(parseLong(query.get("limit"), maxResults), maxResults));
+            String sender = query.get("sender");
+
+            ResponseBuffer response = newResponseBuffer();
+            apiHandler.handleSearch(token, channel, query.get("q"),
+                    sender != null && !sender.isBlank() ? sender.trim() : null, from, to, limit, response);
+            sendResponse(exchange, 200, response);
+        }
+    }
+
+    /**
+     * Handler for /api/channels endpoint: GET lists channels, POST joins or leaves one.
+     */
+    private class ChannelsHandler implements HttpEngine.Handler {
+        @Override
+        public void handle(ApiExchange exchange) throws IOException {
+            String method = exchange.getMethod();
+            if (!"GET".equals(method) && !"POST".equals(method)) {
+                sendResponse(exchange, 405, "{\"status\":\"ERROR\",\"message\":\"Method not allowed\"}");
+                return;
+            }
+
+            String authHeader = exchange.getRequestHeader("Authorization");
+            if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+                sendResponse(exchange, 401, UNAUTHORIZED);
+                return;
+            }
+
+            String token = authHeader.substring(7);
+            if (isRefused(exchange, fetchLimiter, token)) {
+                return;
+            }
+
+            ResponseBuffer response = newResponseBuffer();
+            if ("GET".equals(method)) {
+                apiHandler.handleChannels(token, response);
+            } else {
+                apiHandler.handleChannelAction(token, exchange.getRequestBody(), response);
+            }
             sendResponse(exchange, 200, response);
         }
     }
@@ -134,34 +484,215 @@ public class WebServer {
     /**
      * Handler for /api/health endpoint.
      */
-    private class HealthHandler implements HttpHandler {
+    private class HealthHandler implements HttpEngine.Handler {
         @Override
-        public void handle(HttpExchange exchange) throws IOException {
-            sendResponse(exchange, 200, "{\"status\":\"OK\",\"plugin\":\"DirectChat\",\"version\":\"1.0.0\"}");
+        public void handle(ApiExchange exchange) throws IOException {
+            // Saturated servers answer 503 so load balancers and clients back off
+            boolean saturated = executor.isSaturated();
+
+            JsonObject response = new JsonObject();
+            response.addProperty("status", saturated ? "SATURATED" : "OK");
+            response.addProperty("plugin", "DirectChat");
+            response.addProperty("version", "1.0.0");
+            response.addProperty("websocket_port", context.getWebSocketPort());
+            if (isStatsRequest(exchange)) {
+                addDetails(response, saturated);
+            }
+
+            if (saturated) {
+                exchange.setResponseHeader("Retry-After", "1");
+            }
+            sendResponse(exchange, saturated ? 503 : 200, response.toString());
+        }
+
+        /**
+         * Load, compression, rate limit and TLS stats, for monitoring only.
+         */
+        private void addDetails(JsonObject response, boolean saturated) {
+            response.addProperty("engine", engine.getName());
+
+            // Executor load, so the two threading modes can be compared
+            response.addProperty("executor", executor.getMode().name().toLowerCase(Locale.ROOT));
+            response.addProperty("in_flight", executor.getInFlight());
+            response.addProperty("peak_in_flight", executor.getPeakInFlight());
+            response.addProperty("requests_handled", executor.getCompleted());
+            response.addProperty("queue_depth", executor.getQueueDepth());
+            response.addProperty("queue_capacity", executor.getQueueCapacity());
+            response.addProperty("max_concurrent", executor.getMaxConcurrent());
+            response.addProperty("shed_requests", executor.getShed());
+            response.addProperty("saturated", saturated);
+
+            // Response compression, for tuning compression-min-size
+            JsonObject compression = new JsonObject();
+            compression.addProperty("enabled", compressor.isEnabled());
+            compression.addProperty("min_size", compressor.getMinSize());
+            compression.addProperty("uncompressed_bytes", compressor.getUncompressedBytes());
+            compression.addProperty("sent_bytes", compressor.getSentBytes());
+            compression.addProperty("compressed_responses", compressor.getCompressedResponses());
+            compression.addProperty("plain_responses", compressor.getPlainResponses());
+            response.add("compression", compression);
+
+            // Rate limiting, to spot abusive clients or limits set too low
+            JsonObject rateLimit = new JsonObject();
+            rateLimit.add("send", limiterStats(sendLimiter));
+            rateLimit.add("fetch", limiterStats(fetchLimiter));
+            response.add("rate_limit", rateLimit);
+
+            if (tls != null) {
+                JsonObject tlsStats = new JsonObject();
+                tlsStats.addProperty("handshakes", tls.getHandshakes());
+                tlsStats.addProperty("full_handshakes", tls.getFullHandshakes());
+                tlsStats.addProperty("resumed_handshakes", tls.getResumedHandshakes());
+                tlsStats.addProperty("resumption_rate", tls.getResumptionRate());
+                response.add("tls", tlsStats);
+            }
         }
     }
 
+    private static JsonObject limiterStats(RateLimiter limiter) {
+        JsonObject stats = new JsonObject();
+        stats.addProperty("enabled", limiter.isEnabled());
+        stats.addProperty("per_second", limiter.getPerSecond());
+        stats.addProperty("burst", limiter.getBurst());
+        stats.addProperty("allowed", limiter.getAllowed());
+        stats.addProperty("throttled", limiter.getThrottled());
+        stats.addProperty("tracked_tokens", limiter.getTrackedKeys());
+        return stats;
+    }
+
     /**
-     * Read request body as string.
+     * Check a request's token and then its player against a rate limiter,
+     * answering 401 for an unknown token and 429 if it is over the limit.
+     * Done before the body is read, so refused requests cost almost nothing,
+     * and made-up tokens never get a bucket of their own.
      */
-    private String readRequestBody(HttpExchange exchange) throws IOException {
-        try (InputStream is = exchange.getRequestBody()) {
-            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+    private boolean isRefused(ApiExchange exchange, RateLimiter limiter, String token) throws IOException {
+        UUID playerUuid = context.getTokenManager().getPlayerUuid(token);
+        if (playerUuid == null) {
+            sendResponse(exchange, 401, INVALID_TOKEN);
+            return true;
+        }
+
+        long waitNanos = limiter.tryAcquire(playerUuid);
+        if (waitNanos == 0) {
+            return false;
         }
+
+        long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        exchange.setResponseHeader("Retry-After", Long.toString(retryAfter));
+        sendResponse(exchange, 429, RATE_LIMITED);
+        return true;
     }
 
     /**
-     * Send HTTP response.
+     * Whether a request carries the stats token. Compared in constant time,
+     * since the API port is public.
      */
-    private void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+    private boolean isStatsRequest(ApiExchange exchange) {
+        if (statsToken.length == 0) {
+            return false;
+        }
+        String authHeader = exchange.getRequestHeader("Authorization");
+        return authHeader != null && authHeader.startsWith("Bearer ")
+                && MessageDigest.isEqual(statsToken, authHeader.substring(7).getBytes(StandardCharsets.UTF_8));
+    }
 
-        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
-        exchange.sendResponseHeaders(statusCode, bytes.length);
+    /**
+     * Handler for /api/metrics endpoint (Prometheus text format), only with
+     * the stats token.
+     */
+    private class MetricsHandler implements HttpEngine.Handler {
+        @Override
+        public void handle(ApiExchange exchange) throws IOException {
+            if (!isStatsRequest(exchange)) {
+                sendResponse(exchange, statsToken.length == 0 ? 404 : 401,
+                        statsToken.length == 0 ? NOT_FOUND : UNAUTHORIZED);
+                return;
+            }
+            byte[] body = metrics.toPrometheus().getBytes(StandardCharsets.UTF_8);
+            sendResponse(exchange, 200, PROMETHEUS, body, body.length);
+        }
+    }
 
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(bytes);
+    /**
+     * Longest time a /api/fetch request may be parked waiting for messages.
+     * Parking ties up a handler thread, so it is only allowed on virtual threads.
+     */
+    private long maxFetchWait() {
+        if (executor.getMode() != RequestExecutor.Mode.VIRTUAL) {
+            return 0;
         }
+        return context.getLongPollMaxWait();
+    }
+
+    /**
+     * Parse a raw query string into a parameter map.
+     */
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) {
+                continue;
+            }
+            String key = URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.putIfAbsent(key, value);
+        }
+        return params;
+    }
+
+    private static long parseLong(String value, long fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static String contentType(boolean binary) {
+        return binary ? BinaryProtocol.CONTENT_TYPE : JSON;
+    }
+
+    /**
+     * Buffer for an API response. Sized for a typical response; the full
+     * body is needed up front for Content-Length and the compression threshold.
+     */
+    private static ResponseBuffer newResponseBuffer() {
+        return new ResponseBuffer(RESPONSE_BUFFER_SIZE);
+    }
+
+    /**
+     * Send HTTP response, compressed if the client accepts it.
+     */
+    private void sendResponse(ApiExchange exchange, int statusCode, String response) throws IOException {
+        byte[] body = response.getBytes(StandardCharsets.UTF_8);
+        sendResponse(exchange, statusCode, JSON, body, body.length);
+    }
+
+    private void sendResponse(ApiExchange exchange, int statusCode, ResponseBuffer response) throws IOException {
+        sendResponse(exchange, statusCode, JSON, response.array(), response.size());
+    }
+
+    private void sendResponse(ApiExchange exchange, int statusCode, String contentType, byte[] body, int length)
+            throws IOException {
+        exchange.setResponseHeader("Content-Type", contentType);
+        exchange.setResponseHeader("Access-Control-Allow-Origin", "*");
+        exchange.setResponseHeader("Vary", "Accept, Accept-Encoding");
+
+        ResponseCompressor.Encoded encoded = compressor.encode(
+                exchange.getRequestHeader("Accept-Encoding"), body, length);
+        if (encoded.encoding() != null) {
+            exchange.setResponseHeader("Content-Encoding", encoded.encoding());
+        }
+
+        exchange.sendResponse(statusCode, encoded.body(), encoded.length());
     }
 }
@@ -0,0 +1,720 @@
+package com.directchat.api;
+
+import com.directchat.DirectChatContext;
+import com.directchat.auth.TokenManager;
+import com.directchat.chat.ChannelManager;
+import com.directchat.chat.ChatManager;
+import com.directchat.chat.ChatMessage;
+import com.directchat.chat.DirectMessage;
+import com.directchat.chat.StoredMessage;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import javax.net.ssl.SSLContext;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BiConsumer;
+
+/**
+ * WebSocket endpoint (/api/ws) for DirectChat clients.
+ * After token auth in the upgrade request, one connection carries both
+ * outgoing messages from the client and chat messages pushed by the server
+ * for the channels the player has joined, plus the player's private messages.
+ * The JDK HttpServer can't hand over upgraded connections, so this listens
+ * on its own port (with TLS when the API server uses HTTPS).
+ */
+public class WebSocketServer {
+
+    private static final Gson GSON = new Gson();
+    private static final String WS_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+    private static final int MAX_HEADER_BYTES = 8192;
+    private static final int MAX_FRAME_PAYLOAD = 64 * 1024;
+    private static final int MAX_QUEUED_FRAMES = 1024;
+    private static final int HANDSHAKE_TIMEOUT_MS = 10000;
+    // A session silent this long is pinged, and closed if it stays silent as long again
+    private static final int PING_INTERVAL_MS = 30000;
+    // Older sessions of a player are closed beyond this, e.g. after reconnects
+    private static final int MAX_SESSIONS_PER_PLAYER = 4;
+
+    private static final int OP_CONTINUATION = 0x0;
+    private static final int OP_TEXT = 0x1;
+    private static final int OP_BINARY = 0x2;
+    private static final int OP_CLOSE = 0x8;
+    private static final int OP_PING = 0x9;
+    private static final int OP_PONG = 0xA;
+
+    private static final int CLOSE_NORMAL = 1000;
+    private static final int CLOSE_GOING_AWAY = 1001;
+    private static final int CLOSE_PROTOCOL_ERROR = 1002;
+    private static final int CLOSE_POLICY_VIOLATION = 1008;
+    private static final int CLOSE_TOO_BIG = 1009;
+
+    private final DirectChatContext context;
+    private final int port;
+    private final ApiHandler apiHandler;
+    private final RateLimiter sendLimiter;
+    private final SSLContext sslContext;
+    private final TokenManager tokenManager;
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    // Open sessions per player, so private messages reach their owner without a scan
+    private final Map<UUID, Set<Session>> playerSessions = new ConcurrentHashMap<>();
+    private final BiConsumer<ChatManager, StoredMessage> broadcastListener = this::pushMessage;
+    private final BiConsumer<UUID, DirectMessage> directListener = this::pushDirectMessage;
+
+    private ServerSocket serverSocket;
+    private Thread acceptThread;
+    private volatile boolean running = false;
+
+    /**
+     * @param sendLimiter Limiter shared with POST /api/send
+     * @param sslContext  TLS context for wss://, or null for plain ws://
+     */
+    public WebSocketServer(DirectChatContext context, int port, ApiHandler apiHandler, RateLimiter sendLimiter,
+            SSLContext sslContext) {
+        this.context = context;
+        this.port = port;
+        this.apiHandler = apiHandler;
+        this.sendLimiter = sendLimiter;
+        this.sslContext = sslContext;
+        this.tokenManager = context.getTokenManager();
+    }
+
+    /**
+     * Start accepting WebSocket connections.
+     */
+    public void start() throws IOException {
+        serverSocket = sslContext != null
+                ? sslContext.getServerSocketFactory().createServerSocket()
+                : new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port));
+        running = true;
+
+        context.getChannelManager().addListener(broadcastListener);
+        context.getChannelManager().getDirectMessages().addListener(directListener);
+
+        acceptThread = new Thread(this::acceptLoop, "DirectChat-WS-Accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+
+        context.getLogger().info("WebSocket endpoint /api/ws listening on port " + port);
+    }
+
+    /**
+     * Stop the listener and close all sessions.
+     */
+    public void stop() {
+        running = false;
+        context.getChannelManager().removeListener(broadcastListener);
+        context.getChannelManager().getDirectMessages().removeListener(directListener);
+
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException ignored) {
+        }
+
+        for (Session session : sessions) {
+            session.close(CLOSE_NORMAL, "Server stopping");
+        }
+        sessions.clear();
+        playerSessions.clear();
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Number of open WebSocket sessions.
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread.ofVirtual().name("DirectChat-WS-Conn").start(() -> handleConnection(socket));
+            } catch (IOException e) {
+                if (running) {
+                    context.getLogger().warning("WebSocket accept error: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Perform the upgrade handshake and run the session read loop.
+     */
+    private void handleConnection(Socket socket) {
+        Session session = null;
+        try {
+            socket.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+            // Don't let half-open connections sit in the handshake forever
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+            String token = handshake(in, out);
+            if (token == null) {
+                socket.close();
+                return;
+            }
+            // Reads wake up regularly to ping idle clients, see readLoop()
+            socket.setSoTimeout(PING_INTERVAL_MS);
+
+            UUID playerUuid = tokenManager.getPlayerUuid(token);
+            if (playerUuid == null) {
+                socket.close();
+                return;
+            }
+            session = new Session(socket, in, out, token, playerUuid);
+            sessions.add(session);
+            Set<Session> open = playerSessions.computeIfAbsent(playerUuid, uuid -> ConcurrentHashMap.newKeySet());
+            open.add(session);
+            context.debug("WebSocket session opened (" + sessions.size() + " open)");
+
+            session.startWriter();
+            closeOldestBeyondLimit(open);
+            session.readLoop();
+        } catch (IOException e) {
+            context.debug("WebSocket connection error: " + e.getMessage());
+        } catch (RuntimeException e) {
+            context.getLogger().warning("WebSocket session error: " + e);
+        } finally {
+            if (session != null) {
+                sessions.remove(session);
+                Session closed = session;
+                playerSessions.computeIfPresent(session.playerUuid,
+                        (uuid, open) -> open.remove(closed) && open.isEmpty() ? null : open);
+                session.close(CLOSE_NORMAL, "");
+                context.debug("WebSocket session closed (" + sessions.size() + " open)");
+            } else {
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /**
+     * Close a player's oldest sessions while they have more than
+     * MAX_SESSIONS_PER_PLAYER open, so a reconnecting client keeps working.
+     */
+    private static void closeOldestBeyondLimit(Set<Session> open) {
+        while (open.size() > MAX_SESSIONS_PER_PLAYER) {
+            Session oldest = open.stream().min(Comparator.comparingLong(s -> s.openedNanos)).orElse(null);
+            if (oldest == null || !open.remove(oldest)) {
+                return;
+            }
+            oldest.close(CLOSE_POLICY_VIOLATION, "Too many sessions");
+        }
+    }
+
+    /**
+     * Read the HTTP upgrade request and answer it.
+     *
+     * @return the validated token, or null if the upgrade was rejected
+     */
+    private String handshake(InputStream in, OutputStream out) throws IOException {
+        String requestLine = readLine(in);
+        Map<String, String> headers = new HashMap<>();
+        int headerBytes = requestLine.length();
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            headerBytes += line.length();
+            if (headerBytes > MAX_HEADER_BYTES) {
+                writeHttpError(out, 431, "Request Header Fields Too Large");
+                return null;
+            }
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+            }
+        }
+
+        String[] parts = requestLine.split(" ");
+        if (parts.length < 2 || !"GET".equals(parts[0]) || !parts[1].startsWith("/api/ws")) {
+            writeHttpError(out, 404, "Not Found");
+            return null;
+        }
+
+        String upgrade = headers.get("upgrade");
+        String key = headers.get("sec-websocket-key");
+        if (upgrade == null || !"websocket".equalsIgnoreCase(upgrade) || key == null) {
+            writeHttpError(out, 426, "Upgrade Required");
+            return null;
+        }
+
+        String authHeader = headers.get("authorization");
+        if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+            writeHttpError(out, 401, "Unauthorized");
+            return null;
+        }
+
+        String token = authHeader.substring(7);
+        UUID playerUuid = tokenManager.getPlayerUuid(token);
+        if (playerUuid == null) {
+            writeHttpError(out, 401, "Unauthorized");
+            return null;
+        }
+
+        String response = "HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n\r\n";
+        out.write(response.getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+
+        return token;
+    }
+
+    /**
+     * Push a new chat message to every open session subscribed to its channel.
+     */
+    private void pushMessage(ChatManager channel, StoredMessage stored) {
+        if (sessions.isEmpty()) {
+            return;
+        }
+
+        ChatMessage msg = stored.message();
+        JsonObject json = new JsonObject();
+        json.addProperty("type", "message");
+        json.addProperty("channel", channel.getChannel());
+        // Lets clients resume HTTP polling from this message if the socket drops
+        json.addProperty("seq", stored.sequence());
+        json.addProperty("sender", msg.senderName());
+        json.addProperty("message", msg.message());
+        json.addProperty("timestamp", msg.timestamp());
+
+        // Encode the frame once and share it between all sessions
+        byte[] frame = encodeFrame(OP_TEXT, GSON.toJson(json).getBytes(StandardCharsets.UTF_8));
+        for (Session session : sessions) {
+            if (channel.isSubscribed(session.playerUuid)) {
+                session.enqueue(frame);
+            }
+        }
+    }
+
+    /**
+     * Push a private message to the open sessions of the inbox owner.
+     */
+    private void pushDirectMessage(UUID owner, DirectMessage direct) {
+        Set<Session> open = playerSessions.get(owner);
+        if (open == null || open.isEmpty()) {
+            return;
+        }
+
+        ChatMessage msg = direct.message();
+        JsonObject json = new JsonObject();
+        json.addProperty("type", "direct");
+        // Lets clients resume HTTP polling from this message if the socket drops
+        json.addProperty("seq", direct.sequence());
+        json.addProperty("sender", msg.senderName());
+        json.addProperty("to", direct.recipient());
+        json.addProperty("message", msg.message());
+        json.addProperty("timestamp", msg.timestamp());
+
+        byte[] frame = encodeFrame(OP_TEXT, GSON.toJson(json).getBytes(StandardCharsets.UTF_8));
+        for (Session session : open) {
+            session.enqueue(frame);
+        }
+    }
+
+    /**
+     * Handle a text message received from a client.
+     */
+    private void handleClientMessage(Session session, String text) {
+        JsonObject request;
+        try {
+            request = GSON.fromJson(text, JsonObject.class);
+        } catch (JsonParseException e) {
+            request = null;
+        }
+
+        if (request == null || !isString(request.get("type"))) {
+            session.enqueue(encodeFrame(OP_TEXT, errorJson(null, "Malformed message")));
+            return;
+        }
+
+        String type = request.get("type").getAsString();
+        if (!"send".equals(type)) {
+            session.enqueue(encodeFrame(OP_TEXT, errorJson(request, "Unknown message type")));
+            return;
+        }
+
+        JsonElement message = request.get("message");
+        JsonElement channel = request.get("channel");
+        if (!isStringOrAbsent(message) || !isStringOrAbsent(channel)) {
+            session.enqueue(encodeFrame(OP_TEXT, errorJson(request, "Malformed message")));
+            return;
+        }
+
+        // Same limit as POST /api/send
+        if (sendLimiter.tryAcquire(session.playerUuid) > 0) {
+            session.enqueue(encodeFrame(OP_TEXT, errorJson(request, "Rate limited")));
+            return;
+        }
+
+        // Same validation and dispatch as POST /api/send
+        String error;
+        try {
+            error = apiHandler.sendMessage(session.token,
+                    ChannelManager.normalize(channel != null && !channel.isJsonNull() ? channel.getAsString() : null),
+                    message != null && !message.isJsonNull() ? message.getAsString() : null);
+        } catch (Exception e) {
+            context.getLogger().warning("WebSocket send error: " + e.getMessage());
+            error = "Internal error";
+        }
+        if (error != null) {
+            session.enqueue(encodeFrame(OP_TEXT, errorJson(request, error)));
+            return;
+        }
+
+        JsonObject ack = new JsonObject();
+        ack.addProperty("type", "ack");
+        if (request.has("id")) {
+            ack.add("id", request.get("id"));
+        }
+        ack.addProperty("status", "OK");
+        session.enqueue(encodeFrame(OP_TEXT, GSON.toJson(ack).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static boolean isString(JsonElement element) {
+        return element != null && element.isJsonPrimitive() && element.getAsJsonPrimitive().isString();
+    }
+
+    private static boolean isStringOrAbsent(JsonElement element) {
+        return element == null || element.isJsonNull() || isString(element);
+    }
+
+    private static byte[] errorJson(JsonObject request, String message) {
+        JsonObject json = new JsonObject();
+        json.addProperty("type", "ack");
+        if (request != null && request.has("id")) {
+            json.add("id", request.get("id"));
+        }
+        json.addProperty("status", "ERROR");
+        json.addProperty("message", message);
+        return GSON.toJson(json).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * One open WebSocket connection.
+     * Reads happen on the connection thread; writes go through a bounded
+     * queue drained by a dedicated writer so a slow client never blocks
+     * the thread that broadcasts a message.
+     */
+    private class Session {
+
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private final String token;
+        private final UUID playerUuid;
+        private final long openedNanos = System.nanoTime();
+        private final BlockingQueue<byte[]> outbound = new LinkedBlockingQueue<>(MAX_QUEUED_FRAMES);
+        private volatile boolean open = true;
+        private Thread writer;
+
+        Session(Socket socket, InputStream in, OutputStream out, String token, UUID playerUuid) {
+            this.socket = socket;
+            this.in = in;
+            this.out = out;
+            this.token = token;
+            this.playerUuid = playerUuid;
+        }
+
+        void startWriter() {
+            writer = Thread.ofVirtual().name("DirectChat-WS-Writer").start(this::writeLoop);
+        }
+
+        void enqueue(byte[] frame) {
+            if (!open) {
+                return;
+            }
+            // Drop sessions whose token was revoked (logout, quit, expiry)
+            if (tokenManager.getPlayerUuid(token) == null) {
+                close(CLOSE_POLICY_VIOLATION, "Token expired");
+                return;
+            }
+            if (!outbound.offer(frame)) {
+                context.debug("WebSocket client too slow, closing session");
+                close(CLOSE_POLICY_VIOLATION, "Too slow");
+            }
+        }
+
+        void readLoop() throws IOException {
+            ByteArrayOutputStream fragments = new ByteArrayOutputStream();
+            int fragmentedOpcode = -1;
+            boolean pinged = false;
+
+            while (open) {
+                int b0;
+                try {
+                    b0 = in.read();
+                } catch (SocketTimeoutException e) {
+                    // Idle: also the moment to notice a token revoked while nothing was pushed
+                    if (tokenManager.getPlayerUuid(token) == null) {
+                        close(CLOSE_POLICY_VIOLATION, "Token expired");
+                        return;
+                    }
+                    if (pinged) {
+                        close(CLOSE_GOING_AWAY, "Ping timeout");
+                        return;
+                    }
+                    pinged = true;
+                    enqueueControl(encodeFrame(OP_PING, new byte[0]));
+                    continue;
+                }
+                if (b0 < 0) {
+                    return;
+                }
+                pinged = false;
+                int b1 = readByte();
+
+                boolean fin = (b0 & 0x80) != 0;
+                int opcode = b0 & 0x0F;
+                boolean masked = (b1 & 0x80) != 0;
+                long length = b1 & 0x7F;
+
+                if (length == 126) {
+                    length = (readByte() << 8) | readByte();
+                } else if (length == 127) {
+                    length = 0;
+                    for (int i = 0; i < 8; i++) {
+                        length = (length << 8) | readByte();
+                    }
+                }
+
+                // The top bit of a 64-bit length must be 0 (RFC 6455 section 5.2)
+                if (length < 0) {
+                    close(CLOSE_PROTOCOL_ERROR, "Invalid frame length");
+                    return;
+                }
+                // Client frames must be masked (RFC 6455 section 5.1)
+                if (!masked) {
+                    close(CLOSE_POLICY_VIOLATION, "Unmasked frame");
+                    return;
+                }
+                if (length > MAX_FRAME_PAYLOAD || fragments.size() + length > MAX_FRAME_PAYLOAD) {
+                    close(CLOSE_TOO_BIG, "Message too big");
+                    return;
+                }
+
+                byte[] mask = readBytes(4);
+                byte[] payload = readBytes((int) length);
+                for (int i = 0; i < payload.length; i++) {
+                    payload[i] ^= mask[i & 3];
+                }
+
+                switch (opcode) {
+                    case OP_TEXT, OP_BINARY -> {
+                        if (fin) {
+                            if (opcode == OP_TEXT) {
+                                handleClientMessage(this, new String(payload, StandardCharsets.UTF_8));
+                            }
+                        } else {
+                            fragmentedOpcode = opcode;
+                            fragments.reset();
+                            fragments.write(payload);
+                        }
+                    }
+                    case OP_CONTINUATION -> {
+                        fragments.write(payload);
+                        if (fin) {
+                            if (fragmentedOpcode == OP_TEXT) {
+                                handleClientMessage(this, fragments.toString(StandardCharsets.UTF_8));
+                            }
+                            fragments.reset();
+                            fragmentedOpcode = -1;
+                        }
+                    }
+                    case OP_PING -> enqueueControl(encodeFrame(OP_PONG, payload));
+                    case OP_PONG -> {
+                        // Nothing to do
+                    }
+                    case OP_CLOSE -> {
+                        close(CLOSE_NORMAL, "");
+                        return;
+                    }
+                    default -> {
+                        close(CLOSE_POLICY_VIOLATION, "Unknown opcode");
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void writeLoop() {
+            try {
+                while (open || !outbound.isEmpty()) {
+                    byte[] frame = outbound.take();
+                    out.write(frame);
+                    // Batch frames that queued up while we were writing
+                    byte[] next;
+                    while ((next = outbound.poll()) != null) {
+                        out.write(next);
+                    }
+                    out.flush();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                context.debug("WebSocket write error: " + e.getMessage());
+            } finally {
+                open = false;
+                closeQuietly(socket);
+            }
+        }
+
+        private void enqueueControl(byte[] frame) {
+            // Control frames bypass the token check but still respect the queue bound
+            if (open && !outbound.offer(frame)) {
+                close(CLOSE_POLICY_VIOLATION, "Too slow");
+            }
+        }
+
+        synchronized void close(int code, String reason) {
+            if (!open) {
+                return;
+            }
+            open = false;
+
+            byte[] reasonBytes = reason.getBytes(StandardCharsets.UTF_8);
+            byte[] payload = new byte[2 + reasonBytes.length];
+            payload[0] = (byte) (code >> 8);
+            payload[1] = (byte) code;
+            System.arraycopy(reasonBytes, 0, payload, 2, reasonBytes.length);
+
+            // Let the writer flush what it has plus the close frame, then stop
+            outbound.clear();
+            outbound.offer(encodeFrame(OP_CLOSE, payload));
+            if (writer == null) {
+                closeQuietly(socket);
+            } else if (Thread.currentThread() != writer) {
+                // Writer exits on its own once the queue is drained
+                Thread.ofVirtual().start(() -> {
+                    try {
+                        writer.join(2000);
+                    } catch (InterruptedException ignored) {
+                    }
+                    writer.interrupt();
+                    closeQuietly(socket);
+                });
+            }
+        }
+
+        private int readByte() throws IOException {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException();
+            }
+            return b;
+        }
+
+        private byte[] readBytes(int length) throws IOException {
+            byte[] data = in.readNBytes(length);
+            if (data.length < length) {
+                throw new EOFException();
+            }
+            return data;
+        }
+    }
+
+    /**
+     * Encode an unmasked server-to-client frame.
+     */
+    private static byte[] encodeFrame(int opcode, byte[] payload) {
+        int headerLength = payload.length < 126 ? 2 : payload.length <= 0xFFFF ? 4 : 10;
+        byte[] frame = new byte[headerLength + payload.length];
+        frame[0] = (byte) (0x80 | opcode);
+
+        if (payload.length < 126) {
+            frame[1] = (byte) payload.length;
+        } else if (payload.length <= 0xFFFF) {
+            frame[1] = 126;
+            frame[2] = (byte) (payload.length >> 8);
+            frame[3] = (byte) payload.length;
+        } else {
+            frame[1] = 127;
+            long length = payload.length;
+            for (int i = 0; i < 8; i++) {
+                frame[2 + i] = (byte) (length >> (56 - 8 * i));
+            }
+        }
+
+        System.arraycopy(payload, 0, frame, headerLength, payload.length);
+        return frame;
+    }
+
+    private static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key + WS_GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                int len = sb.length();
+                if (len > 0 && sb.charAt(len - 1) == '\r') {
+                    sb.setLength(len - 1);
+                }
+                return sb.toString();
+            }
+            if (sb.length() >= MAX_HEADER_BYTES) {
+                throw new IOException("Header line too long");
+            }
+            sb.append((char) b);
+        }
+        throw new EOFException();
+    }
+
+    private static void writeHttpError(OutputStream out, int status, String reason) throws IOException {
+        String response = "HTTP/1.1 " + status + " " + reason + "\r\n"
+                + "Content-Length: 0\r\n"
+                + "Connection: close\r\n\r\n";
+        out.write(response.getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
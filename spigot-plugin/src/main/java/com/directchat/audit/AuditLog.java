@@ -0,0 +1,300 @@
+package com.directchat.audit;
+
+import com.directchat.chat.ChatMessage;
+import com.directchat.metrics.Counter;
+import com.directchat.metrics.MetricsRegistry;
+import com.directchat.player.ChatPlayer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Asynchronous log of what DirectChat clients do: chat messages, commands
+ * and logins, plus debug output. Request threads only put an event into a
+ * bounded ring; one background thread writes everything queued to the
+ * console and to daily audit files, flushing once per batch. When the ring
+ * is full events are dropped and counted instead of making requests wait.
+ *
+ * <p>Files are named {@code audit-<date>.log}, with {@code .1}, {@code .2}...
+ * before the extension once a file reaches its size limit.
+ */
+public final class AuditLog implements Closeable {
+
+    private static final Pattern FILE_NAME = Pattern.compile("audit-(\\d{4}-\\d{2}-\\d{2})(?:\\.\\d+)?\\.log");
+
+    private enum Type { CHAT, COMMAND, AUTH, DEBUG }
+
+    private record Event(long timestamp, Type type, String player, String uuid, String text) {
+    }
+
+    private final RingQueue<Event> queue;
+    // Wake the writer early once the ring is this full
+    private final int wakeThreshold;
+    // Null if audit files are disabled
+    private final Path directory;
+    private final boolean console;
+    private final long flushIntervalNanos;
+    private final long maxFileBytes;
+    private final int retentionDays;
+    private final Logger logger;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final Counter processed;
+    private final Counter droppedFull;
+    private final Counter droppedWriteError;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // Only touched by the writer thread
+    private Writer out;
+    private LocalDate fileDate;
+    private int fileIndex;
+    private long fileBytes;
+    // Set after a failed write until the next successful one, to log failures once
+    private boolean failing;
+
+    private AuditLog(Path directory, boolean console, int queueSize, long flushIntervalMillis, long maxFileBytes,
+            int retentionDays, Logger logger, MetricsRegistry metrics) {
+        this.queue = new RingQueue<>(queueSize);
+        this.wakeThreshold = queue.capacity() / 2;
+        this.directory = directory;
+        this.console = console;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushIntervalMillis));
+        this.maxFileBytes = maxFileBytes;
+        this.retentionDays = retentionDays;
+        this.logger = logger;
+        this.processed = metrics.counter("directchat_audit_events_total", "Audit events written");
+        this.droppedFull = metrics.counter("directchat_audit_dropped_total", "Audit events dropped",
+                "reason", "queue_full");
+        this.droppedWriteError = metrics.counter("directchat_audit_dropped_total", "Audit events dropped",
+                "reason", "write_error");
+        metrics.gauge("directchat_audit_queue", "Audit events waiting to be written", queue::size);
+        this.writer = new Thread(this::run, "DirectChat-Audit");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Start the writer thread.
+     *
+     * @param directory           Directory for audit files, or null to only
+     *                            log to the console
+     * @param console             Also log chat, commands and logins to the
+     *                            console (debug output always is)
+     * @param queueSize           Events that may wait to be written before
+     *                            new ones are dropped
+     * @param flushIntervalMillis Time the writer waits for more events
+     * @param maxFileBytes        Size at which a new file is started the same
+     *                            day (0 = no limit)
+     * @param retentionDays       Days after which files are deleted (0 = keep)
+     */
+    public static AuditLog start(Path directory, boolean console, int queueSize, long flushIntervalMillis,
+            long maxFileBytes, int retentionDays, Logger logger, MetricsRegistry metrics) {
+        AuditLog log = new AuditLog(directory, console, queueSize, flushIntervalMillis, maxFileBytes, retentionDays,
+                logger, metrics);
+        log.writer.start();
+        return log;
+    }
+
+    /**
+     * Record a chat message sent through the API to a channel.
+     */
+    public void chat(String channel, ChatMessage message) {
+        record(new Event(message.timestamp(), Type.CHAT, message.senderName(), message.senderUuid(),
+                "[" + channel + "] " + message.message()));
+    }
+
+    /**
+     * Record a command run through the API, without the leading slash.
+     */
+    public void command(ChatPlayer player, String command) {
+        record(new Event(System.currentTimeMillis(), Type.COMMAND, player.getName(),
+                player.getUniqueId().toString(), "/" + command));
+    }
+
+    /**
+     * Record a successful login.
+     */
+    public void auth(ChatPlayer player) {
+        record(new Event(System.currentTimeMillis(), Type.AUTH, player.getName(),
+                player.getUniqueId().toString(), "authenticated"));
+    }
+
+    /**
+     * Log a debug message to the console. Not written to audit files.
+     */
+    public void debug(String message) {
+        record(new Event(System.currentTimeMillis(), Type.DEBUG, null, null, message));
+    }
+
+    private void record(Event event) {
+        if (!queue.offer(event)) {
+            droppedFull.increment();
+            return;
+        }
+        if (queue.size() >= wakeThreshold) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Write everything queued, flush, then wait for more.
+     */
+    private void run() {
+        while (true) {
+            boolean stopping = !running;
+            int count = 0;
+            Event event;
+            while ((event = queue.poll()) != null) {
+                write(event);
+                count++;
+            }
+            if (count > 0) {
+                processed.add(count);
+                flush();
+            }
+            if (stopping) {
+                break;
+            }
+            LockSupport.parkNanos(this, flushIntervalNanos);
+        }
+        closeFile();
+    }
+
+    private void write(Event event) {
+        if (event.type() == Type.DEBUG) {
+            logger.info("[DEBUG] " + event.text());
+            return;
+        }
+        if (console) {
+            logger.info(switch (event.type()) {
+                case CHAT -> "[DirectChat] " + event.player() + ": " + event.text();
+                case COMMAND -> "[DirectChat] " + event.player() + " issued command: " + event.text();
+                default -> "Player " + event.player() + " authenticated via DirectChat";
+            });
+        }
+        if (directory == null) {
+            return;
+        }
+
+        // One line per event, newlines in client text escaped
+        String line = Instant.ofEpochMilli(event.timestamp()) + " " + event.type() + " " + event.player()
+                + " (" + event.uuid() + "): " + event.text().replace("\r", "\\r").replace("\n", "\\n") + "\n";
+        try {
+            LocalDate date = LocalDate.ofInstant(Instant.ofEpochMilli(event.timestamp()), zone);
+            if (out == null || !date.equals(fileDate) || (maxFileBytes > 0 && fileBytes >= maxFileBytes)) {
+                roll(date);
+            }
+            out.write(line);
+            // Close enough for the size limit without encoding twice
+            fileBytes += line.length();
+            failing = false;
+        } catch (IOException e) {
+            droppedWriteError.increment();
+            if (!failing) {
+                logger.log(Level.SEVERE, "Failed to write audit log, events are being dropped", e);
+                failing = true;
+            }
+            closeFile();
+        }
+    }
+
+    /**
+     * Switch to the file for a date, or to the next one of the same date if
+     * the current one is full.
+     */
+    private void roll(LocalDate date) throws IOException {
+        boolean full = out != null && date.equals(fileDate);
+        closeFile();
+        if (!date.equals(fileDate)) {
+            fileDate = date;
+            fileIndex = 0;
+            deleteExpired(date);
+        } else if (full) {
+            fileIndex++;
+        }
+
+        Files.createDirectories(directory);
+        // Continue the newest file written before a restart if it has room
+        Path file = directory.resolve(fileName(date, fileIndex));
+        while (maxFileBytes > 0 && Files.exists(file) && Files.size(file) >= maxFileBytes) {
+            file = directory.resolve(fileName(date, ++fileIndex));
+        }
+        fileBytes = Files.exists(file) ? Files.size(file) : 0;
+        out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void deleteExpired(LocalDate today) {
+        if (retentionDays <= 0 || !Files.isDirectory(directory)) {
+            return;
+        }
+        LocalDate cutoff = today.minusDays(retentionDays);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "audit-*.log")) {
+            for (Path file : files) {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches() && LocalDate.parse(matcher.group(1)).isBefore(cutoff)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Could not delete old audit files", e);
+        }
+    }
+
+    private void flush() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to flush audit log", e);
+            closeFile();
+        }
+    }
+
+    private void closeFile() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Failed to close audit file", e);
+        }
+        out = null;
+    }
+
+    private static String fileName(LocalDate date, int index) {
+        return "audit-" + DateTimeFormatter.ISO_LOCAL_DATE.format(date) + (index > 0 ? "." + index : "") + ".log";
+    }
+
+    /**
+     * Write what is still queued and stop the writer thread.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.directchat.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue for many producers and one consumer, backed by a
+ * fixed array used as a ring. Each slot carries a sequence number telling
+ * producers whether it is free for their position and the consumer whether
+ * it has been filled, so offer() never blocks or allocates and simply fails
+ * when the ring is full.
+ */
+final class RingQueue<E> {
+
+    private final Object[] items;
+    // Slot i is free for position p when it holds p, filled when it holds p + 1
+    private final AtomicLongArray sequences;
+    private final int mask;
+    // Next position to fill, claimed by producers
+    private final AtomicLong tail = new AtomicLong();
+    // Next position to take; written only by the consumer
+    private volatile long head;
+
+    /**
+     * @param capacity Rounded up to a power of two
+     */
+    RingQueue(int capacity) {
+        int size = capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+        this.items = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    int capacity() {
+        return items.length;
+    }
+
+    /**
+     * Add an element. Safe from any thread.
+     *
+     * @return False if the queue is full
+     */
+    boolean offer(E element) {
+        long position = tail.get();
+        while (true) {
+            int slot = (int) position & mask;
+            long diff = sequences.getAcquire(slot) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    items[slot] = element;
+                    sequences.setRelease(slot, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (diff < 0) {
+                // Not yet taken since the last lap
+                return false;
+            } else {
+                // Another producer claimed it first
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Take the oldest element, or return null if none is ready. Only called
+     * by the consumer.
+     */
+    @SuppressWarnings("unchecked")
+    E poll() {
+        long position = head;
+        int slot = (int) position & mask;
+        if (sequences.getAcquire(slot) != position + 1) {
+            return null;
+        }
+        E element = (E) items[slot];
+        items[slot] = null;
+        sequences.setRelease(slot, position + items.length);
+        head = position + 1;
+        return element;
+    }
+
+    /**
+     * Approximate number of queued elements.
+     */
+    int size() {
+        return (int) Math.max(0, Math.min(items.length, tail.get() - head));
+    }
+}
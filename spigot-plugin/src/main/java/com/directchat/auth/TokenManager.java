@@ -118,6 +118,13 @@ public class TokenManager {
         playerTokens.clear();
     }
 
+    /**
+     * Number of issued tokens, including expired ones not looked up since.
+     */
+    public int getTokenCount() {
+        return tokens.size();
+    }
+
     /**
      * Get all authenticated player UUIDs.
      */
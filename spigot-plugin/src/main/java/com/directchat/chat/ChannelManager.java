@@ -0,0 +1,446 @@
+package com.directchat.chat;
+
+import com.directchat.auth.TokenManager;
+import com.directchat.metrics.MetricsRegistry;
+import com.directchat.player.ChatPlayer;
+import com.directchat.player.PlayerRegistry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Named chat channels (global, staff, trade, team-...), each a
+ * {@link ChatManager} with its own history, chat log and search index, and
+ * its own set of subscribed players. A message only reaches the subscribers
+ * of its channel, in game and over WebSocket, so broadcasting costs
+ * O(subscribers) instead of O(players).
+ *
+ * <p>Restricted channels need the {@code directchat.channel.<name>}
+ * permission. With team channels on, each scoreboard team gets a
+ * {@code team-<name>} channel only its members can use, created when the
+ * first member joins it and removed once nobody is subscribed. Access is
+ * checked again every second, so players who lose a permission or change
+ * teams stop getting the channel. Removed team channels close their log and
+ * search index on a background thread, and a team channel is only created
+ * again once its previous instance has finished closing.
+ */
+public class ChannelManager {
+
+    public static final String GLOBAL = "global";
+
+    private static final String TEAM_PREFIX = "team-";
+    private static final String PERMISSION_PREFIX = "directchat.channel.";
+    private static final int MAX_NAME_LENGTH = 32;
+    private static final Pattern NAME = Pattern.compile("[a-z0-9_-]{1," + MAX_NAME_LENGTH + "}");
+    private static final int ACCESS_CHECK_TICKS = 20;
+
+    private final Map<String, ChatManager> channels = new ConcurrentHashMap<>();
+    // Configured channels, in order, for listings
+    private final List<String> configured = new ArrayList<>();
+    private final Set<String> restricted;
+    private final boolean teamChannels;
+    private final int maxHistorySize;
+    private final long offHeapMemory;
+    private final TickFanout fanout;
+    private final PlayerRegistry players;
+    private final Logger logger;
+    private final MetricsRegistry metrics;
+    private final Consumer<ChatManager> setup;
+    // Notified of every message stored in any channel
+    private final List<BiConsumer<ChatManager, StoredMessage>> listeners = new CopyOnWriteArrayList<>();
+    private final List<Consumer<ChatManager>> removeListeners = new CopyOnWriteArrayList<>();
+    // Team channels being created or closed, by name; both wait on the other
+    private final Map<String, CompletableFuture<ChatManager>> creating = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Void>> closing = new ConcurrentHashMap<>();
+    // Closing joins the indexer and syncs the log, which must not stall a tick
+    private final ExecutorService closer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "DirectChat-ChannelCloser");
+        t.setDaemon(true);
+        return t;
+    });
+    private final DirectMessages directMessages;
+    // Only touched on the main thread
+    private int ticksUntilAccessCheck = ACCESS_CHECK_TICKS;
+
+    /**
+     * Create the configured channels. The global channel always exists.
+     *
+     * @param names          Channel names; invalid names are skipped with a warning
+     * @param restricted     Channels that need the directchat.channel.&lt;name&gt;
+     *                       permission
+     * @param teamChannels   Whether scoreboard teams get their own channels
+     * @param maxHistorySize Messages kept in memory per channel
+     * @param offHeapMemory  Bytes of direct memory per channel, or 0 to keep
+     *                       history on the heap
+     * @param inboxSize      Private messages kept per player, or 0 to leave
+     *                       /msg to the server
+     * @param setup          Called with every new channel before it is used,
+     *                       e.g. to restore its chat log and start its search
+     *                       index
+     */
+    public ChannelManager(Collection<String> names, Collection<String> restricted, boolean teamChannels,
+            int maxHistorySize, long offHeapMemory, int inboxSize, TokenManager tokenManager, PlayerRegistry players,
+            Logger logger, MetricsRegistry metrics, Consumer<ChatManager> setup) {
+        this.restricted = Set.copyOf(normalizeAll(restricted));
+        this.teamChannels = teamChannels;
+        this.maxHistorySize = maxHistorySize;
+        this.offHeapMemory = offHeapMemory;
+        this.fanout = new TickFanout(tokenManager, players, metrics);
+        this.players = players;
+        this.logger = logger;
+        this.metrics = metrics;
+        this.setup = setup;
+        this.directMessages = new DirectMessages(inboxSize, fanout, logger, metrics);
+
+        List<String> all = new ArrayList<>();
+        all.add(GLOBAL);
+        all.addAll(normalizeAll(names));
+        for (String name : all) {
+            if (!NAME.matcher(name).matches() || name.startsWith(TEAM_PREFIX)) {
+                logger.warning("Invalid channel name '" + name + "', use a-z, 0-9, - and _ without a team- prefix");
+            } else if (!channels.containsKey(name)) {
+                configured.add(name);
+                channels.put(name, create(name));
+            }
+        }
+        metrics.gauge("directchat_channels", "Chat channels, including team channels", channels::size);
+    }
+
+    /**
+     * Channel name from a request parameter: lowercase, global if missing.
+     */
+    public static String normalize(String name) {
+        return name == null || name.isBlank() ? GLOBAL : name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static List<String> normalizeAll(Collection<String> names) {
+        List<String> result = new ArrayList<>(names.size());
+        for (String name : names) {
+            if (!name.isBlank()) {
+                result.add(normalize(name));
+            }
+        }
+        return result;
+    }
+
+    private ChatManager create(String name) {
+        ChatManager channel = new ChatManager(name, maxHistorySize, offHeapMemory, fanout,
+                ConcurrentHashMap.newKeySet(), logger, metrics);
+        channel.addListener(stored -> {
+            for (BiConsumer<ChatManager, StoredMessage> listener : listeners) {
+                listener.accept(channel, stored);
+            }
+        });
+        setup.accept(channel);
+        return channel;
+    }
+
+    public ChatManager getGlobal() {
+        return channels.get(GLOBAL);
+    }
+
+    /**
+     * Private messages between players, shown in game through the same
+     * fanout as the channels.
+     */
+    public DirectMessages getDirectMessages() {
+        return directMessages;
+    }
+
+    /**
+     * Get a configured channel or a team channel that already exists.
+     *
+     * @return Null if there is no such channel
+     */
+    public ChatManager get(String name) {
+        return channels.get(name);
+    }
+
+    /**
+     * Whether using a channel depends on who the player is, so callers must
+     * check {@link #getForPlayer} instead of {@link #get}.
+     */
+    public boolean isRestricted(String name) {
+        return restricted.contains(name) || name.startsWith(TEAM_PREFIX);
+    }
+
+    /**
+     * Get a channel the player may read and write, creating the player's
+     * team channel on first use.
+     *
+     * @return Null if the channel doesn't exist or the player has no access
+     */
+    public ChatManager getForPlayer(String name, ChatPlayer player) {
+        ChatManager channel = channels.get(name);
+        if (channel == null) {
+            if (!name.equals(teamChannel(player))) {
+                return null;
+            }
+            channel = getOrCreateTeamChannel(name);
+        }
+        return canAccess(player, name) ? channel : null;
+    }
+
+    /**
+     * Get a team channel, creating it if needed. Creating restores its chat
+     * log, so it happens outside any map lock, once per name, and only after
+     * a removed instance of the same name has closed its files.
+     */
+    private ChatManager getOrCreateTeamChannel(String name) {
+        while (true) {
+            ChatManager channel = channels.get(name);
+            if (channel != null) {
+                return channel;
+            }
+            CompletableFuture<ChatManager> created = new CompletableFuture<>();
+            CompletableFuture<ChatManager> other = creating.putIfAbsent(name, created);
+            if (other != null) {
+                // Another request is creating it; retry if that failed
+                ChatManager result = other.exceptionally(e -> null).join();
+                if (result != null) {
+                    return result;
+                }
+                continue;
+            }
+
+            try {
+                // Read after the channel map: a removal registers its close first
+                channel = channels.get(name);
+                if (channel == null) {
+                    CompletableFuture<Void> previous = closing.get(name);
+                    if (previous != null) {
+                        previous.join();
+                        // The removal may have been undone by a late subscriber
+                        channel = channels.get(name);
+                    }
+                    if (channel == null) {
+                        channel = create(name);
+                        channels.put(name, channel);
+                    }
+                }
+                created.complete(channel);
+                return channel;
+            } catch (RuntimeException | Error e) {
+                created.completeExceptionally(e);
+                throw e;
+            } finally {
+                creating.remove(name, created);
+            }
+        }
+    }
+
+    private boolean canAccess(ChatPlayer player, String name) {
+        if (name.startsWith(TEAM_PREFIX)) {
+            return name.equals(teamChannel(player));
+        }
+        return !restricted.contains(name) || player.hasPermission(PERMISSION_PREFIX + name);
+    }
+
+    /**
+     * Name of the player's team channel, or null if the player has no team
+     * or team channels are off.
+     */
+    private String teamChannel(ChatPlayer player) {
+        String team = teamChannels ? player.getTeam() : null;
+        if (team == null || team.isEmpty()) {
+            return null;
+        }
+        StringBuilder name = new StringBuilder(TEAM_PREFIX);
+        for (int i = 0; i < team.length() && name.length() < MAX_NAME_LENGTH; i++) {
+            char c = Character.toLowerCase(team.charAt(i));
+            name.append((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' ? c : '_');
+        }
+        return name.toString();
+    }
+
+    /**
+     * Channels the player may join: the configured ones they have access to,
+     * then their team channel.
+     */
+    public List<ChatManager> getAccessible(ChatPlayer player) {
+        List<ChatManager> result = new ArrayList<>();
+        for (String name : configured) {
+            if (canAccess(player, name)) {
+                result.add(channels.get(name));
+            }
+        }
+        String team = teamChannel(player);
+        if (team != null) {
+            result.add(getForPlayer(team, player));
+        }
+        return result;
+    }
+
+    /**
+     * Subscribe a player to a channel.
+     *
+     * @return False if the channel doesn't exist or the player has no access
+     */
+    public boolean join(ChatPlayer player, String name) {
+        while (true) {
+            ChatManager channel = getForPlayer(name, player);
+            if (channel == null) {
+                return false;
+            }
+            channel.subscribe(player.getUniqueId());
+            if (channels.get(name) == channel) {
+                return true;
+            }
+            // An empty team channel was removed in between, join its replacement
+            channel.unsubscribe(player.getUniqueId());
+        }
+    }
+
+    /**
+     * Unsubscribe a player from a channel.
+     */
+    public void leave(UUID playerUuid, String name) {
+        ChatManager channel = channels.get(name);
+        if (channel != null) {
+            channel.unsubscribe(playerUuid);
+        }
+    }
+
+    /**
+     * Subscribe a newly authenticated player to the global channel and
+     * their team channel.
+     */
+    public void joinDefaults(ChatPlayer player) {
+        join(player, GLOBAL);
+        String team = teamChannel(player);
+        if (team != null) {
+            join(player, team);
+        }
+    }
+
+    /**
+     * Unsubscribe a player from every channel and drop their private
+     * messages, e.g. when they leave the server.
+     */
+    public void removePlayer(UUID playerUuid) {
+        for (ChatManager channel : channels.values()) {
+            channel.unsubscribe(playerUuid);
+        }
+        directMessages.removePlayer(playerUuid);
+    }
+
+    /**
+     * Register a listener called for every message stored in any channel,
+     * including channels created later.
+     */
+    public void addListener(BiConsumer<ChatManager, StoredMessage> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(BiConsumer<ChatManager, StoredMessage> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Register a listener called with every team channel removed for having
+     * no subscribers, so per-channel state can be dropped.
+     */
+    public void addRemoveListener(Consumer<ChatManager> listener) {
+        removeListeners.add(listener);
+    }
+
+    /**
+     * Start showing broadcasts of all channels to their subscribers in game;
+     * see {@link ChatManager#startFanout}. Also starts the access checks of
+     * restricted and team channels, on the main thread.
+     */
+    public void startFanout(long maxTickNanos) {
+        fanout.start(maxTickNanos);
+        players.runEveryTick(() -> {
+            if (--ticksUntilAccessCheck <= 0) {
+                ticksUntilAccessCheck = ACCESS_CHECK_TICKS;
+                checkAccess();
+            }
+        });
+    }
+
+    /**
+     * Unsubscribe players from the restricted and team channels they lost
+     * access to, then remove team channels nobody is subscribed to.
+     */
+    void checkAccess() {
+        for (ChatManager channel : channels.values()) {
+            String name = channel.getChannel();
+            if (!isRestricted(name)) {
+                continue;
+            }
+            for (UUID uuid : channel.getSubscribers()) {
+                ChatPlayer player = players.getOnlinePlayer(uuid);
+                if (player == null || !canAccess(player, name)) {
+                    channel.unsubscribe(uuid);
+                }
+            }
+            if (name.startsWith(TEAM_PREFIX) && channel.getSubscriberCount() == 0) {
+                removeTeamChannel(channel);
+            }
+        }
+    }
+
+    private void removeTeamChannel(ChatManager channel) {
+        String name = channel.getChannel();
+        // Registered before the channel leaves the map, see getOrCreateTeamChannel
+        CompletableFuture<Void> closed = new CompletableFuture<>();
+        closing.put(name, closed);
+        boolean removed = channels.remove(name, channel);
+        if (removed && channel.getSubscriberCount() > 0) {
+            // Somebody joined in between and saw it still registered
+            removed = channels.putIfAbsent(name, channel) != null;
+        }
+        if (!removed) {
+            closing.remove(name, closed);
+            closed.complete(null);
+            return;
+        }
+
+        closer.execute(() -> {
+            try {
+                channel.close();
+            } catch (RuntimeException e) {
+                logger.warning("Failed to close channel " + name + ": " + e.getMessage());
+            } finally {
+                closing.remove(name, closed);
+                closed.complete(null);
+            }
+        });
+        metrics.removeSeries("channel", name);
+        for (Consumer<ChatManager> listener : removeListeners) {
+            listener.accept(channel);
+        }
+    }
+
+    /**
+     * Flush and close every channel's chat log and stop its search index,
+     * including team channels still closing in the background.
+     */
+    public void close() {
+        for (ChatManager channel : channels.values()) {
+            channel.close();
+        }
+        closer.shutdown();
+        try {
+            closer.awaitTermination(15, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
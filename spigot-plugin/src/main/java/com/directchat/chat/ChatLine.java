@@ -0,0 +1,64 @@
+package com.directchat.chat;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One or more formatted lines shown in game together. The host's rendering
+ * (e.g. an Adventure component) is built on first use and cached, so a batch
+ * is rendered once however many players it is shown to.
+ */
+public final class ChatLine {
+
+    private final String text;
+    private final int lineCount;
+    // Rendering from the first render() call; racing callers build equal ones
+    private volatile Object rendered;
+
+    private ChatLine(String text, int lineCount) {
+        this.text = text;
+        this.lineCount = lineCount;
+    }
+
+    /**
+     * A single line of legacy § text.
+     */
+    public static ChatLine of(String text) {
+        return new ChatLine(text, 1);
+    }
+
+    /**
+     * Join lines into one, separated by line breaks.
+     */
+    static ChatLine join(List<String> lines) {
+        return lines.size() == 1 ? of(lines.get(0)) : new ChatLine(String.join("\n", lines), lines.size());
+    }
+
+    /**
+     * Legacy § text, lines separated by line breaks.
+     */
+    public String text() {
+        return text;
+    }
+
+    /**
+     * Number of chat lines this holds.
+     */
+    public int lineCount() {
+        return lineCount;
+    }
+
+    /**
+     * The text rendered by renderer, cached after the first call. Every
+     * caller must pass the same renderer.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T render(Function<String, T> renderer) {
+        Object result = rendered;
+        if (result == null) {
+            result = renderer.apply(text);
+            rendered = result;
+        }
+        return (T) result;
+    }
+}
@@ -0,0 +1,267 @@
+package com.directchat.chat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Persistent, append-only log of chat history, so messages survive restarts
+ * and clients can catch up from cursors older than in-memory history.
+ *
+ * <p>Messages are appended to memory-mapped segment files named after the
+ * sequence number of their first message. Writes only copy into the page
+ * cache; a background thread flushes them to disk periodically and deletes
+ * the oldest segments past the retention limits. Appended to under
+ * ChatManager's history lock, read without locking.
+ */
+public final class ChatLog implements Closeable {
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("(\\d{20})\\.log");
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long retentionMillis;
+    private final long maxBytes;
+    private final Logger logger;
+    // Segments by sequence number of their first message
+    private final ConcurrentSkipListMap<Long, LogSegment> segments = new ConcurrentSkipListMap<>();
+
+    // Segment being appended to; only touched by the writer
+    private LogSegment active;
+    // Set after a failed write until the next successful one, to log failures once
+    private boolean failing;
+    private ScheduledExecutorService syncExecutor;
+
+    private ChatLog(Path directory, int segmentSize, long retentionMillis, long maxBytes, Logger logger) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.retentionMillis = retentionMillis;
+        this.maxBytes = maxBytes;
+        this.logger = logger;
+    }
+
+    /**
+     * Open the log in a directory, creating it if needed, and recover the
+     * segments written before.
+     *
+     * @param segmentSize     Size of each segment file in bytes
+     * @param retentionMillis Age of the newest message after which a segment
+     *                        is deleted (0 = no age limit)
+     * @param maxBytes        Total size of segments above which the oldest are
+     *                        deleted (0 = no size limit)
+     */
+    public static ChatLog open(Path directory, int segmentSize, long retentionMillis, long maxBytes, Logger logger)
+            throws IOException {
+        Files.createDirectories(directory);
+        ChatLog log = new ChatLog(directory, segmentSize, retentionMillis, maxBytes, logger);
+
+        Map<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.log")) {
+            for (Path file : stream) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    files.put(Long.parseLong(matcher.group(1)), file);
+                }
+            }
+        }
+
+        long lastSequence = 0;
+        int remaining = files.size();
+        for (Map.Entry<Long, Path> file : files.entrySet()) {
+            boolean last = --remaining == 0;
+            LogSegment segment = LogSegment.open(file.getValue(), file.getKey(), last);
+            if (!segment.recover()) {
+                logger.warning("Chat log segment " + file.getValue().getFileName()
+                        + " was cut off, messages after #" + segment.lastSequence() + " are lost");
+            }
+            // Sequence numbers must keep increasing across segments
+            if (file.getKey() <= lastSequence) {
+                logger.warning("Ignoring chat log segment " + file.getValue().getFileName()
+                        + ", it overlaps the one before");
+                continue;
+            }
+            log.segments.put(file.getKey(), segment);
+            lastSequence = segment.lastSequence();
+            if (last) {
+                log.active = segment;
+            }
+        }
+        log.applyRetention();
+        return log;
+    }
+
+    /**
+     * Flush and apply retention every interval on a background thread.
+     *
+     * @param syncIntervalMillis Time between flushes (0 = leave flushing to
+     *                           the operating system until the log is closed)
+     */
+    public synchronized void startSync(long syncIntervalMillis) {
+        syncExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "DirectChat-LogSync");
+            t.setDaemon(true);
+            return t;
+        });
+        long interval = syncIntervalMillis > 0 ? syncIntervalMillis : TimeUnit.MINUTES.toMillis(1);
+        syncExecutor.scheduleWithFixedDelay(() -> {
+            if (syncIntervalMillis > 0) {
+                sync();
+            }
+            applyRetention();
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sequence number of the oldest message, or lastSequence() + 1 if empty.
+     */
+    public long firstSequence() {
+        Map.Entry<Long, LogSegment> first = segments.firstEntry();
+        return first != null ? first.getKey() : lastSequence() + 1;
+    }
+
+    /**
+     * Sequence number of the newest message, or 0 if nothing was ever logged.
+     */
+    public long lastSequence() {
+        Map.Entry<Long, LogSegment> last = segments.lastEntry();
+        return last != null ? last.getValue().lastSequence() : 0;
+    }
+
+    /**
+     * Number of segment files.
+     */
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Size of all segment files in bytes.
+     */
+    public long sizeBytes() {
+        long total = 0;
+        for (LogSegment segment : segments.values()) {
+            total += segment.capacity();
+        }
+        return total;
+    }
+
+    /**
+     * Append messages, starting a new segment whenever one is full.
+     * Failures are logged and the messages stay in memory only.
+     */
+    void append(StoredMessage[] messages) {
+        for (StoredMessage message : messages) {
+            byte[] record = LogSegment.encode(message);
+            try {
+                if (active == null || !active.append(message, record)) {
+                    if (record.length > segmentSize) {
+                        logger.warning("Message #" + message.sequence() + " is too large for the chat log");
+                        continue;
+                    }
+                    active = LogSegment.create(directory.resolve(fileName(message.sequence())),
+                            message.sequence(), segmentSize);
+                    segments.put(message.sequence(), active);
+                    active.append(message, record);
+                }
+                failing = false;
+            } catch (IOException | UncheckedIOException e) {
+                if (!failing) {
+                    logger.log(Level.SEVERE, "Failed to write chat log, new messages are only kept in memory", e);
+                    failing = true;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Read messages with sequence numbers from..to, oldest first, at most max.
+     * Messages deleted by retention are skipped.
+     */
+    List<StoredMessage> read(long from, long to, int max) {
+        List<StoredMessage> messages = new ArrayList<>(Math.min(max, 256));
+        Long start = segments.floorKey(from);
+        for (LogSegment segment : segments.tailMap(start != null ? start : from).values()) {
+            if (segment.baseSequence() > to || messages.size() >= max) {
+                break;
+            }
+            segment.read(from, to, max, messages);
+        }
+        return messages;
+    }
+
+    /**
+     * Flush everything appended so far to disk.
+     */
+    public void sync() {
+        for (LogSegment segment : segments.values()) {
+            try {
+                segment.sync();
+            } catch (UncheckedIOException e) {
+                logger.log(Level.WARNING, "Failed to flush chat log segment " + segment.path().getFileName(), e);
+            }
+        }
+    }
+
+    /**
+     * Delete the oldest segments while they are past the retention time or
+     * the log is over its size limit. The newest segment is always kept.
+     */
+    void applyRetention() {
+        long cutoff = retentionMillis > 0 ? System.currentTimeMillis() - retentionMillis : Long.MIN_VALUE;
+        long total = sizeBytes();
+        for (LogSegment segment : segments.values()) {
+            boolean expired = segment.lastTimestamp() < cutoff;
+            boolean oversize = maxBytes > 0 && total > maxBytes;
+            if (segment == segments.lastEntry().getValue() || (!expired && !oversize)) {
+                break;
+            }
+            try {
+                // Readers still holding the segment keep their mapping; on
+                // Windows the delete fails until it is unmapped and is retried
+                Files.deleteIfExists(segment.path());
+                segments.remove(segment.baseSequence());
+                total -= segment.capacity();
+                logger.fine("Deleted chat log segment " + segment.path().getFileName());
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Could not delete chat log segment " + segment.path().getFileName(), e);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Stop the background thread and flush to disk.
+     */
+    @Override
+    public synchronized void close() {
+        if (syncExecutor != null) {
+            syncExecutor.shutdown();
+            try {
+                syncExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        sync();
+    }
+
+    private static String fileName(long baseSequence) {
+        return String.format("%020d.log", baseSequence);
+    }
+}
@@ -1,110 +1,638 @@
 package com.directchat.chat;
 
-import com.directchat.DirectChatPlugin;
-import org.bukkit.Bukkit;
-import org.bukkit.entity.Player;
+import com.directchat.auth.TokenManager;
+import com.directchat.metrics.Counter;
+import com.directchat.metrics.LatencyHistogram;
+import com.directchat.metrics.MetricsRegistry;
+import com.directchat.player.ChatPlayer;
+import com.directchat.player.PlayerRegistry;
+import com.directchat.protocol.ChatFormat;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
 
 /**
  * Manages chat messages and broadcasting for DirectChat.
+ * History is kept in a fixed-size store indexed by sequence number, on the
+ * heap or packed off-heap, and published as versioned
+ * {@link HistorySnapshot}s, optionally backed by a persistent {@link ChatLog}.
+ * Each {@link ChannelManager} channel has its own chat manager.
  */
 public class ChatManager {
 
-    private final int maxHistorySize;
-    private final LinkedList<ChatMessage> messageHistory = new LinkedList<>();
+    private final String channel;
+    // Players shown this channel's messages in game, or null for every authenticated player
+    private final Set<UUID> subscribers;
+    private final MessageStore store;
+    private final Logger logger;
+    // Current history range, replaced on every change so readers never lock
+    private volatile HistorySnapshot history;
+    // Persistent log every message is appended to, or null
+    private volatile ChatLog log;
+    // Oldest sequence number readers may get from the log
+    private long logFloor = 1;
 
-    public ChatManager(int maxHistorySize) {
-        this.maxHistorySize = maxHistorySize;
+    // Serializes history updates; a lock instead of synchronized so parked
+    // long-poll requests don't pin virtual threads
+    private final ReentrantLock historyLock = new ReentrantLock();
+    private final Condition messageAdded = historyLock.newCondition();
+    // Batches added to history but not written to the log yet, in sequence
+    // order; written outside the history lock by whoever holds the log lock
+    private final Queue<StoredMessage[]> logQueue = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock logLock = new ReentrantLock();
+    // Sequence number of the newest message written to the log
+    private volatile long loggedUpTo;
+    // Inboxes of long polls that also wait for private messages, with the
+    // number of polls parked on each; woken on every change
+    private final Map<Inbox, Integer> waitingInboxes = new ConcurrentHashMap<>();
+
+    // Notified of every stored message (e.g. WebSocket push)
+    private final List<Consumer<StoredMessage>> listeners = new CopyOnWriteArrayList<>();
+    // Shows messages in game on the main thread
+    private final TickFanout fanout;
+    // Word, sender and time index for search, or null until started
+    private volatile SearchIndex searchIndex;
+    private volatile Thread searchIndexer;
+    // Set by close() to stop the search indexer
+    private volatile boolean closed;
+    // Compiled in-game line formats
+    private volatile ChatFormat chatFormat = ChatFormat.compile(ChatFormat.DEFAULT_CHAT, ChatFormat.DEFAULT_TIME);
+    private volatile ChatFormat systemFormat = ChatFormat.compile(ChatFormat.DEFAULT_SYSTEM, ChatFormat.DEFAULT_TIME);
+
+    private final Counter messagesStored;
+    private final LatencyHistogram appendLatency;
+    private final LatencyHistogram fanoutLatency;
+    private final LatencyHistogram fetchLatency;
+    private final LatencyHistogram searchLatency;
+
+    /**
+     * Chat manager keeping history on the heap.
+     */
+    public ChatManager(int maxHistorySize, TokenManager tokenManager, PlayerRegistry players, Logger logger,
+            MetricsRegistry metrics) {
+        this(maxHistorySize, 0, tokenManager, players, logger, metrics);
+    }
+
+    /**
+     * @param offHeapMemory Bytes of direct memory to pack history into, or 0
+     *                      to keep it on the heap
+     * @param tokenManager  Decides which players receive messages in game
+     * @param logger        Logger for history restores and format warnings
+     */
+    public ChatManager(int maxHistorySize, long offHeapMemory, TokenManager tokenManager, PlayerRegistry players,
+            Logger logger, MetricsRegistry metrics) {
+        this(ChannelManager.GLOBAL, maxHistorySize, offHeapMemory, new TickFanout(tokenManager, players, metrics),
+                null, logger, metrics);
+    }
+
+    /**
+     * Chat manager for one channel, sharing the in-game fanout with the
+     * other channels.
+     *
+     * @param subscribers Players shown the channel's messages in game, or
+     *                    null for every authenticated player
+     */
+    ChatManager(String channel, int maxHistorySize, long offHeapMemory, TickFanout fanout, Set<UUID> subscribers,
+            Logger logger, MetricsRegistry metrics) {
+        this.channel = channel;
+        this.subscribers = subscribers;
+        this.fanout = fanout;
+        this.store = offHeapMemory > 0
+                ? new OffHeapMessageStore(Math.max(1, maxHistorySize), offHeapMemory)
+                : new MessageRing(Math.max(1, maxHistorySize));
+        this.history = HistorySnapshot.empty(store);
+        this.logger = logger;
+        this.messagesStored = metrics.counter("directchat_chat_messages_total", "Messages added to history",
+                "channel", channel);
+        this.appendLatency = metrics.histogram("directchat_chat_append_seconds",
+                "Time to encode and append messages to history", "channel", channel);
+        this.fanoutLatency = metrics.histogram("directchat_chat_fanout_seconds",
+                "Time to deliver a message to listeners and queue it for in-game players", "channel", channel);
+        this.fetchLatency = metrics.histogram("directchat_chat_fetch_seconds",
+                "Time to read messages from history, excluding long-poll waiting", "channel", channel);
+        this.searchLatency = metrics.histogram("directchat_chat_search_seconds", "Time to answer a search",
+                "channel", channel);
+        metrics.gauge("directchat_chat_search_lag", "Messages in history not indexed for search yet",
+                () -> searchIndex != null ? history.lastSequence() - searchIndex.indexedUpTo() : 0,
+                "channel", channel);
+        metrics.gauge("directchat_chat_search_terms", "Distinct words in the search index",
+                () -> searchIndex != null ? searchIndex.termCount() : 0, "channel", channel);
+        metrics.gauge("directchat_chat_history_size", "Messages in history", () -> history.size(),
+                "channel", channel);
+        metrics.gauge("directchat_chat_history_version", "Changes made to history", () -> history.version(),
+                "channel", channel);
+        metrics.gauge("directchat_chat_history_offheap_bytes", "Direct memory allocated for history",
+                store::offHeapBytes, "channel", channel);
+        metrics.gauge("directchat_chat_log_segments", "Segment files in the persistent chat log",
+                () -> log != null ? log.segmentCount() : 0, "channel", channel);
+        metrics.gauge("directchat_chat_log_bytes", "Size of the persistent chat log on disk",
+                () -> log != null ? log.sizeBytes() : 0, "channel", channel);
+        if (subscribers != null) {
+            metrics.gauge("directchat_chat_subscribers", "Players subscribed to the channel", subscribers::size,
+                    "channel", channel);
+        }
+    }
+
+    /**
+     * Name of the channel this chat manager holds.
+     */
+    public String getChannel() {
+        return channel;
+    }
+
+    /**
+     * Whether a player gets this channel's messages in game and over WebSocket.
+     */
+    public boolean isSubscribed(UUID playerUuid) {
+        return subscribers == null || subscribers.contains(playerUuid);
+    }
+
+    /**
+     * Number of subscribed players, online or not; 0 without a subscriber set.
+     */
+    public int getSubscriberCount() {
+        return subscribers != null ? subscribers.size() : 0;
     }
 
     /**
-     * Broadcast a message from a player to all authenticated DirectChat users.
+     * Live view of the subscribed players; empty without a subscriber set.
      */
-    public void broadcastMessage(Player sender, String message) {
-        DirectChatPlugin plugin = DirectChatPlugin.getInstance();
+    Set<UUID> getSubscribers() {
+        return subscribers != null ? subscribers : Set.of();
+    }
 
-        // Create message record
-        ChatMessage chatMessage = new ChatMessage(
-                sender.getUniqueId().toString(),
-                sender.getName(),
-                message,
-                System.currentTimeMillis());
+    /**
+     * Add a subscriber; only for chat managers with a subscriber set.
+     */
+    boolean subscribe(UUID playerUuid) {
+        return subscribers.add(playerUuid);
+    }
+
+    boolean unsubscribe(UUID playerUuid) {
+        return subscribers.remove(playerUuid);
+    }
+
+    /**
+     * Broadcast a message from a player to the channel's subscribers.
+     */
+    public void broadcastMessage(ChatPlayer sender, String message) {
+        broadcastMessages(sender, List.of(message));
+    }
+
+    /**
+     * Broadcast several messages from a player, in order. They are added to
+     * history together, so pollers see either none or all of them.
+     */
+    public void broadcastMessages(ChatPlayer sender, List<String> messages) {
+        // Create message records
+        long now = System.currentTimeMillis();
+        List<ChatMessage> batch = new ArrayList<>(messages.size());
+        for (String message : messages) {
+            batch.add(new ChatMessage(
+                    sender.getUniqueId().toString(),
+                    sender.getName(),
+                    message,
+                    now));
+        }
+        List<StoredMessage> stored = appendToHistory(batch);
 
-        // Store in history
-        synchronized (messageHistory) {
-            messageHistory.addLast(chatMessage);
-            while (messageHistory.size() > maxHistorySize) {
-                messageHistory.removeFirst();
+        long fanoutStart = System.nanoTime();
+        for (StoredMessage storedMessage : stored) {
+            for (Consumer<StoredMessage> listener : listeners) {
+                listener.accept(storedMessage);
             }
         }
 
-        // Format message
-        String formattedMessage = "§b[DC] §e" + sender.getName() + "§7: §f" + message;
+        ChatFormat format = chatFormat;
+        for (String message : messages) {
+            // Rendered once here, shown to authenticated players on the next tick
+            fanout.enqueue(format.render(sender.getName(), message, now, channel), subscribers);
+        }
+        fanoutLatency.recordSince(fanoutStart);
+    }
+
+    /**
+     * Add messages to history without delivering them to listeners or
+     * players, and wake up parked long-poll requests. Writing them to the
+     * persistent log happens after the history lock is released, so readers
+     * and other senders never wait on disk.
+     *
+     * @return The messages with their sequence numbers
+     */
+    public List<StoredMessage> appendToHistory(List<ChatMessage> messages) {
+        // Encode outside the lock
+        long start = System.nanoTime();
+        StoredMessage[] batch = new StoredMessage[messages.size()];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = StoredMessage.of(messages.get(i));
+        }
 
-        // Broadcast to authenticated players
-        for (UUID playerUuid : plugin.getTokenManager().getAuthenticatedPlayers()) {
-            Player player = Bukkit.getPlayer(playerUuid);
-            if (player != null && player.isOnline()) {
-                player.sendMessage(formattedMessage);
+        // Messages must reach the log before the store evicts them, or
+        // cursors between the two couldn't be served. Catch up early,
+        // outside the history lock...
+        if (log != null && history.lastSequence() - loggedUpTo >= store.capacity() / 2) {
+            logLock.lock();
+            try {
+                drainLogQueue();
+            } finally {
+                logLock.unlock();
             }
         }
 
-        // Also log to console
-        plugin.getLogger().info("[DirectChat] " + sender.getName() + ": " + message);
+        historyLock.lock();
+        try {
+            HistorySnapshot current = history;
+            long sequence = current.lastSequence();
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = batch[i].withSequence(++sequence);
+            }
+            if (log != null) {
+                logQueue.add(batch);
+                // ...and if this batch would still evict unlogged messages
+                // (concurrent senders, large batches), write them all first
+                if (sequence - loggedUpTo > store.capacity()) {
+                    logLock.lock();
+                    try {
+                        drainLogQueue();
+                    } finally {
+                        logLock.unlock();
+                    }
+                }
+            }
+            for (StoredMessage message : batch) {
+                store.put(message);
+            }
+            // Older messages are evicted once the store is full
+            long first = Math.max(current.firstSequence(), store.firstSequence(sequence));
+            long newest = batch.length > 0 ? batch[batch.length - 1].timestamp() : current.newestTimestamp();
+            history = publish(current.version() + 1, first, sequence, newest);
+            messageAdded.signalAll();
+        } finally {
+            historyLock.unlock();
+        }
+        for (Inbox inbox : waitingInboxes.keySet()) {
+            inbox.wake();
+        }
+        writeLog();
+        messagesStored.add(batch.length);
+        appendLatency.recordSince(start);
+        return Arrays.asList(batch);
     }
 
     /**
-     * Broadcast a system message to all authenticated users.
+     * Write queued batches to the log unless another thread is already
+     * writing; that thread picks up whatever is queued before it lets go.
      */
-    public void broadcastSystemMessage(String message) {
-        DirectChatPlugin plugin = DirectChatPlugin.getInstance();
+    private void writeLog() {
+        while (!logQueue.isEmpty() && logLock.tryLock()) {
+            try {
+                drainLogQueue();
+            } finally {
+                logLock.unlock();
+            }
+        }
+    }
 
-        String formattedMessage = "§6[DC System] §f" + message;
+    /**
+     * Write queued batches to the log, in order; called under the log lock.
+     */
+    private void drainLogQueue() {
+        StoredMessage[] batch;
+        while ((batch = logQueue.poll()) != null) {
+            log.append(batch);
+            if (batch.length > 0) {
+                loggedUpTo = batch[batch.length - 1].sequence();
+            }
+        }
+    }
 
-        for (UUID playerUuid : plugin.getTokenManager().getAuthenticatedPlayers()) {
-            Player player = Bukkit.getPlayer(playerUuid);
-            if (player != null && player.isOnline()) {
-                player.sendMessage(formattedMessage);
+    /**
+     * Load the newest messages of a persistent log into history, continue
+     * its sequence numbers and append every new message to it.
+     * Call before any message is added.
+     */
+    public void restore(ChatLog chatLog) {
+        historyLock.lock();
+        try {
+            long last = chatLog.lastSequence();
+            long from = Math.max(chatLog.firstSequence(), last - store.capacity() + 1);
+            long newest = Long.MIN_VALUE;
+            // Page through the log, a large off-heap store may take millions of messages
+            while (from <= last) {
+                List<StoredMessage> messages = chatLog.read(from, last, HistorySnapshot.PAGE_SIZE);
+                if (messages.isEmpty()) {
+                    break;
+                }
+                for (StoredMessage message : messages) {
+                    store.put(message);
+                }
+                StoredMessage end = messages.get(messages.size() - 1);
+                newest = end.timestamp();
+                from = end.sequence() + 1;
             }
+            log = chatLog;
+            loggedUpTo = last;
+            logFloor = chatLog.firstSequence();
+            long first = Math.max(chatLog.firstSequence(), store.firstSequence(last));
+            history = publish(history.version() + 1, first, last, newest);
+            messageAdded.signalAll();
+        } finally {
+            historyLock.unlock();
         }
+        logger.info("Restored " + history.size() + " messages of channel " + channel + " from the chat log, last #"
+                + history.lastSequence());
     }
 
     /**
-     * Get messages since a specific timestamp.
+     * Snapshot of history with the current log; called under the history lock.
      */
-    public List<ChatMessage> getMessagesSince(long since) {
-        List<ChatMessage> result = new ArrayList<>();
+    private HistorySnapshot publish(long version, long first, long last, long newestTimestamp) {
+        return new HistorySnapshot(version, first, last, newestTimestamp, log != null ? logFloor : first, store, log);
+    }
 
-        synchronized (messageHistory) {
-            for (ChatMessage msg : messageHistory) {
-                if (msg.timestamp() > since) {
-                    result.add(msg);
+    /**
+     * Start showing broadcasts to players in game, once per server tick on
+     * the main thread. Messages broadcast before are queued until then.
+     * Channels share one fanout, started by {@link ChannelManager#startFanout}.
+     *
+     * @param maxTickNanos Time each tick may spend on it (0 = no limit);
+     *                     the rest waits for the next tick
+     */
+    public void startFanout(long maxTickNanos) {
+        fanout.start(maxTickNanos);
+    }
+
+    /**
+     * Start indexing history for {@link #search} on a background thread,
+     * beginning with the messages already in history and the log.
+     *
+     * @param maxMessages Most recent messages to keep searchable
+     */
+    public void startSearchIndex(int maxMessages) {
+        SearchIndex index = new SearchIndex(maxMessages);
+        searchIndex = index;
+        HistorySnapshot snapshot = history;
+        long start = Math.max(snapshot.oldestSequence(), snapshot.lastSequence() - maxMessages + 1);
+        Thread thread = new Thread(() -> runSearchIndexer(index, start - 1), "DirectChat-Search-" + channel);
+        thread.setDaemon(true);
+        searchIndexer = thread;
+        thread.start();
+    }
+
+    /**
+     * Follow history like a long-poll client, indexing a page at a time,
+     * until the chat manager is closed.
+     */
+    private void runSearchIndexer(SearchIndex index, long cursor) {
+        while (!closed) {
+            long last = cursor;
+            HistorySnapshot snapshot = history;
+            if (!snapshot.hasMessagesAfter(last)) {
+                try {
+                    snapshot = waitForSnapshot(s -> s.hasMessagesAfter(last), TimeUnit.MINUTES.toMillis(1));
+                } catch (InterruptedException e) {
+                    return;
                 }
             }
+            HistorySlice slice = snapshot.page(cursor + 1);
+            index.add(slice.messages(), snapshot.oldestSequence());
+            cursor = Math.max(cursor, slice.cursor());
+        }
+    }
+
+    public boolean isSearchEnabled() {
+        return searchIndex != null;
+    }
+
+    /**
+     * Find indexed messages, newest first.
+     *
+     * @param words  Words that must all occur in the message, in any case and
+     *               order; words shorter than two characters are ignored
+     * @param sender Sender name, case-insensitive, or null for any
+     * @param from   Oldest timestamp to return
+     * @param to     Newest timestamp to return
+     * @return Empty if search is not enabled
+     */
+    public List<StoredMessage> search(String words, String sender, long from, long to, int limit) {
+        SearchIndex index = searchIndex;
+        if (index == null) {
+            return List.of();
         }
+        long start = System.nanoTime();
+        List<StoredMessage> results = index.search(SearchIndex.tokenize(words), sender, from, to, limit, history);
+        searchLatency.recordSince(start);
+        return results;
+    }
+
+    /**
+     * Set the formats of lines shown in game; see {@link ChatFormat} for the
+     * placeholders. An invalid time pattern falls back to the default.
+     */
+    public void setFormats(String chatTemplate, String systemTemplate, String timePattern) {
+        try {
+            chatFormat = ChatFormat.compile(chatTemplate, timePattern);
+            systemFormat = ChatFormat.compile(systemTemplate, timePattern);
+        } catch (IllegalArgumentException e) {
+            logger.warning("Invalid format-time '" + timePattern + "', using " + ChatFormat.DEFAULT_TIME);
+            chatFormat = ChatFormat.compile(chatTemplate, ChatFormat.DEFAULT_TIME);
+            systemFormat = ChatFormat.compile(systemTemplate, ChatFormat.DEFAULT_TIME);
+        }
+    }
+
+    /**
+     * Register a listener called for every new message added to history.
+     */
+    public void addListener(Consumer<StoredMessage> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a previously registered message listener.
+     */
+    public void removeListener(Consumer<StoredMessage> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Broadcast a system message to the channel's subscribers.
+     */
+    public void broadcastSystemMessage(String message) {
+        fanout.enqueue(systemFormat.render("System", message, System.currentTimeMillis(), channel), subscribers);
+    }
 
+    /**
+     * Get messages since a specific timestamp, at most the newest
+     * {@link HistorySnapshot#PAGE_SIZE}.
+     */
+    public List<ChatMessage> getMessagesSince(long since) {
+        long start = System.nanoTime();
+        List<StoredMessage> stored = history.since(since);
+        List<ChatMessage> result = new ArrayList<>(stored.size());
+        for (StoredMessage msg : stored) {
+            result.add(msg.message());
+        }
+        fetchLatency.recordSince(start);
         return result;
     }
 
     /**
-     * Get all messages in history.
+     * Get the current history snapshot.
      */
-    public List<ChatMessage> getAllMessages() {
-        synchronized (messageHistory) {
-            return new ArrayList<>(messageHistory);
+    public HistorySnapshot getSnapshot() {
+        return history;
+    }
+
+    /**
+     * Get the history snapshot once it has messages newer than the timestamp,
+     * waiting up to the given time for them.
+     * Returns the current snapshot if the timeout expires without new messages.
+     */
+    public HistorySnapshot awaitSnapshot(long since, long timeoutMillis) throws InterruptedException {
+        return awaitSnapshot(snapshot -> snapshot.hasMessagesSince(since), timeoutMillis);
+    }
+
+    /**
+     * Get the history snapshot once it has messages after the sequence cursor,
+     * waiting up to the given time for them.
+     * Returns the current snapshot if the timeout expires without new messages.
+     */
+    public HistorySnapshot awaitSnapshotAfter(long cursor, long timeoutMillis) throws InterruptedException {
+        return awaitSnapshot(snapshot -> snapshot.hasMessagesAfter(cursor), timeoutMillis);
+    }
+
+    /**
+     * Like {@link #awaitSnapshotAfter(long, long)}, but also stops waiting
+     * when a private message arrives in the inbox after its cursor.
+     */
+    public HistorySnapshot awaitSnapshotAfter(long cursor, long timeoutMillis, Inbox inbox, long inboxCursor)
+            throws InterruptedException {
+        return awaitSnapshot(snapshot -> snapshot.hasMessagesAfter(cursor), timeoutMillis, inbox, inboxCursor);
+    }
+
+    /**
+     * Like {@link #awaitSnapshot(long, long)}, but also stops waiting when a
+     * private message arrives in the inbox after its cursor.
+     */
+    public HistorySnapshot awaitSnapshot(long since, long timeoutMillis, Inbox inbox, long inboxCursor)
+            throws InterruptedException {
+        return awaitSnapshot(snapshot -> snapshot.hasMessagesSince(since), timeoutMillis, inbox, inboxCursor);
+    }
+
+    private HistorySnapshot awaitSnapshot(Predicate<HistorySnapshot> ready, long timeoutMillis, Inbox inbox,
+            long inboxCursor) throws InterruptedException {
+        long start = System.nanoTime();
+        HistorySnapshot snapshot = history;
+        if (ready.test(snapshot) || inbox.hasMessagesAfter(inboxCursor) || timeoutMillis <= 0) {
+            fetchLatency.recordSince(start);
+            return snapshot;
         }
+
+        // Park on the inbox so a private message wakes only its owner;
+        // registered before checking history so no append is missed
+        waitingInboxes.merge(inbox, 1, Integer::sum);
+        try {
+            inbox.await(inboxCursor, () -> ready.test(history), timeoutMillis);
+        } finally {
+            waitingInboxes.computeIfPresent(inbox, (key, count) -> count > 1 ? count - 1 : null);
+        }
+        return history;
+    }
+
+    private HistorySnapshot awaitSnapshot(Predicate<HistorySnapshot> ready, long timeoutMillis)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        HistorySnapshot snapshot = history;
+        if (ready.test(snapshot) || timeoutMillis <= 0) {
+            fetchLatency.recordSince(start);
+            return snapshot;
+        }
+
+        return waitForSnapshot(ready, timeoutMillis);
+    }
+
+    /**
+     * Wait on the history lock until a snapshot is ready or the timeout expires.
+     */
+    private HistorySnapshot waitForSnapshot(Predicate<HistorySnapshot> ready, long timeoutMillis)
+            throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        historyLock.lock();
+        try {
+            HistorySnapshot snapshot = history;
+            while (!ready.test(snapshot) && remaining > 0) {
+                remaining = messageAdded.awaitNanos(remaining);
+                snapshot = history;
+            }
+            return snapshot;
+        } finally {
+            historyLock.unlock();
+        }
+    }
+
+    /**
+     * Get the newest messages in history, at most {@link HistorySnapshot#PAGE_SIZE}.
+     */
+    public List<ChatMessage> getAllMessages() {
+        return getMessagesSince(Long.MIN_VALUE);
     }
 
     /**
      * Clear message history.
      */
     public void clearHistory() {
-        synchronized (messageHistory) {
-            messageHistory.clear();
+        historyLock.lock();
+        try {
+            // Sequence numbers keep counting, so cursors from before stay ordered;
+            // cleared messages stay in the log but are no longer served from it
+            HistorySnapshot current = history;
+            logFloor = current.lastSequence() + 1;
+            history = publish(current.version() + 1, current.lastSequence() + 1, current.lastSequence(),
+                    Long.MIN_VALUE);
+        } finally {
+            historyLock.unlock();
+        }
+    }
+
+    /**
+     * Stop the search indexer, then flush the persistent log to disk and stop
+     * its sync thread, if there is one.
+     */
+    public void close() {
+        closed = true;
+        Thread indexer = searchIndexer;
+        if (indexer != null) {
+            indexer.interrupt();
+            try {
+                // It may be reading the log, so it must stop before the log is closed
+                indexer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        ChatLog current = log;
+        if (current != null) {
+            logLock.lock();
+            try {
+                drainLogQueue();
+            } finally {
+                logLock.unlock();
+            }
+            current.close();
         }
     }
 }
@@ -0,0 +1,47 @@
+package com.directchat.chat;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A private message in one player's {@link Inbox}, encoded once when it is
+ * delivered. The sender and the recipient each get their own copy.
+ *
+ * @param sequence  Position in the owner's inbox; increases by one per message
+ * @param message   The message, with the sender's name
+ * @param recipient Name of the player it was sent to
+ * @param json      UTF-8 bytes of {"seq":...,"sender":...,"to":...,"message":...,"timestamp":...}
+ */
+public record DirectMessage(long sequence, ChatMessage message, String recipient, byte[] json) {
+
+    /**
+     * Encode a message at a position in an inbox.
+     */
+    static DirectMessage of(long sequence, ChatMessage message, String recipient) {
+        StringWriter buffer = new StringWriter(96 + message.message().length());
+        try (JsonWriter writer = new JsonWriter(buffer)) {
+            // Same escaping as StoredMessage
+            writer.setHtmlSafe(true);
+            writer.setSerializeNulls(false);
+            writer.beginObject();
+            writer.name("seq").value(sequence);
+            writer.name("sender").value(message.senderName());
+            writer.name("to").value(recipient);
+            writer.name("message").value(message.message());
+            writer.name("timestamp").value(message.timestamp());
+            writer.endObject();
+        } catch (IOException e) {
+            // StringWriter doesn't throw
+            throw new UncheckedIOException(e);
+        }
+        return new DirectMessage(sequence, message, recipient, buffer.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public long timestamp() {
+        return message.timestamp();
+    }
+}
@@ -0,0 +1,132 @@
+package com.directchat.chat;
+
+import com.directchat.metrics.Counter;
+import com.directchat.metrics.MetricsRegistry;
+import com.directchat.player.ChatPlayer;
+import com.directchat.protocol.ChatFormat;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Private messages between players, kept in one bounded {@link Inbox} per
+ * online player. Delivering a message touches only the sender's and the
+ * recipient's inboxes: it wakes the recipient's parked fetch, is pushed to
+ * their WebSocket and queued for them in game, with no command dispatch on
+ * the main thread and no scan over other players.
+ */
+public class DirectMessages {
+
+    private final int inboxSize;
+    private final Map<UUID, Inbox> inboxes = new ConcurrentHashMap<>();
+    private final TickFanout fanout;
+    private final Logger logger;
+    // Notified with the owner of every inbox a message is added to
+    private final List<BiConsumer<UUID, DirectMessage>> listeners = new CopyOnWriteArrayList<>();
+    private volatile ChatFormat format = ChatFormat.compile(ChatFormat.DEFAULT_DIRECT, ChatFormat.DEFAULT_TIME);
+
+    private final Counter messagesSent;
+
+    /**
+     * @param inboxSize Messages kept per player, or 0 to turn private
+     *                  messages off
+     */
+    DirectMessages(int inboxSize, TickFanout fanout, Logger logger, MetricsRegistry metrics) {
+        this.inboxSize = Math.max(0, inboxSize);
+        this.fanout = fanout;
+        this.logger = logger;
+        this.messagesSent = metrics.counter("directchat_direct_messages_total", "Private messages delivered");
+        metrics.gauge("directchat_direct_inboxes", "Players with a private message inbox", inboxes::size);
+    }
+
+    /**
+     * Whether /msg and friends are handled here instead of as commands.
+     */
+    public boolean isEnabled() {
+        return inboxSize > 0;
+    }
+
+    /**
+     * Get a player's inbox, creating an empty one on first use.
+     */
+    public Inbox getInbox(UUID playerUuid) {
+        return inboxes.computeIfAbsent(playerUuid, uuid -> new Inbox(inboxSize));
+    }
+
+    /**
+     * Name of the last player who wrote to a player, or null.
+     */
+    public String getReplyTarget(UUID playerUuid) {
+        Inbox inbox = inboxes.get(playerUuid);
+        return inbox != null ? inbox.getReplyTarget() : null;
+    }
+
+    /**
+     * Deliver a message to the recipient's inbox, with a copy in the
+     * sender's so their other clients see it too.
+     *
+     * @return The recipient's copy
+     */
+    public DirectMessage send(ChatPlayer sender, ChatPlayer recipient, String message) {
+        ChatMessage chat = new ChatMessage(sender.getUniqueId().toString(), sender.getName(), message,
+                System.currentTimeMillis());
+        boolean self = sender.getUniqueId().equals(recipient.getUniqueId());
+        // Only the recipient's copy changes who /r answers
+        DirectMessage received = getInbox(recipient.getUniqueId()).add(chat, recipient.getName(), !self);
+        notify(recipient.getUniqueId(), received);
+        if (!self) {
+            notify(sender.getUniqueId(), getInbox(sender.getUniqueId()).add(chat, recipient.getName(), false));
+        }
+
+        // Shown to the recipient in game on the next tick if they are authenticated
+        fanout.enqueue(format.render(sender.getName(), message, chat.timestamp(), recipient.getName()),
+                Set.of(recipient.getUniqueId()));
+        messagesSent.increment();
+        return received;
+    }
+
+    private void notify(UUID owner, DirectMessage message) {
+        for (BiConsumer<UUID, DirectMessage> listener : listeners) {
+            listener.accept(owner, message);
+        }
+    }
+
+    /**
+     * Set the format of private messages shown in game; {@code {channel}}
+     * is the recipient's name. An invalid time pattern falls back to the
+     * default.
+     */
+    public void setFormat(String template, String timePattern) {
+        try {
+            format = ChatFormat.compile(template, timePattern);
+        } catch (IllegalArgumentException e) {
+            logger.warning("Invalid format-time '" + timePattern + "', using " + ChatFormat.DEFAULT_TIME);
+            format = ChatFormat.compile(template, ChatFormat.DEFAULT_TIME);
+        }
+    }
+
+    /**
+     * Drop a player's inbox, e.g. when they leave the server.
+     */
+    public void removePlayer(UUID playerUuid) {
+        inboxes.remove(playerUuid);
+    }
+
+    /**
+     * Register a listener called with the owner of every inbox a message is
+     * added to.
+     */
+    public void addListener(BiConsumer<UUID, DirectMessage> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(BiConsumer<UUID, DirectMessage> listener) {
+        listeners.remove(listener);
+    }
+}
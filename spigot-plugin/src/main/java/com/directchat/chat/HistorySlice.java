@@ -0,0 +1,14 @@
+package com.directchat.chat;
+
+import java.util.List;
+
+/**
+ * Messages read from history after a sequence cursor.
+ *
+ * @param messages Messages oldest first
+ * @param cursor   Sequence number to read after next time
+ * @param gap      Whether messages after the requested cursor were already
+ *                 dropped from history (or the cursor is from before a restart)
+ */
+public record HistorySlice(List<StoredMessage> messages, long cursor, boolean gap) {
+}
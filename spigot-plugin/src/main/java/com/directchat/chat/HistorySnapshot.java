@@ -0,0 +1,232 @@
+package com.directchat.chat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * View of chat history at one version: the messages with sequence numbers
+ * firstSequence..lastSequence in the history store.
+ * ChatManager publishes a new snapshot whenever history changes, so readers
+ * get a consistent range with a single volatile read instead of taking the
+ * history lock. Messages evicted from the store after the snapshot was
+ * taken are skipped. With a {@link ChatLog}, cursors older than the store
+ * are served from the log.
+ */
+public final class HistorySnapshot {
+
+    /**
+     * Most messages returned by one read; clients further behind get the
+     * rest by fetching again from the returned cursor.
+     */
+    public static final int PAGE_SIZE = 1000;
+
+    private final long version;
+    private final long firstSequence;
+    private final long lastSequence;
+    private final long newestTimestamp;
+    private final long oldestSequence;
+    private final MessageStore store;
+    private final ChatLog log;
+
+    /**
+     * @param version         Incremented on every change to history
+     * @param firstSequence   Sequence number of the oldest message
+     * @param lastSequence    Sequence number of the newest message
+     *                        (firstSequence - 1 if history is empty)
+     * @param newestTimestamp Timestamp of the newest message
+     * @param oldestSequence  Oldest sequence number that may be read from the
+     *                        log (firstSequence without a log)
+     * @param log             Persistent log of history, or null
+     */
+    HistorySnapshot(long version, long firstSequence, long lastSequence, long newestTimestamp, long oldestSequence,
+            MessageStore store, ChatLog log) {
+        this.version = version;
+        this.firstSequence = firstSequence;
+        this.lastSequence = lastSequence;
+        this.newestTimestamp = newestTimestamp;
+        this.oldestSequence = oldestSequence;
+        this.store = store;
+        this.log = log;
+    }
+
+    /**
+     * Empty history kept in a store.
+     */
+    static HistorySnapshot empty(MessageStore store) {
+        return new HistorySnapshot(0, 1, 0, Long.MIN_VALUE, 1, store, null);
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public long firstSequence() {
+        return firstSequence;
+    }
+
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Oldest sequence number a cursor can resume from, including messages
+     * only kept in the log.
+     */
+    public long oldestSequence() {
+        if (log == null) {
+            return firstSequence;
+        }
+        // Retention may have deleted segments since the snapshot was taken
+        return Math.min(firstSequence, Math.max(oldestSequence, log.firstSequence()));
+    }
+
+    /**
+     * Number of messages in history.
+     */
+    public int size() {
+        return (int) (lastSequence - firstSequence + 1);
+    }
+
+    /**
+     * Timestamp of the newest message, or Long.MIN_VALUE if history is empty.
+     */
+    public long newestTimestamp() {
+        return size() == 0 ? Long.MIN_VALUE : newestTimestamp;
+    }
+
+    /**
+     * Timestamp of the oldest message, or Long.MIN_VALUE if history is empty
+     * or the message was already evicted.
+     */
+    public long oldestTimestamp() {
+        StoredMessage oldest = size() == 0 ? null : store.get(firstSequence);
+        return oldest == null ? Long.MIN_VALUE : oldest.timestamp();
+    }
+
+    /**
+     * Whether there are messages newer than the timestamp.
+     */
+    public boolean hasMessagesSince(long since) {
+        return newestTimestamp() > since;
+    }
+
+    /**
+     * Whether a fetch after the cursor would return anything: there are
+     * newer messages, or the cursor doesn't belong to this history.
+     */
+    public boolean hasMessagesAfter(long cursor) {
+        return cursor != lastSequence;
+    }
+
+    /**
+     * Messages newer than the timestamp, oldest first, at most the newest
+     * {@link #PAGE_SIZE}.
+     * Timestamps have millisecond resolution, so messages sharing the
+     * timestamp of the client's last message are missed; prefer {@link #after}.
+     */
+    public List<StoredMessage> since(long since) {
+        if (!hasMessagesSince(since)) {
+            return List.of();
+        }
+        // New messages are at the end; walk back to the first one that is newer
+        long from = lastSequence + 1;
+        long oldest = Math.max(firstSequence, lastSequence - PAGE_SIZE + 1);
+        while (from > oldest) {
+            StoredMessage message = store.get(from - 1);
+            if (message == null || message.timestamp() <= since) {
+                break;
+            }
+            from--;
+        }
+        return read(from, lastSequence);
+    }
+
+    /**
+     * Messages after a sequence cursor, oldest first, at most
+     * {@link #PAGE_SIZE}. The slice's cursor is where the next fetch
+     * continues from. A cursor of 0 means the client has none yet and gets
+     * the newest page without a gap; so do clients whose cursor fell off
+     * history, with a gap. Cursors older than the store but still in the log
+     * are served from the log.
+     */
+    public HistorySlice after(long cursor) {
+        long from = cursor + 1;
+        boolean gap = false;
+        if (from < firstSequence && cursor != 0 && from >= oldestSequence()) {
+            List<StoredMessage> messages = log.read(from, lastSequence, PAGE_SIZE);
+            if (!messages.isEmpty()) {
+                StoredMessage newest = messages.get(messages.size() - 1);
+                return new HistorySlice(messages, newest.sequence(), messages.get(0).sequence() != from);
+            }
+            // Deleted by retention in the meantime
+            gap = true;
+        } else if (cursor > lastSequence || (from < firstSequence && cursor != 0)) {
+            // Fell off the end of history, or the cursor is from another history
+            gap = true;
+        }
+
+        long to = lastSequence;
+        if (cursor == 0 || gap) {
+            from = Math.max(firstSequence, lastSequence - PAGE_SIZE + 1);
+        } else {
+            to = Math.min(to, from + PAGE_SIZE - 1);
+        }
+        List<StoredMessage> messages = read(from, to);
+        // The writer lapped us and evicted some of the messages
+        gap |= messages.size() < to - from + 1;
+        return new HistorySlice(messages, to, gap);
+    }
+
+    /**
+     * Up to {@link #PAGE_SIZE} messages from a sequence number on, oldest
+     * first, reading from the log where the store no longer has them. The
+     * slice's cursor is the last sequence number covered, so readers move on
+     * past messages retention deleted.
+     */
+    HistorySlice page(long from) {
+        from = Math.max(from, oldestSequence());
+        long to = Math.min(lastSequence, from + PAGE_SIZE - 1);
+        if (from > to) {
+            return new HistorySlice(List.of(), lastSequence, false);
+        }
+        List<StoredMessage> messages = from < firstSequence ? log.read(from, to, PAGE_SIZE) : read(from, to);
+        return new HistorySlice(messages, to, messages.size() < to - from + 1);
+    }
+
+    /**
+     * A single message, from the store or the log, or null if it is no
+     * longer available.
+     */
+    StoredMessage get(long sequence) {
+        if (sequence >= firstSequence && sequence <= lastSequence) {
+            return store.get(sequence);
+        }
+        if (sequence < firstSequence && sequence >= oldestSequence()) {
+            List<StoredMessage> messages = log.read(sequence, sequence, 1);
+            return messages.isEmpty() ? null : messages.get(0);
+        }
+        return null;
+    }
+
+    /**
+     * Read messages with sequence numbers from..to, skipping ones evicted
+     * since the snapshot was taken.
+     */
+    private List<StoredMessage> read(long from, long to) {
+        int count = (int) Math.max(0, to - from + 1);
+        if (count == 0) {
+            return List.of();
+        }
+
+        StoredMessage[] messages = new StoredMessage[count];
+        int size = 0;
+        for (long sequence = from; sequence <= to; sequence++) {
+            StoredMessage message = store.get(sequence);
+            if (message != null) {
+                messages[size++] = message;
+            }
+        }
+        return Collections.unmodifiableList(Arrays.asList(messages).subList(0, size));
+    }
+}
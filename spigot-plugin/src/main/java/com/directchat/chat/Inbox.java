@@ -0,0 +1,133 @@
+package com.directchat.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounded queue of the private messages one player sent and received,
+ * indexed by sequence number like channel history: once full, each new
+ * message replaces the oldest. Fetches read it by cursor and a long poll
+ * parked on the inbox is woken by a new private message without waking
+ * anybody else's.
+ */
+public final class Inbox {
+
+    private final DirectMessage[] ring;
+    // A lock instead of synchronized so parked long polls don't pin virtual threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private volatile long lastSequence;
+    // Name of the last player who wrote to the owner, for /r
+    private volatile String replyTarget;
+
+    Inbox(int capacity) {
+        this.ring = new DirectMessage[Math.max(1, capacity)];
+    }
+
+    /**
+     * Sequence number of the newest message, 0 if there is none.
+     */
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Whether a client at this cursor has messages to fetch. A cursor past
+     * the newest message is from an earlier session and reads from the start.
+     */
+    public boolean hasMessagesAfter(long cursor) {
+        long last = lastSequence;
+        return last > (cursor > last ? 0 : cursor);
+    }
+
+    /**
+     * Messages read from an inbox.
+     *
+     * @param cursor Sequence number of the newest message in the inbox when
+     *               it was read, for the next read
+     */
+    public record Slice(List<DirectMessage> messages, long cursor) {
+    }
+
+    /**
+     * Messages after a cursor, oldest first; messages already replaced are
+     * skipped.
+     */
+    public Slice after(long cursor) {
+        lock.lock();
+        try {
+            long last = lastSequence;
+            long from = Math.max(cursor > last ? 0 : cursor, last - ring.length) + 1;
+            List<DirectMessage> messages = new ArrayList<>((int) Math.max(0, last - from + 1));
+            for (long sequence = from; sequence <= last; sequence++) {
+                messages.add(ring[index(sequence)]);
+            }
+            return new Slice(messages, last);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    String getReplyTarget() {
+        return replyTarget;
+    }
+
+    /**
+     * Add a message and wake the owner's parked long poll.
+     *
+     * @param received Whether the owner is the recipient, so /r answers the
+     *                 sender; false for the sender's own copy
+     */
+    DirectMessage add(ChatMessage message, String recipient, boolean received) {
+        lock.lock();
+        try {
+            DirectMessage direct = DirectMessage.of(lastSequence + 1, message, recipient);
+            ring[index(direct.sequence())] = direct;
+            lastSequence = direct.sequence();
+            if (received) {
+                replyTarget = message.senderName();
+            }
+            changed.signalAll();
+            return direct;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wake the owner's parked long poll to check its channel again.
+     */
+    void wake() {
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until there are messages after the cursor, the other condition
+     * holds or the timeout expires. Whoever makes the condition true must
+     * call {@link #wake}.
+     */
+    void await(long cursor, BooleanSupplier ready, long timeoutMillis) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        lock.lock();
+        try {
+            while (!hasMessagesAfter(cursor) && !ready.getAsBoolean() && remaining > 0) {
+                remaining = changed.awaitNanos(remaining);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % ring.length);
+    }
+}
@@ -0,0 +1,256 @@
+package com.directchat.chat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * One file of the {@link ChatLog}: records appended back to back into a
+ * memory-mapped file of fixed size, zeros after the last one.
+ *
+ * <p>Record: [int payload length][int CRC32 of payload][payload], where the
+ * payload is the message in {@link MessageCodec} form.
+ *
+ * <p>Appended to by one thread at a time; readers never lock and only look
+ * at records below the published size. A sparse index of every record that
+ * starts a new {@link #INDEX_INTERVAL} bytes lets reads seek close to a
+ * sequence number instead of scanning the whole segment.
+ */
+final class LogSegment {
+
+    // Bytes between sparse index entries
+    static final int INDEX_INTERVAL = 4096;
+
+    private static final int HEADER_SIZE = 8;
+
+    private final Path path;
+    private final long baseSequence;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    // Sequence numbers and offsets of indexed records, written before indexCount is raised
+    private final long[] indexSequences;
+    private final int[] indexOffsets;
+    private volatile int indexCount;
+
+    // End of the last record, raised after the record and its index entry are written
+    private volatile int size;
+    private volatile long lastSequence;
+    private volatile long lastTimestamp = Long.MIN_VALUE;
+    // End of the bytes flushed to disk, only touched by the thread syncing
+    private int syncedSize;
+
+    private LogSegment(Path path, long baseSequence, MappedByteBuffer buffer) {
+        this.path = path;
+        this.baseSequence = baseSequence;
+        this.buffer = buffer;
+        this.capacity = buffer.capacity();
+        this.indexSequences = new long[capacity / INDEX_INTERVAL + 1];
+        this.indexOffsets = new int[indexSequences.length];
+        this.lastSequence = baseSequence - 1;
+    }
+
+    /**
+     * Create a new, empty segment file whose first record will have the
+     * given sequence number.
+     */
+    static LogSegment create(Path path, long baseSequence, int capacity) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Mapping past the end grows the file; the mapping outlives the channel
+            return new LogSegment(path, baseSequence, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+        }
+    }
+
+    /**
+     * Map an existing segment file and find its last intact record.
+     *
+     * @param writable Whether more records will be appended
+     */
+    static LogSegment open(Path path, long baseSequence, boolean writable) throws IOException {
+        StandardOpenOption[] options = writable
+                ? new StandardOpenOption[] {StandardOpenOption.READ, StandardOpenOption.WRITE}
+                : new StandardOpenOption[] {StandardOpenOption.READ};
+        try (FileChannel channel = FileChannel.open(path, options)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Log segment too large: " + path);
+            }
+            MappedByteBuffer buffer = channel.map(writable ? FileChannel.MapMode.READ_WRITE
+                    : FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new LogSegment(path, baseSequence, buffer);
+        }
+    }
+
+    /**
+     * Scan the records written before the last shutdown or crash.
+     * A record cut off by a crash and anything after it is zeroed in
+     * writable segments so the next record can take its place.
+     *
+     * @return Whether the segment ended cleanly
+     */
+    boolean recover() {
+        CRC32 crc = new CRC32();
+        int offset = 0;
+        boolean clean = true;
+        while (offset + HEADER_SIZE <= capacity) {
+            int length = buffer.getInt(offset);
+            if (length == 0) {
+                break;
+            }
+            if (length < MessageCodec.MIN_LENGTH || length > capacity - offset - HEADER_SIZE) {
+                clean = false;
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.slice(offset + HEADER_SIZE, length));
+            long sequence = MessageCodec.sequence(buffer, offset + HEADER_SIZE);
+            if ((int) crc.getValue() != buffer.getInt(offset + 4) || sequence <= lastSequence) {
+                clean = false;
+                break;
+            }
+            index(offset, sequence);
+            lastSequence = sequence;
+            lastTimestamp = MessageCodec.timestamp(buffer, offset + HEADER_SIZE);
+            offset += HEADER_SIZE + length;
+        }
+
+        if (!clean && !buffer.isReadOnly()) {
+            buffer.put(offset, new byte[capacity - offset]);
+            buffer.force(offset, capacity - offset);
+        }
+        size = offset;
+        syncedSize = offset;
+        return clean;
+    }
+
+    /**
+     * Encode a message as a record.
+     */
+    static byte[] encode(StoredMessage message) {
+        byte[] payload = MessageCodec.encode(message);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return ByteBuffer.allocate(HEADER_SIZE + payload.length)
+                .putInt(payload.length)
+                .putInt((int) crc.getValue())
+                .put(payload)
+                .array();
+    }
+
+    /**
+     * Append an encoded record.
+     *
+     * @return False if the segment has no room left for it
+     */
+    boolean append(StoredMessage message, byte[] record) {
+        int offset = size;
+        if (record.length > capacity - offset) {
+            return false;
+        }
+        buffer.put(offset, record);
+        index(offset, message.sequence());
+        lastSequence = message.sequence();
+        lastTimestamp = message.timestamp();
+        size = offset + record.length;
+        return true;
+    }
+
+    private void index(int offset, long sequence) {
+        int count = indexCount;
+        if (count == 0 || offset / INDEX_INTERVAL > indexOffsets[count - 1] / INDEX_INTERVAL) {
+            indexSequences[count] = sequence;
+            indexOffsets[count] = offset;
+            indexCount = count + 1;
+        }
+    }
+
+    /**
+     * Add the messages with sequence numbers from..to to a list, oldest first,
+     * until it holds max messages.
+     */
+    void read(long from, long to, int max, List<StoredMessage> out) {
+        int end = size;
+        int offset = indexOffsets[floorIndex(from)];
+        while (offset < end && out.size() < max) {
+            int length = buffer.getInt(offset);
+            long sequence = MessageCodec.sequence(buffer, offset + HEADER_SIZE);
+            if (sequence > to) {
+                break;
+            }
+            StoredMessage message = sequence >= from
+                    ? MessageCodec.decode(buffer, offset + HEADER_SIZE, offset + HEADER_SIZE + length)
+                    : null;
+            if (message != null) {
+                out.add(message);
+            }
+            offset += HEADER_SIZE + length;
+        }
+    }
+
+    /**
+     * Position in the sparse index of the last record at or before a sequence
+     * number, or 0 if there is none.
+     */
+    private int floorIndex(long sequence) {
+        int low = 0;
+        int high = indexCount - 1;
+        int floor = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (indexSequences[mid] <= sequence) {
+                floor = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return floor;
+    }
+
+    /**
+     * Flush records written since the last call to disk.
+     *
+     * @throws java.io.UncheckedIOException If writing fails
+     */
+    void sync() {
+        int end = size;
+        if (end > syncedSize) {
+            buffer.force(syncedSize, end - syncedSize);
+            syncedSize = end;
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long baseSequence() {
+        return baseSequence;
+    }
+
+    /**
+     * Sequence number of the last record, or baseSequence - 1 if empty.
+     */
+    long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Timestamp of the last record, or Long.MIN_VALUE if empty.
+     */
+    long lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * Size of the file on disk.
+     */
+    int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,69 @@
+package com.directchat.chat;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary form of a stored message, shared by the chat log and the
+ * off-heap history store: [long sequence][long timestamp] followed by sender
+ * UUID, sender name and message, each as [int length][UTF-8 bytes].
+ * Reads and writes use absolute positions, so buffers can be shared.
+ */
+final class MessageCodec {
+
+    // Sequence, timestamp and three string lengths
+    static final int MIN_LENGTH = 8 + 8 + 3 * 4;
+
+    private MessageCodec() {
+    }
+
+    /**
+     * Encode a message with its sequence number.
+     */
+    static byte[] encode(StoredMessage stored) {
+        ChatMessage message = stored.message();
+        byte[] uuid = message.senderUuid().getBytes(StandardCharsets.UTF_8);
+        byte[] name = message.senderName().getBytes(StandardCharsets.UTF_8);
+        byte[] text = message.message().getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer out = ByteBuffer.allocate(MIN_LENGTH + uuid.length + name.length + text.length);
+        out.putLong(stored.sequence()).putLong(message.timestamp())
+                .putInt(uuid.length).put(uuid)
+                .putInt(name.length).put(name)
+                .putInt(text.length).put(text);
+        return out.array();
+    }
+
+    static long sequence(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset);
+    }
+
+    static long timestamp(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + 8);
+    }
+
+    /**
+     * Decode a message, or return null if its lengths run past limit (the
+     * bytes were overwritten while being read).
+     */
+    static StoredMessage decode(ByteBuffer buffer, int offset, int limit) {
+        long sequence = buffer.getLong(offset);
+        long timestamp = buffer.getLong(offset + 8);
+        int position = offset + 16;
+        String[] fields = new String[3];
+        for (int i = 0; i < fields.length; i++) {
+            if (position > limit - 4) {
+                return null;
+            }
+            int length = buffer.getInt(position);
+            if (length < 0 || length > limit - position - 4) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(position + 4, bytes);
+            fields[i] = new String(bytes, StandardCharsets.UTF_8);
+            position += 4 + length;
+        }
+        return StoredMessage.of(new ChatMessage(fields[0], fields[1], fields[2], timestamp)).withSequence(sequence);
+    }
+}
@@ -0,0 +1,48 @@
+package com.directchat.chat;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-capacity ring of messages on the heap, indexed by sequence number:
+ * message n is kept in slot n % capacity until message n + capacity
+ * replaces it. Readers notice slots overwritten under them by the sequence
+ * number.
+ */
+final class MessageRing implements MessageStore {
+
+    private final AtomicReferenceArray<StoredMessage> slots;
+
+    MessageRing(int capacity) {
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    @Override
+    public int capacity() {
+        return slots.length();
+    }
+
+    @Override
+    public void put(StoredMessage message) {
+        slots.setRelease(index(message.sequence()), message);
+    }
+
+    @Override
+    public StoredMessage get(long sequence) {
+        StoredMessage message = slots.getAcquire(index(sequence));
+        return message != null && message.sequence() == sequence ? message : null;
+    }
+
+    @Override
+    public long firstSequence(long lastSequence) {
+        return lastSequence - slots.length() + 1;
+    }
+
+    @Override
+    public long offHeapBytes() {
+        return 0;
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence % slots.length());
+    }
+}
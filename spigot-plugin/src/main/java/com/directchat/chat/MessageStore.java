@@ -0,0 +1,36 @@
+package com.directchat.chat;
+
+/**
+ * Where history keeps the newest messages, indexed by sequence number.
+ * Written by one thread at a time (under ChatManager's history lock); readers
+ * never lock and get null for messages evicted under them.
+ */
+interface MessageStore {
+
+    /**
+     * Maximum number of messages kept.
+     */
+    int capacity();
+
+    /**
+     * Store a message, evicting the oldest ones if the store is full.
+     * Readers see it once the snapshot including it is published.
+     */
+    void put(StoredMessage message);
+
+    /**
+     * Get a message, or null if it was evicted (or never stored).
+     */
+    StoredMessage get(long sequence);
+
+    /**
+     * Oldest sequence number that may still be stored, given the newest
+     * message put so far.
+     */
+    long firstSequence(long lastSequence);
+
+    /**
+     * Memory held outside the Java heap, in bytes.
+     */
+    long offHeapBytes();
+}
@@ -0,0 +1,125 @@
+package com.directchat.chat;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * History store that packs messages into direct-memory slabs in
+ * {@link MessageCodec} form, so millions of messages cost the garbage
+ * collector a few objects instead of several per message. Messages are
+ * decoded into {@link StoredMessage}s only when read.
+ *
+ * <p>Slabs are filled in turn and reused round-robin; moving on to a used
+ * slab evicts every message in it. An index of one long per message maps
+ * sequence n to slot n % capacity holding the slab and offset of its record.
+ */
+final class OffHeapMessageStore implements MessageStore {
+
+    // Reusing a slab evicts at most 1/MIN_SLABS of the budget at once
+    private static final int MIN_SLABS = 8;
+    private static final int MAX_SLAB_SIZE = 256 * 1024 * 1024;
+
+    // Allocated on first use
+    private final ByteBuffer[] slabs;
+    private final int slabSize;
+    // Slot -> slab << 32 | offset; a slot never written points at slab 0 offset 0,
+    // which fails the sequence number check
+    private final AtomicLongArray index;
+    // Messages before this were in a reused slab; raised before the slab is overwritten
+    private volatile long evictedBefore;
+
+    // Written only by the writer
+    private final long[] slabLastSequence;
+    private int slab;
+    private int position;
+
+    /**
+     * @param capacity    Maximum number of messages
+     * @param memoryBytes Off-heap memory budget for the slabs
+     */
+    OffHeapMessageStore(int capacity, long memoryBytes) {
+        int slabCount = (int) Math.max(MIN_SLABS, (memoryBytes + MAX_SLAB_SIZE - 1) / MAX_SLAB_SIZE);
+        this.slabs = new ByteBuffer[slabCount];
+        this.slabSize = (int) Math.max(1024, memoryBytes / slabCount);
+        this.index = new AtomicLongArray(capacity);
+        this.slabLastSequence = new long[slabCount];
+    }
+
+    @Override
+    public int capacity() {
+        return index.length();
+    }
+
+    @Override
+    public void put(StoredMessage message) {
+        byte[] record = MessageCodec.encode(message);
+        if (record.length > slabSize) {
+            // Reads as evicted
+            return;
+        }
+        if (slabs[slab] == null) {
+            slabs[slab] = ByteBuffer.allocateDirect(slabSize);
+        }
+        if (position + record.length > slabSize) {
+            nextSlab();
+        }
+
+        slabs[slab].put(position, record);
+        slabLastSequence[slab] = message.sequence();
+        index.setRelease(slot(message.sequence()), (long) slab << 32 | position);
+        position += record.length;
+    }
+
+    /**
+     * Move on to the next slab, evicting the messages in it.
+     */
+    private void nextSlab() {
+        slab = (slab + 1) % slabs.length;
+        position = 0;
+        if (slabs[slab] == null) {
+            slabs[slab] = ByteBuffer.allocateDirect(slabSize);
+        } else {
+            evictedBefore = Math.max(evictedBefore, slabLastSequence[slab] + 1);
+            // Readers must see the eviction before any of the new bytes
+            VarHandle.storeStoreFence();
+        }
+    }
+
+    @Override
+    public StoredMessage get(long sequence) {
+        if (sequence < evictedBefore) {
+            return null;
+        }
+        long entry = index.getAcquire(slot(sequence));
+        ByteBuffer buffer = slabs[(int) (entry >>> 32)];
+        int offset = (int) entry;
+        if (buffer == null || MessageCodec.sequence(buffer, offset) != sequence) {
+            return null;
+        }
+        StoredMessage message = MessageCodec.decode(buffer, offset, slabSize);
+        // The slab may have been reused while it was being read
+        VarHandle.loadLoadFence();
+        return message != null && sequence >= evictedBefore ? message : null;
+    }
+
+    @Override
+    public long firstSequence(long lastSequence) {
+        return Math.max(lastSequence - index.length() + 1, evictedBefore);
+    }
+
+    @Override
+    public long offHeapBytes() {
+        long total = 0;
+        for (ByteBuffer buffer : slabs) {
+            if (buffer != null) {
+                total += buffer.capacity();
+            }
+        }
+        return total;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % index.length());
+    }
+}
@@ -0,0 +1,351 @@
+package com.directchat.chat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index of chat history for moderator searches. Maps each word and
+ * each sender to the sequence numbers of the messages containing it, and
+ * keeps the time span of every block of messages, so a query intersects a
+ * few sorted lists instead of scanning history.
+ *
+ * <p>Filled by a background thread following history like a long-poll
+ * client, so appending messages never waits for indexing. Covers at most
+ * the newest maxMessages messages; older entries are pruned in bulk.
+ */
+final class SearchIndex {
+
+    // Messages per time block
+    private static final int BLOCK = 256;
+    private static final int MAX_TERM_LENGTH = 32;
+
+    private final int maxMessages;
+    private final Map<String, Postings> terms = new HashMap<>();
+    private final Map<String, Postings> senders = new HashMap<>();
+    // Readers search while the indexer adds a page at a time
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Oldest sequence number still indexed, and the newest indexed so far
+    private long floor = 1;
+    private volatile long indexedUpTo;
+    // Oldest and newest timestamp per block of sequence numbers from blockBase
+    private long blockBase = -1;
+    private long[] blockMin = new long[64];
+    private long[] blockMax = new long[64];
+    private int blockCount;
+
+    SearchIndex(int maxMessages) {
+        this.maxMessages = maxMessages;
+    }
+
+    /**
+     * Sequence number of the newest indexed message.
+     */
+    long indexedUpTo() {
+        return indexedUpTo;
+    }
+
+    /**
+     * Number of distinct words indexed.
+     */
+    int termCount() {
+        lock.readLock().lock();
+        try {
+            return terms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Index messages newer than everything indexed so far, oldest first.
+     *
+     * @param oldestSequence Oldest message history can still return; entries
+     *                       before it are pruned once enough have piled up
+     */
+    void add(List<StoredMessage> messages, long oldestSequence) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (StoredMessage stored : messages) {
+                long sequence = stored.sequence();
+                if (sequence <= indexedUpTo) {
+                    continue;
+                }
+                ChatMessage message = stored.message();
+                for (String term : tokenize(message.message())) {
+                    terms.computeIfAbsent(term, t -> new Postings(sequence)).add(sequence);
+                }
+                senders.computeIfAbsent(message.senderName().toLowerCase(Locale.ROOT), s -> new Postings(sequence))
+                        .add(sequence);
+                addTime(sequence, message.timestamp());
+                indexedUpTo = sequence;
+            }
+
+            // Prune in bulk, so each entry is moved a bounded number of times
+            long newFloor = Math.max(oldestSequence, indexedUpTo - maxMessages + 1);
+            if (newFloor - floor >= Math.max(BLOCK, maxMessages / 8)) {
+                prune(newFloor);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find messages, newest first.
+     *
+     * @param words  Words that must all occur in the message (may be empty)
+     * @param sender Sender name, case-insensitive, or null for any
+     * @param from   Oldest timestamp to return
+     * @param to     Newest timestamp to return
+     */
+    List<StoredMessage> search(List<String> words, String sender, long from, long to, int limit,
+            HistorySnapshot snapshot) {
+        List<StoredMessage> results = new ArrayList<>(Math.min(limit, 64));
+        lock.readLock().lock();
+        try {
+            List<Postings> lists = new ArrayList<>(words.size() + 1);
+            for (String word : words) {
+                Postings postings = terms.get(word);
+                if (postings == null) {
+                    return results;
+                }
+                lists.add(postings);
+            }
+            if (sender != null) {
+                Postings postings = senders.get(sender.toLowerCase(Locale.ROOT));
+                if (postings == null) {
+                    return results;
+                }
+                lists.add(postings);
+            }
+
+            long low = Math.max(Math.max(floor, snapshot.oldestSequence()), firstSequenceAtOrAfter(from));
+            long high = Math.min(Math.min(indexedUpTo, snapshot.lastSequence()), lastSequenceAtOrBefore(to));
+            if (low > high) {
+                return results;
+            }
+
+            if (lists.isEmpty()) {
+                for (long sequence = high; sequence >= low && results.size() < limit; sequence--) {
+                    addIfMatches(results, snapshot.get(sequence), from, to);
+                }
+                return results;
+            }
+
+            // Walk the shortest list back from the newest match, looking up the others
+            lists.sort(Comparator.comparingInt(Postings::size));
+            Postings driver = lists.get(0);
+            for (int i = driver.lastIndexAtMost(high); i >= 0 && results.size() < limit; i--) {
+                long sequence = driver.get(i);
+                if (sequence < low) {
+                    break;
+                }
+                if (containsAll(lists, sequence)) {
+                    addIfMatches(results, snapshot.get(sequence), from, to);
+                }
+            }
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static boolean containsAll(List<Postings> lists, long sequence) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (!lists.get(i).contains(sequence)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void addIfMatches(List<StoredMessage> results, StoredMessage message, long from, long to) {
+        // Blocks only narrow the range; the message's own timestamp decides
+        if (message != null && message.timestamp() >= from && message.timestamp() <= to) {
+            results.add(message);
+        }
+    }
+
+    /**
+     * Lowercase words of a message: runs of letters and digits, two or more
+     * characters long, each returned once.
+     */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                if (i - start >= 2) {
+                    String word = text.substring(start, Math.min(i, start + MAX_TERM_LENGTH)).toLowerCase(Locale.ROOT);
+                    if (!words.contains(word)) {
+                        words.add(word);
+                    }
+                }
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private void addTime(long sequence, long timestamp) {
+        if (blockBase < 0) {
+            blockBase = sequence - sequence % BLOCK;
+        }
+        int block = (int) ((sequence - blockBase) / BLOCK);
+        if (block >= blockMin.length) {
+            int size = Math.max(blockMin.length * 2, block + 1);
+            blockMin = Arrays.copyOf(blockMin, size);
+            blockMax = Arrays.copyOf(blockMax, size);
+        }
+        while (blockCount <= block) {
+            blockMin[blockCount] = Long.MAX_VALUE;
+            blockMax[blockCount] = Long.MIN_VALUE;
+            blockCount++;
+        }
+        blockMin[block] = Math.min(blockMin[block], timestamp);
+        blockMax[block] = Math.max(blockMax[block], timestamp);
+    }
+
+    /**
+     * Start of the first block that may hold messages at or after a time.
+     */
+    private long firstSequenceAtOrAfter(long timestamp) {
+        for (int block = 0; block < blockCount; block++) {
+            if (blockMax[block] >= timestamp) {
+                return blockBase + (long) block * BLOCK;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * End of the last block that may hold messages at or before a time.
+     */
+    private long lastSequenceAtOrBefore(long timestamp) {
+        for (int block = blockCount - 1; block >= 0; block--) {
+            if (blockMin[block] <= timestamp) {
+                return blockBase + (long) (block + 1) * BLOCK - 1;
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+
+    /**
+     * Drop entries older than newFloor; called under the write lock.
+     */
+    private void prune(long newFloor) {
+        floor = newFloor;
+        pruneAll(terms);
+        pruneAll(senders);
+
+        int dropped = (int) Math.min(blockCount, (newFloor - blockBase) / BLOCK);
+        if (dropped > 0) {
+            System.arraycopy(blockMin, dropped, blockMin, 0, blockCount - dropped);
+            System.arraycopy(blockMax, dropped, blockMax, 0, blockCount - dropped);
+            blockCount -= dropped;
+            blockBase += (long) dropped * BLOCK;
+        }
+    }
+
+    private void pruneAll(Map<String, Postings> index) {
+        Iterator<Postings> it = index.values().iterator();
+        while (it.hasNext()) {
+            Postings postings = it.next();
+            postings.prune(floor);
+            if (postings.size() == 0) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Ascending sequence numbers, stored as int offsets from a base to halve
+     * the memory of a long per entry. Pruning keeps the span under
+     * maxMessages, so offsets fit in an int.
+     */
+    private static final class Postings {
+
+        private long base;
+        private int[] offsets = new int[2];
+        private int size;
+
+        Postings(long base) {
+            this.base = base;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long get(int index) {
+            return base + offsets[index];
+        }
+
+        void add(long sequence) {
+            // A word occurring twice in a message is only indexed once
+            if (size > 0 && get(size - 1) == sequence) {
+                return;
+            }
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size + (size >> 1) + 1);
+            }
+            offsets[size++] = (int) (sequence - base);
+        }
+
+        /**
+         * Index of the newest entry at or before sequence, or -1.
+         */
+        int lastIndexAtMost(long sequence) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (get(mid) <= sequence) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high;
+        }
+
+        boolean contains(long sequence) {
+            int index = lastIndexAtMost(sequence);
+            return index >= 0 && get(index) == sequence;
+        }
+
+        void prune(long floor) {
+            int drop = lastIndexAtMost(floor - 1) + 1;
+            if (drop == 0) {
+                return;
+            }
+            size -= drop;
+            if (size == 0) {
+                return;
+            }
+            long newBase = get(drop);
+            int shift = (int) (newBase - base);
+            for (int i = 0; i < size; i++) {
+                offsets[i] = offsets[drop + i] - shift;
+            }
+            base = newBase;
+            if (offsets.length > 64 && size < offsets.length / 4) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.directchat.chat;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A message in chat history together with its JSON encoding, built once when
+ * the message is stored so fetch responses can copy it instead of
+ * re-serializing the message for every poll.
+ *
+ * @param sequence Position in history, assigned when the message is added
+ *                 (0 until then); increases by one per message
+ * @param message  The message
+ * @param json     UTF-8 bytes of {"sender":...,"message":...,"timestamp":...}
+ */
+public record StoredMessage(long sequence, ChatMessage message, byte[] json) {
+
+    /**
+     * Encode a message for storing in history.
+     */
+    public static StoredMessage of(ChatMessage message) {
+        StringWriter buffer = new StringWriter(64 + message.message().length());
+        try (JsonWriter writer = new JsonWriter(buffer)) {
+            // Same escaping as Gson.toJson
+            writer.setHtmlSafe(true);
+            writer.setSerializeNulls(false);
+            writer.beginObject();
+            writer.name("sender").value(message.senderName());
+            writer.name("message").value(message.message());
+            writer.name("timestamp").value(message.timestamp());
+            writer.endObject();
+        } catch (IOException e) {
+            // StringWriter doesn't throw
+            throw new UncheckedIOException(e);
+        }
+        return new StoredMessage(0, message, buffer.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The same message at a position in history, sharing the encoded JSON.
+     */
+    StoredMessage withSequence(long sequence) {
+        return new StoredMessage(sequence, message, json);
+    }
+
+    public long timestamp() {
+        return message.timestamp();
+    }
+}
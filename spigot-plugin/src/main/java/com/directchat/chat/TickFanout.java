@@ -0,0 +1,155 @@
+package com.directchat.chat;
+
+import com.directchat.auth.TokenManager;
+import com.directchat.metrics.Counter;
+import com.directchat.metrics.LatencyHistogram;
+import com.directchat.metrics.MetricsRegistry;
+import com.directchat.player.ChatPlayer;
+import com.directchat.player.PlayerRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shows chat lines to authenticated players in game, on the main thread.
+ * Any thread queues lines without locking; once per server tick the queue is
+ * drained and every recipient gets all lines queued since the last batch in
+ * one call, rendered once for all of them. A tick stops delivering once it has used its time budget and the
+ * next one picks up where it left off.
+ *
+ * <p>Shared by all channels: each line carries its channel's subscriber set,
+ * and consecutive lines of the same channel are batched together.
+ */
+final class TickFanout {
+
+    // Most lines delivered together, so one batch can't take many ticks per recipient
+    private static final int MAX_BATCH = 100;
+
+    /**
+     * @param subscribers Players to show the line to, or null for every
+     *                    authenticated player
+     */
+    private record Line(String text, Set<UUID> subscribers) {
+    }
+
+    private final Queue<Line> queue = new ConcurrentLinkedQueue<>();
+    // ConcurrentLinkedQueue.size() walks the queue
+    private final AtomicInteger queued = new AtomicInteger();
+    private final TokenManager tokenManager;
+    private final PlayerRegistry players;
+    private final LatencyHistogram tickLatency;
+    private final Counter overBudget;
+
+    // Set before the first tick, then only touched on the main thread
+    private long maxTickNanos;
+    private ChatLine batch;
+    // Taken from the queue for the next batch, since it is for other players
+    private Line pending;
+    private UUID[] recipients = new UUID[0];
+    private int nextRecipient;
+
+    TickFanout(TokenManager tokenManager, PlayerRegistry players, MetricsRegistry metrics) {
+        this.tokenManager = tokenManager;
+        this.players = players;
+        this.tickLatency = metrics.histogram("directchat_fanout_tick_seconds",
+                "Time spent per server tick showing messages to players in game");
+        this.overBudget = metrics.counter("directchat_fanout_over_budget_total",
+                "Ticks that ran out of time budget with messages left to show");
+        metrics.gauge("directchat_fanout_queue", "Lines waiting to be shown in game", queued::get);
+    }
+
+    /**
+     * Deliver queued lines every tick from now on.
+     *
+     * @param maxTickNanos Time budget per tick (0 = deliver everything queued)
+     */
+    void start(long maxTickNanos) {
+        this.maxTickNanos = maxTickNanos;
+        players.runEveryTick(this::tick);
+    }
+
+    /**
+     * Queue a line for the authenticated players among a channel's
+     * subscribers. Safe from any thread.
+     *
+     * @param subscribers Live subscriber set of the channel, or null for
+     *                    every authenticated player
+     */
+    void enqueue(String line, Set<UUID> subscribers) {
+        queue.add(new Line(line, subscribers));
+        queued.incrementAndGet();
+    }
+
+    /**
+     * Deliver lines until the queue is empty or the budget is used up.
+     */
+    private void tick() {
+        if (nextRecipient >= recipients.length && pending == null && queue.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        while (nextRecipient < recipients.length || nextBatch()) {
+            ChatPlayer player = players.getOnlinePlayer(recipients[nextRecipient++]);
+            if (player != null) {
+                player.sendMessage(batch);
+            }
+            if (maxTickNanos > 0 && System.nanoTime() - start >= maxTickNanos
+                    && (nextRecipient < recipients.length || pending != null || !queue.isEmpty())) {
+                overBudget.increment();
+                break;
+            }
+        }
+        tickLatency.recordSince(start);
+    }
+
+    /**
+     * Take the next lines from the queue and the players to show them to.
+     *
+     * @return False if the queue is empty
+     */
+    private boolean nextBatch() {
+        // Lines nobody is authenticated to see are dropped
+        while (true) {
+            Line first = pending != null ? pending : queue.poll();
+            pending = null;
+            if (first == null) {
+                return false;
+            }
+            List<String> lines = new ArrayList<>();
+            lines.add(first.text());
+            Line line;
+            while (lines.size() < MAX_BATCH && (line = queue.poll()) != null) {
+                if (line.subscribers() != first.subscribers()) {
+                    pending = line;
+                    break;
+                }
+                lines.add(line.text());
+            }
+            queued.addAndGet(-lines.size());
+            batch = ChatLine.join(lines);
+            recipients = recipients(first.subscribers());
+            nextRecipient = 0;
+            if (recipients.length > 0) {
+                return true;
+            }
+        }
+    }
+
+    private UUID[] recipients(Set<UUID> subscribers) {
+        if (subscribers == null) {
+            return tokenManager.getAuthenticatedPlayers().toArray(new UUID[0]);
+        }
+        List<UUID> authenticated = new ArrayList<>(subscribers.size());
+        for (UUID uuid : subscribers) {
+            if (tokenManager.isAuthenticated(uuid)) {
+                authenticated.add(uuid);
+            }
+        }
+        return authenticated.toArray(new UUID[0]);
+    }
+}
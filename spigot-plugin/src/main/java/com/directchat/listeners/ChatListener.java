@@ -75,14 +75,15 @@ public class ChatListener implements Listener {
 
     /**
      * Handle player quit.
-     * Clean up authentication tokens.
+     * Clean up authentication tokens and channel subscriptions.
      */
     @EventHandler
     public void onQuit(PlayerQuitEvent event) {
         Player player = event.getPlayer();
 
-        // Invalidate token on disconnect
+        // Invalidate token on disconnect; channels are joined again on the next auth
         plugin.getTokenManager().invalidatePlayer(player.getUniqueId());
+        plugin.getChannelManager().removePlayer(player.getUniqueId());
         plugin.debug("Player " + player.getName() + " disconnected, token invalidated");
     }
 }
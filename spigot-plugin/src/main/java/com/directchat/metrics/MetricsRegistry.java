@@ -0,0 +1,163 @@
+package com.directchat.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Named counters, gauges and latency histograms, exported in the Prometheus
+ * text format. Look metrics up once and keep the returned object; recording
+ * on it is lock-free.
+ */
+public class MetricsRegistry {
+
+    private enum Type {
+        COUNTER, GAUGE, HISTOGRAM
+    }
+
+    /**
+     * All series of one metric name, keyed by their rendered label set.
+     */
+    private record Family(String help, Type type, Map<String, Object> series) {
+    }
+
+    private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+    /**
+     * Get or create a counter.
+     *
+     * @param labels Label names and values, alternating
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) series(name, help, Type.COUNTER, labels, Counter::new);
+    }
+
+    /**
+     * Get or create a latency histogram (exported in seconds).
+     *
+     * @param labels Label names and values, alternating
+     */
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) series(name, help, Type.HISTOGRAM, labels, LatencyHistogram::new);
+    }
+
+    /**
+     * Register a gauge read when metrics are exported. Replaces an earlier
+     * gauge with the same name and labels.
+     *
+     * @param labels Label names and values, alternating
+     */
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        family(name, help, Type.GAUGE).series().put(renderLabels(labels), value);
+    }
+
+    /**
+     * Drop the series of every metric with exactly these labels, e.g. of a
+     * removed channel.
+     *
+     * @param labels Label names and values, alternating
+     */
+    public void removeSeries(String... labels) {
+        String key = renderLabels(labels);
+        for (Family family : families.values()) {
+            family.series().remove(key);
+        }
+    }
+
+    /**
+     * Render all metrics in the Prometheus text exposition format.
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.append("# HELP ").append(name).append(' ').append(family.help()).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(family.type().name().toLowerCase(Locale.ROOT))
+                    .append('\n');
+
+            for (Map.Entry<String, Object> series : family.series().entrySet()) {
+                String labels = series.getKey();
+                switch (family.type()) {
+                    case COUNTER -> sample(out, name, labels, ((Counter) series.getValue()).get());
+                    case GAUGE -> sample(out, name, labels, ((DoubleSupplier) series.getValue()).getAsDouble());
+                    case HISTOGRAM -> writeHistogram(out, name, labels, (LatencyHistogram) series.getValue());
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private Object series(String name, String help, Type type, String[] labels,
+            Supplier<Object> factory) {
+        return family(name, help, type).series().computeIfAbsent(renderLabels(labels), k -> factory.get());
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name,
+                k -> new Family(help, type, new ConcurrentHashMap<>()));
+        if (family.type() != type) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + family.type());
+        }
+        return family;
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        long[] counts = histogram.bucketCounts();
+        long cumulative = 0;
+        for (int i = 0; i < counts.length; i++) {
+            cumulative += counts[i];
+            String le = i < LatencyHistogram.BOUNDS_SECONDS.length
+                    ? formatDouble(LatencyHistogram.BOUNDS_SECONDS[i])
+                    : "+Inf";
+            sample(out, name + "_bucket", withLabel(labels, "le", le), cumulative);
+        }
+        sample(out, name + "_sum", labels, histogram.sumSeconds());
+        sample(out, name + "_count", labels, cumulative);
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name).append(labels).append(' ').append(value).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append(labels).append(' ').append(formatDouble(value)).append('\n');
+    }
+
+    private static String formatDouble(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static String renderLabels(String[] labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+
+        StringBuilder out = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return out.append('}').toString();
+    }
+
+    private static String withLabel(String labels, String name, String value) {
+        String label = name + "=\"" + value + "\"";
+        return labels.isEmpty() ? "{" + label + "}" : labels.substring(0, labels.length() - 1) + "," + label + "}";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
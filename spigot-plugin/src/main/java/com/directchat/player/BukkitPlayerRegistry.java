@@ -0,0 +1,154 @@
+package com.directchat.player;
+
+import com.directchat.chat.ChatLine;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scoreboard.Team;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Player registry backed by the running Bukkit server.
+ *
+ * <p>Scoreboards may only be read on the main thread, so each player's team
+ * is cached there, on join, once a second and whenever it is read on the
+ * main thread, for the API threads to use.
+ */
+public class BukkitPlayerRegistry implements PlayerRegistry, Listener {
+
+    // Bukkit has no team change event, so teams are polled
+    private static final long TEAM_REFRESH_TICKS = 20;
+    // Cached for players without a team, since the map can't hold null
+    private static final String NO_TEAM = "";
+
+    private final Plugin plugin;
+    private final Map<UUID, String> teams = new ConcurrentHashMap<>();
+
+    public BukkitPlayerRegistry(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Keep the team cache of online players up to date from now on. The
+     * registry must also be registered as a listener.
+     */
+    public void startTeamTracking() {
+        // Cancelled by Bukkit when the plugin is disabled
+        Bukkit.getScheduler().runTaskTimer(plugin, () -> {
+            for (Player player : Bukkit.getOnlinePlayers()) {
+                updateTeam(player);
+            }
+        }, 0, TEAM_REFRESH_TICKS);
+    }
+
+    /**
+     * Read a player's team into the cache. Must be called on the main thread.
+     */
+    private String updateTeam(Player player) {
+        Team team = player.getScoreboard().getEntryTeam(player.getName());
+        String name = team != null ? team.getName() : NO_TEAM;
+        teams.put(player.getUniqueId(), name);
+        return name;
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onJoin(PlayerJoinEvent event) {
+        // Before the player can authenticate and join their team channel
+        updateTeam(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        teams.remove(event.getPlayer().getUniqueId());
+    }
+
+    @Override
+    public ChatPlayer getOnlinePlayer(UUID uuid) {
+        Player player = Bukkit.getPlayer(uuid);
+        if (player == null || !player.isOnline()) {
+            return null;
+        }
+        return new BukkitPlayer(player);
+    }
+
+    @Override
+    public ChatPlayer getOnlinePlayer(String name) {
+        // Read-only lookup, like getPlayer(UUID)
+        Player player = Bukkit.getPlayerExact(name);
+        if (player == null || !player.isOnline()) {
+            return null;
+        }
+        return new BukkitPlayer(player);
+    }
+
+    @Override
+    public void runOnMainThread(Runnable task) {
+        Bukkit.getScheduler().runTask(plugin, task);
+    }
+
+    @Override
+    public void runEveryTick(Runnable task) {
+        // Cancelled by Bukkit when the plugin is disabled
+        Bukkit.getScheduler().runTaskTimer(plugin, task, 1, 1);
+    }
+
+    /**
+     * Wraps a Bukkit player.
+     */
+    private final class BukkitPlayer implements ChatPlayer {
+
+        private final Player player;
+
+        BukkitPlayer(Player player) {
+            this.player = player;
+        }
+
+        @Override
+        public UUID getUniqueId() {
+            return player.getUniqueId();
+        }
+
+        @Override
+        public String getName() {
+            return player.getName();
+        }
+
+        @Override
+        public void sendMessage(String message) {
+            player.sendMessage(message);
+        }
+
+        @Override
+        public void sendMessage(ChatLine line) {
+            // One chat packet with line breaks instead of one per line, and
+            // one component per batch shared by every recipient
+            player.sendMessage(line.render(LegacyComponentSerializer.legacySection()::deserialize));
+        }
+
+        @Override
+        public boolean hasPermission(String permission) {
+            return player.hasPermission(permission);
+        }
+
+        @Override
+        public String getTeam() {
+            // Live on the main thread, cached on API threads
+            String team = Bukkit.isPrimaryThread() ? updateTeam(player) : teams.get(player.getUniqueId());
+            return team == null || team.isEmpty() ? null : team;
+        }
+
+        @Override
+        public void performCommand(String command) {
+            player.performCommand(command);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.directchat.player;
+
+import com.directchat.chat.ChatLine;
+
+import java.util.UUID;
+
+/**
+ * An online player, as seen by the chat and API code.
+ */
+public interface ChatPlayer {
+
+    UUID getUniqueId();
+
+    String getName();
+
+    /**
+     * Show a message to the player in game.
+     */
+    void sendMessage(String message);
+
+    /**
+     * Show formatted chat lines to the player in game. Implementations
+     * should reuse the line's cached rendering across players.
+     */
+    default void sendMessage(ChatLine line) {
+        sendMessage(line.text());
+    }
+
+    /**
+     * Whether the player has a permission, e.g. directchat.search.
+     */
+    boolean hasPermission(String permission);
+
+    /**
+     * Name of the player's scoreboard team, or null if they have none. Safe
+     * from any thread; off the main thread it may lag a team change by a
+     * second.
+     */
+    default String getTeam() {
+        return null;
+    }
+
+    /**
+     * Run a command as the player. Must be called on the main thread.
+     */
+    void performCommand(String command);
+}
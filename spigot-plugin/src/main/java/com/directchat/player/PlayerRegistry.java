@@ -0,0 +1,33 @@
+package com.directchat.player;
+
+import java.util.UUID;
+
+/**
+ * Looks up online players and runs tasks on the server's main thread.
+ * Keeps the chat and API code independent of Bukkit, so it can also run
+ * standalone.
+ */
+public interface PlayerRegistry {
+
+    /**
+     * Get an online player, or null if the player is offline or unknown.
+     */
+    ChatPlayer getOnlinePlayer(UUID uuid);
+
+    /**
+     * Get an online player by exact name, ignoring case, or null if nobody
+     * online has that name.
+     */
+    ChatPlayer getOnlinePlayer(String name);
+
+    /**
+     * Run a task on the main thread, e.g. to perform commands.
+     */
+    void runOnMainThread(Runnable task);
+
+    /**
+     * Run a task on the main thread once per server tick (20 times a second)
+     * until the host shuts down.
+     */
+    void runEveryTick(Runnable task);
+}
@@ -0,0 +1,321 @@
+package com.directchat.standalone;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load generator for the DirectChat HTTP API. Simulates authenticated clients
+ * polling /api/fetch and sending through /api/send, then reports throughput,
+ * delivery latency and error rates.
+ *
+ * <p>Usage: {@code java -cp DirectChat.jar com.directchat.standalone.LoadGenerator [key=value...]}
+ * <ul>
+ * <li>url (http://localhost:36679), password (changeme)</li>
+ * <li>pollers (100), senders (10), duration in seconds (60)</li>
+ * <li>send-interval (1000) and poll-interval (1000) in milliseconds per client</li>
+ * <li>wait (0): long-poll time sent with each fetch, in milliseconds</li>
+ * </ul>
+ * Any UUID can authenticate against {@link StandaloneServer}; against a real
+ * server the players must be online. Rate limits apply per client, so raise
+ * or disable them on the server when sending faster than they allow.
+ */
+public class LoadGenerator {
+
+    // Messages sent by the generator, followed by System.nanoTime() at send
+    private static final String MESSAGE_PREFIX = "load ";
+
+    private final URI baseUri;
+    private final String password;
+    private final int pollers;
+    private final int senders;
+    private final long durationMillis;
+    private final long sendIntervalMillis;
+    private final long pollIntervalMillis;
+    private final long waitMillis;
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private final LongAdder sendsOk = new LongAdder();
+    private final LongAdder sendsFailed = new LongAdder();
+    private final LongAdder fetchesOk = new LongAdder();
+    private final LongAdder fetchesFailed = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder gaps = new LongAdder();
+    // Failure reason ("HTTP 429", exception class, server message) -> count
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final List<Samples> latencySamples = new ArrayList<>();
+
+    private volatile long sendDeadline;
+    private volatile long pollDeadline;
+
+    public LoadGenerator(Map<String, String> options) {
+        baseUri = URI.create(options.getOrDefault("url", "http://localhost:36679"));
+        password = options.getOrDefault("password", "changeme");
+        pollers = Integer.parseInt(options.getOrDefault("pollers", "100"));
+        senders = Integer.parseInt(options.getOrDefault("senders", "10"));
+        durationMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault("duration", "60")));
+        sendIntervalMillis = Long.parseLong(options.getOrDefault("send-interval", "1000"));
+        pollIntervalMillis = Long.parseLong(options.getOrDefault("poll-interval", "1000"));
+        waitMillis = Long.parseLong(options.getOrDefault("wait", "0"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new TreeMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                System.err.println("Expected key=value, got: " + arg);
+                System.exit(2);
+            }
+            options.put(arg.substring(0, eq).trim(), arg.substring(eq + 1).trim());
+        }
+        new LoadGenerator(options).run();
+    }
+
+    /**
+     * Authenticate all clients, run the load and print the report.
+     */
+    public void run() throws Exception {
+        System.out.println("Authenticating " + pollers + " pollers and " + senders + " senders at " + baseUri);
+        List<String> pollerTokens = authenticate(pollers);
+        List<String> senderTokens = authenticate(senders);
+
+        long start = System.currentTimeMillis();
+        sendDeadline = start + durationMillis;
+        // Pollers keep going a little longer to pick up the last messages sent
+        pollDeadline = sendDeadline + Math.max(pollIntervalMillis, waitMillis) + 1000;
+
+        List<Thread> threads = new ArrayList<>();
+        for (String token : pollerTokens) {
+            Samples samples = new Samples();
+            latencySamples.add(samples);
+            threads.add(Thread.ofVirtual().start(() -> poll(token, samples)));
+        }
+        for (String token : senderTokens) {
+            threads.add(Thread.ofVirtual().start(() -> send(token)));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        report((sendDeadline - start) / 1000.0);
+    }
+
+    private List<String> authenticate(int count) throws IOException, InterruptedException {
+        List<String> tokens = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            JsonObject request = new JsonObject();
+            request.addProperty("uuid", UUID.randomUUID().toString());
+            request.addProperty("password", password);
+
+            HttpResponse<String> response = client.send(post("/api/auth", null, request),
+                    HttpResponse.BodyHandlers.ofString());
+            JsonObject json = JsonParser.parseString(response.body()).getAsJsonObject();
+            if (!"OK".equals(json.get("status").getAsString())) {
+                throw new IOException("Authentication failed: " + response.body());
+            }
+            tokens.add(json.get("token").getAsString());
+        }
+        return tokens;
+    }
+
+    /**
+     * Fetch messages until the deadline, recording delivery latency of the
+     * generator's own messages.
+     *
+     * @param samples Receives delivery latencies in nanoseconds
+     */
+    private void poll(String token, Samples samples) {
+        // Start from now, then follow the sequence cursor the server returns
+        String position = "since=" + System.currentTimeMillis();
+        while (System.currentTimeMillis() < pollDeadline) {
+            try {
+                HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/api/fetch?" + position
+                                + "&wait=" + waitMillis))
+                        .header("Authorization", "Bearer " + token)
+                        .timeout(Duration.ofMillis(waitMillis + 10_000))
+                        .GET()
+                        .build();
+                HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() != 200) {
+                    fetchesFailed.increment();
+                    error("HTTP " + response.statusCode());
+                    backOff(response);
+                    continue;
+                }
+
+                JsonObject json = JsonParser.parseString(response.body()).getAsJsonObject();
+                if (!"OK".equals(json.get("status").getAsString())) {
+                    fetchesFailed.increment();
+                    error(json.get("message").getAsString());
+                    Thread.sleep(pollIntervalMillis);
+                    continue;
+                }
+                fetchesOk.increment();
+                position = "after=" + json.get("cursor").getAsLong();
+                if (json.has("gap") && json.get("gap").getAsBoolean()) {
+                    gaps.increment();
+                }
+
+                long now = System.nanoTime();
+                for (JsonElement element : json.getAsJsonArray("messages")) {
+                    String text = element.getAsJsonObject().get("message").getAsString();
+                    if (text.startsWith(MESSAGE_PREFIX)) {
+                        delivered.increment();
+                        samples.add(now - Long.parseLong(text.substring(MESSAGE_PREFIX.length())));
+                    }
+                }
+
+                // Long polls come back as soon as there is something new
+                if (waitMillis == 0) {
+                    Thread.sleep(pollIntervalMillis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                fetchesFailed.increment();
+                error(e.getClass().getSimpleName());
+            }
+        }
+    }
+
+    /**
+     * Send messages until the deadline.
+     */
+    private void send(String token) {
+        while (System.currentTimeMillis() < sendDeadline) {
+            try {
+                JsonObject body = new JsonObject();
+                body.addProperty("message", MESSAGE_PREFIX + System.nanoTime());
+                HttpResponse<String> response = client.send(post("/api/send", token, body),
+                        HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() != 200) {
+                    sendsFailed.increment();
+                    error("HTTP " + response.statusCode());
+                    backOff(response);
+                    continue;
+                }
+
+                JsonObject json = JsonParser.parseString(response.body()).getAsJsonObject();
+                if ("OK".equals(json.get("status").getAsString())) {
+                    sendsOk.increment();
+                } else {
+                    sendsFailed.increment();
+                    error(json.get("message").getAsString());
+                }
+                Thread.sleep(sendIntervalMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                sendsFailed.increment();
+                error(e.getClass().getSimpleName());
+            }
+        }
+    }
+
+    /**
+     * JSON POST request, authorized with the token unless it is null.
+     */
+    private HttpRequest post(String path, String token, JsonObject body) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(baseUri.resolve(path))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(10))
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        return request.build();
+    }
+
+    /**
+     * Wait as long as a 429/503 response asks, or one second.
+     */
+    private static void backOff(HttpResponse<?> response) throws InterruptedException {
+        long seconds = response.headers().firstValue("Retry-After").map(Long::parseLong).orElse(1L);
+        Thread.sleep(TimeUnit.SECONDS.toMillis(Math.max(1, seconds)));
+    }
+
+    private void error(String reason) {
+        errors.computeIfAbsent(reason, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Latency samples of one poller, only touched by its thread until the report.
+     */
+    private static final class Samples {
+
+        private long[] values = new long[1024];
+        private int count;
+
+        void add(long nanos) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = nanos;
+        }
+    }
+
+    private void report(double seconds) {
+        // Pollers have finished, so their samples are safe to read
+        long[] latencies = latencySamples.stream()
+                .flatMapToLong(samples -> Arrays.stream(samples.values, 0, samples.count))
+                .sorted()
+                .toArray();
+        long sent = sendsOk.sum();
+        long expected = sent * pollers;
+        long fetches = fetchesOk.sum() + fetchesFailed.sum();
+
+        System.out.println();
+        System.out.printf("Duration:  %.1f s, %d pollers, %d senders%n", seconds, pollers, senders);
+        System.out.printf("Sends:     %d ok, %d failed (%.1f/s, %.2f%% errors)%n",
+                sent, sendsFailed.sum(), sent / seconds, percent(sendsFailed.sum(), sent + sendsFailed.sum()));
+        System.out.printf("Fetches:   %d ok, %d failed (%.1f/s, %.2f%% errors)%n",
+                fetchesOk.sum(), fetchesFailed.sum(), fetches / seconds, percent(fetchesFailed.sum(), fetches));
+        System.out.printf("Delivered: %d of %d expected (%.2f%%, %.1f msg/s), %d gaps%n",
+                delivered.sum(), expected, percent(delivered.sum(), expected), delivered.sum() / seconds,
+                gaps.sum());
+        if (latencies.length > 0) {
+            System.out.printf("Latency:   p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                    millis(percentile(latencies, 0.50)), millis(percentile(latencies, 0.99)),
+                    millis(latencies[latencies.length - 1]));
+        }
+        if (!errors.isEmpty()) {
+            System.out.println("Errors:");
+            new TreeMap<>(errors).forEach((reason, count) -> System.out.println("  " + reason + ": " + count.sum()));
+        }
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static double percent(long part, long total) {
+        return total == 0 ? 0 : 100.0 * part / total;
+    }
+}
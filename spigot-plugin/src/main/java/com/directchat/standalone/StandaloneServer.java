@@ -0,0 +1,448 @@
+package com.directchat.standalone;
+
+import com.directchat.DirectChatContext;
+import com.directchat.api.RequestExecutor;
+import com.directchat.api.TlsSupport;
+import com.directchat.api.WebServer;
+import com.directchat.api.WebSocketServer;
+import com.directchat.audit.AuditLog;
+import com.directchat.auth.TokenManager;
+import com.directchat.chat.ChannelManager;
+import com.directchat.chat.ChatLog;
+import com.directchat.chat.ChatManager;
+import com.directchat.metrics.MetricsRegistry;
+import com.directchat.player.PlayerRegistry;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Runs the DirectChat API without a Minecraft server, e.g. for load tests
+ * with {@link LoadGenerator}. Any UUID can authenticate (see
+ * {@link StubPlayerRegistry}).
+ *
+ * <p>Usage: {@code java -cp DirectChat.jar com.directchat.standalone.StandaloneServer [config.yml] [key=value...]}
+ * <br>Settings use the plugin's config.yml keys, with the bundled config.yml
+ * as defaults. Only flat {@code key: value} lines are read. The persistent
+ * chat logs are kept in ./history (other channels than global in
+ * ./history/&lt;channel&gt;) and audit files in ./audit.
+ */
+public class StandaloneServer implements DirectChatContext {
+
+    private final Logger logger = Logger.getLogger("DirectChat");
+    private final Map<String, String> settings;
+    private final boolean debug;
+    private final String password;
+    private final String captchaProvider;
+    private final int port;
+    private final int websocketPort;
+    private final String serverEngine;
+    private final int nioMaxConnections;
+    private final RequestExecutor.Mode executorMode;
+    private final int executorThreads;
+    private final int executorQueueSize;
+    private final long executorMaxQueueWait;
+    private final int executorMaxConcurrent;
+    private final long longPollMaxWait;
+    private final int searchMaxResults;
+    private final boolean compressionEnabled;
+    private final int compressionMinSize;
+    private final boolean requireHttps;
+    private final String keystorePath;
+    private final String keystorePassword;
+    private final String statsToken;
+    private final int tlsSessionCacheSize;
+    private final int tlsSessionTimeout;
+    private final double sendRateLimit;
+    private final int sendRateBurst;
+    private final double fetchRateLimit;
+    private final int fetchRateBurst;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final StubPlayerRegistry playerRegistry = new StubPlayerRegistry();
+    private final TokenManager tokenManager;
+    private final ChannelManager channelManager;
+    private final AuditLog auditLog;
+
+    private WebServer webServer;
+    private WebSocketServer webSocketServer;
+
+    /**
+     * @param overrides Settings replacing the bundled defaults
+     */
+    public StandaloneServer(Map<String, String> overrides) throws IOException {
+        settings = readDefaults();
+        settings.putAll(overrides);
+        debug = getBoolean("debug");
+        password = getString("password");
+        captchaProvider = getString("captcha-provider");
+        port = getInt("port");
+        websocketPort = getInt("websocket-port");
+        serverEngine = getString("engine").trim().toLowerCase(Locale.ROOT);
+        nioMaxConnections = getInt("nio-max-connections");
+        executorMode = RequestExecutor.Mode.fromConfig(getString("executor"));
+        executorThreads = getInt("executor-threads");
+        executorQueueSize = getInt("executor-queue-size");
+        executorMaxQueueWait = getLong("executor-max-queue-wait");
+        executorMaxConcurrent = getInt("executor-max-concurrent");
+        longPollMaxWait = Math.max(0, getLong("long-poll-max-wait"));
+        searchMaxResults = Math.max(1, getInt("search-max-results"));
+        compressionEnabled = getBoolean("compression-enabled");
+        compressionMinSize = getInt("compression-min-size");
+        requireHttps = getBoolean("require-https");
+        keystorePath = getString("keystore-path");
+        keystorePassword = getString("keystore-password");
+        statsToken = getString("stats-token");
+        tlsSessionCacheSize = getInt("tls-session-cache-size");
+        tlsSessionTimeout = getInt("tls-session-timeout");
+        sendRateLimit = getDouble("rate-limit-send-per-second");
+        sendRateBurst = getInt("rate-limit-send-burst");
+        fetchRateLimit = getDouble("rate-limit-fetch-per-second");
+        fetchRateBurst = getInt("rate-limit-fetch-burst");
+
+        // Chat lines only reach the console in debug mode, so it doesn't limit load tests
+        auditLog = AuditLog.start(getBoolean("audit-enabled") ? Path.of("audit") : null,
+                debug && getBoolean("audit-console"), Math.max(16, getInt("audit-queue-size")),
+                Math.max(1, getLong("audit-flush-interval")),
+                Math.max(0, getLong("audit-max-file-size")) * 1024 * 1024,
+                Math.max(0, getInt("audit-retention-days")), logger, metrics);
+
+        tokenManager = new TokenManager(getInt("token-expiry"));
+        long offHeapMemory = "offheap".equalsIgnoreCase(getString("history-store").trim())
+                ? Math.max(1, getLong("history-offheap-memory")) * 1024 * 1024
+                : 0;
+        channelManager = new ChannelManager(Arrays.asList(getString("channels").split(",")),
+                Arrays.asList(getString("channels-restricted").split(",")), getBoolean("team-channels"),
+                getInt("message-history-size"), offHeapMemory, Math.min(10000, Math.max(0, getInt("inbox-size"))),
+                tokenManager, playerRegistry, logger, metrics, this::setUpChannel);
+        channelManager.getDirectMessages().setFormat(getString("format-direct"), getString("format-time"));
+        channelManager.addListener((channel, stored) -> auditLog.chat(channel.getChannel(), stored.message()));
+        channelManager.startFanout((long) (Math.max(0, getDouble("fanout-max-tick-time")) * 1_000_000));
+        metrics.gauge("directchat_tokens", "Issued auth tokens", tokenManager::getTokenCount);
+        metrics.gauge("directchat_standalone_messages_shown", "Messages shown to stub players in game",
+                playerRegistry::getMessagesShown);
+        metrics.gauge("directchat_standalone_message_calls", "Calls made to show messages to stub players",
+                playerRegistry::getMessageCalls);
+
+        if ("changeme".equals(password)) {
+            logger.warning("Using default password! Pass password=... to change it");
+        }
+    }
+
+    /**
+     * Restore a channel's chat log, start its search index and set its formats.
+     */
+    private void setUpChannel(ChatManager channel) {
+        if (getBoolean("history-log-enabled")) {
+            Path directory = ChannelManager.GLOBAL.equals(channel.getChannel())
+                    ? Path.of("history")
+                    : Path.of("history", channel.getChannel());
+            try {
+                ChatLog chatLog = ChatLog.open(directory,
+                        Math.min(1024, Math.max(1, getInt("history-log-segment-size"))) * 1024 * 1024,
+                        TimeUnit.HOURS.toMillis(Math.max(0, getLong("history-log-retention-hours"))),
+                        Math.max(0, getLong("history-log-max-size")) * 1024 * 1024, logger);
+                channel.restore(chatLog);
+                chatLog.startSync(Math.max(0, getLong("history-log-sync-interval")));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        if (getBoolean("search-enabled")) {
+            channel.startSearchIndex(Math.min(50_000_000, Math.max(1000, getInt("search-max-messages"))));
+        }
+        channel.setFormats(getString("format-chat"), getString("format-system"), getString("format-time"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> overrides = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                overrides.put(arg.substring(0, eq).trim(), arg.substring(eq + 1).trim());
+            } else {
+                try (Reader reader = Files.newBufferedReader(Path.of(arg), StandardCharsets.UTF_8)) {
+                    overrides.putAll(readConfig(reader));
+                }
+            }
+        }
+
+        StandaloneServer server = new StandaloneServer(overrides);
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "DirectChat-Shutdown"));
+
+        // Server threads are daemons; run until Ctrl+C
+        Thread.currentThread().join();
+    }
+
+    /**
+     * Start the HTTP server and, if enabled, the WebSocket endpoint.
+     */
+    public void start() throws IOException {
+        webServer = new WebServer(this, port);
+        webServer.start();
+        logger.info("DirectChat standalone API server started on port " + port);
+
+        if (websocketPort > 0) {
+            TlsSupport tls = webServer.getTlsSupport();
+            webSocketServer = new WebSocketServer(this, websocketPort, webServer.getApiHandler(),
+                    webServer.getSendLimiter(), tls != null ? tls.getSslContext() : null);
+            webSocketServer.start();
+            WebSocketServer sessions = webSocketServer;
+            metrics.gauge("directchat_websocket_sessions", "Open WebSocket sessions", sessions::getSessionCount);
+        }
+    }
+
+    /**
+     * Stop the servers and forget all tokens.
+     */
+    public void stop() {
+        if (webSocketServer != null) {
+            webSocketServer.stop();
+        }
+        if (webServer != null) {
+            webServer.stop();
+        }
+        channelManager.close();
+        playerRegistry.shutdown();
+        tokenManager.clearAll();
+        auditLog.close();
+        logger.info("DirectChat standalone API server stopped");
+    }
+
+    /**
+     * Read the top-level {@code key: value} pairs of a config.yml.
+     */
+    static Map<String, String> readConfig(Reader in) throws IOException {
+        Map<String, String> config = new HashMap<>();
+        BufferedReader reader = new BufferedReader(in);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            // Skip comments, blank lines and nested sections
+            if (line.isBlank() || line.startsWith("#") || Character.isWhitespace(line.charAt(0))) {
+                continue;
+            }
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+
+            String key = line.substring(0, colon).strip();
+            String value = line.substring(colon + 1).strip();
+            if (value.startsWith("\"") || value.startsWith("'")) {
+                int end = value.indexOf(value.charAt(0), 1);
+                value = end > 0 ? value.substring(1, end) : value.substring(1);
+            } else {
+                int comment = value.indexOf(" #");
+                if (comment >= 0) {
+                    value = value.substring(0, comment).strip();
+                }
+            }
+            config.put(key, value);
+        }
+        return config;
+    }
+
+    private static Map<String, String> readDefaults() throws IOException {
+        InputStream in = StandaloneServer.class.getResourceAsStream("/config.yml");
+        if (in == null) {
+            throw new IOException("config.yml missing from classpath");
+        }
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return readConfig(reader);
+        }
+    }
+
+    private String getString(String key) {
+        return settings.getOrDefault(key, "");
+    }
+
+    private int getInt(String key) {
+        return Integer.parseInt(getString(key));
+    }
+
+    private long getLong(String key) {
+        return Long.parseLong(getString(key));
+    }
+
+    private double getDouble(String key) {
+        return Double.parseDouble(getString(key));
+    }
+
+    private boolean getBoolean(String key) {
+        return Boolean.parseBoolean(getString(key));
+    }
+
+    @Override
+    public Logger getLogger() {
+        return logger;
+    }
+
+    @Override
+    public void debug(String message) {
+        if (debug) {
+            auditLog.debug(message);
+        }
+    }
+
+    @Override
+    public AuditLog getAuditLog() {
+        return auditLog;
+    }
+
+    @Override
+    public TokenManager getTokenManager() {
+        return tokenManager;
+    }
+
+    @Override
+    public ChannelManager getChannelManager() {
+        return channelManager;
+    }
+
+    @Override
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public PlayerRegistry getPlayerRegistry() {
+        return playerRegistry;
+    }
+
+    public StubPlayerRegistry getStubPlayerRegistry() {
+        return playerRegistry;
+    }
+
+    @Override
+    public String getPassword() {
+        return password;
+    }
+
+    @Override
+    public String getCaptchaProvider() {
+        return captchaProvider;
+    }
+
+    @Override
+    public int getWebSocketPort() {
+        return webSocketServer != null ? webSocketServer.getPort() : 0;
+    }
+
+    @Override
+    public String getServerEngine() {
+        return serverEngine;
+    }
+
+    @Override
+    public int getNioMaxConnections() {
+        return nioMaxConnections;
+    }
+
+    @Override
+    public RequestExecutor.Mode getExecutorMode() {
+        return executorMode;
+    }
+
+    @Override
+    public int getExecutorThreads() {
+        return executorThreads;
+    }
+
+    @Override
+    public int getExecutorQueueSize() {
+        return executorQueueSize;
+    }
+
+    @Override
+    public long getExecutorMaxQueueWait() {
+        return executorMaxQueueWait;
+    }
+
+    @Override
+    public int getExecutorMaxConcurrent() {
+        return executorMaxConcurrent;
+    }
+
+    @Override
+    public long getLongPollMaxWait() {
+        return longPollMaxWait;
+    }
+
+    @Override
+    public int getSearchMaxResults() {
+        return searchMaxResults;
+    }
+
+    @Override
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    @Override
+    public int getCompressionMinSize() {
+        return compressionMinSize;
+    }
+
+    @Override
+    public boolean isRequireHttps() {
+        return requireHttps;
+    }
+
+    @Override
+    public String getKeystorePath() {
+        return keystorePath;
+    }
+
+    @Override
+    public String getKeystorePassword() {
+        return keystorePassword;
+    }
+
+    @Override
+    public String getStatsToken() {
+        return statsToken;
+    }
+
+    @Override
+    public int getTlsSessionCacheSize() {
+        return tlsSessionCacheSize;
+    }
+
+    @Override
+    public int getTlsSessionTimeout() {
+        return tlsSessionTimeout;
+    }
+
+    @Override
+    public double getSendRateLimit() {
+        return sendRateLimit;
+    }
+
+    @Override
+    public int getSendRateBurst() {
+        return sendRateBurst;
+    }
+
+    @Override
+    public double getFetchRateLimit() {
+        return fetchRateLimit;
+    }
+
+    @Override
+    public int getFetchRateBurst() {
+        return fetchRateBurst;
+    }
+}
@@ -0,0 +1,137 @@
+package com.directchat.standalone;
+
+import com.directchat.chat.ChatLine;
+import com.directchat.player.ChatPlayer;
+import com.directchat.player.PlayerRegistry;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Player registry without a Minecraft server: every UUID is an online player
+ * with every permission.
+ * Messages shown to players are only counted, and commands and tick tasks
+ * run on a single thread standing in for the server's main thread.
+ */
+public class StubPlayerRegistry implements PlayerRegistry {
+
+    private final Map<UUID, StubPlayer> players = new ConcurrentHashMap<>();
+    private final Map<String, StubPlayer> playersByName = new ConcurrentHashMap<>();
+    private final LongAdder messagesShown = new LongAdder();
+    private final LongAdder commandsRun = new LongAdder();
+    private final LongAdder messageCalls = new LongAdder();
+    private final ScheduledExecutorService mainThread = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "Server thread");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Override
+    public ChatPlayer getOnlinePlayer(UUID uuid) {
+        return players.computeIfAbsent(uuid, key -> {
+            StubPlayer player = new StubPlayer(key);
+            playersByName.put(player.name.toLowerCase(Locale.ROOT), player);
+            return player;
+        });
+    }
+
+    /**
+     * Only players that were looked up by UUID before, e.g. by
+     * authenticating, can be found by name.
+     */
+    @Override
+    public ChatPlayer getOnlinePlayer(String name) {
+        return playersByName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    @Override
+    public void runOnMainThread(Runnable task) {
+        mainThread.execute(task);
+    }
+
+    @Override
+    public void runEveryTick(Runnable task) {
+        mainThread.scheduleAtFixedRate(task, 50, 50, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Number of messages shown to players in game.
+     */
+    public long getMessagesShown() {
+        return messagesShown.sum();
+    }
+
+    /**
+     * Number of calls made to show messages, each showing one or more.
+     */
+    public long getMessageCalls() {
+        return messageCalls.sum();
+    }
+
+    /**
+     * Number of commands performed by players.
+     */
+    public long getCommandsRun() {
+        return commandsRun.sum();
+    }
+
+    /**
+     * Stop the main thread, dropping queued and repeating tasks.
+     */
+    public void shutdown() {
+        mainThread.shutdownNow();
+    }
+
+    /**
+     * A player named after the start of their UUID.
+     */
+    private class StubPlayer implements ChatPlayer {
+
+        private final UUID uuid;
+        private final String name;
+
+        StubPlayer(UUID uuid) {
+            this.uuid = uuid;
+            this.name = "Player-" + uuid.toString().substring(0, 8);
+        }
+
+        @Override
+        public UUID getUniqueId() {
+            return uuid;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void sendMessage(String message) {
+            messagesShown.increment();
+            messageCalls.increment();
+        }
+
+        @Override
+        public void sendMessage(ChatLine line) {
+            messagesShown.add(line.lineCount());
+            messageCalls.increment();
+        }
+
+        @Override
+        public boolean hasPermission(String permission) {
+            // Lets load tests exercise staff endpoints
+            return true;
+        }
+
+        @Override
+        public void performCommand(String command) {
+            commandsRun.increment();
+        }
+    }
+}